@@ -3,9 +3,11 @@ package plc.project;
 import plc.project.analyzer.AnalyzeException;
 import plc.project.analyzer.Analyzer;
 import plc.project.analyzer.Ir;
+import plc.project.evaluator.Bytecode;
 import plc.project.evaluator.Environment;
 import plc.project.evaluator.EvaluateException;
 import plc.project.evaluator.Evaluator;
+import plc.project.evaluator.Machine;
 import plc.project.evaluator.RuntimeValue;
 import plc.project.evaluator.Scope;
 import plc.project.generator.Generator;
@@ -38,22 +40,29 @@ public final class Main {
     }
 
     private static void parser(String input) throws LexException, ParseException {
-        var ast = new Parser(new Lexer(input).lex()).parseSource(); //edit for manual testing
+        var ast = new Parser(new Lexer(input).decodeLiterals().tokens()).parseSource(); //edit for manual testing
         System.out.println(ast);
     }
 
     private static final Evaluator EVALUATOR = new Evaluator(new Scope(Environment.scope())); //global to retain state changes
 
     private static void evaluator(String input) throws LexException, ParseException, EvaluateException {
-        var ast = new Parser(new Lexer(input).lex()).parseSource(); //edit for manual testing
-        var value = EVALUATOR.visit(ast);
+        var value = EVALUATOR.evaluate(new Parser(new Lexer(input).decodeLiterals().tokens())); //edit for manual testing
+        System.out.println(value.print());
+    }
+
+    private static final Machine MACHINE = new Machine(new Scope(Environment.scope())); //global to retain state changes
+
+    private static void machine(String input) throws LexException, ParseException, EvaluateException {
+        var ast = new Parser(new Lexer(input).decodeLiterals().tokens()).parseSource(); //edit for manual testing
+        var value = MACHINE.execute(Bytecode.compile(ast));
         System.out.println(value.print());
     }
 
     private static final Analyzer ANALYZER = new Analyzer(new plc.project.analyzer.Scope(plc.project.analyzer.Environment.scope()));
 
     private static void analyzer(String input) throws LexException, ParseException, EvaluateException, AnalyzeException {
-        var ast = new Parser(new Lexer(input).lex()).parseSource(); //edit for manual testing
+        var ast = new Parser(new Lexer(input).decodeLiterals().tokens()).parseSource(); //edit for manual testing
         var ir = ANALYZER.visit(ast); //Warning: exceptions may modify scope!
         System.out.println(ir);
         var value = EVALUATOR.visit(ast);
@@ -61,7 +70,7 @@ public final class Main {
     }
 
     private static void generator(String input) throws LexException, ParseException, AnalyzeException {
-        var ast = new Parser(new Lexer(input).lex()).parseSource(); //edit for manual testing
+        var ast = new Parser(new Lexer(input).decodeLiterals().tokens()).parseSource(); //edit for manual testing
         var ir = ANALYZER.visit(ast); //Warning: exceptions may modify scope!
         var source = new Generator().visit(ir).toString();
         System.out.println(source);
@@ -0,0 +1,360 @@
+package plc.project.cache;
+
+import org.checkerframework.checker.nullness.qual.Nullable;
+import plc.project.parser.Ast;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.StreamCorruptedException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * A compact binary format for {@link Ast.Source}, used by {@link TreeCache}.
+ * Each node is a tag byte followed by its components in declaration order,
+ * with lists prefixed by their size and optionals by a presence byte. Names
+ * and literals are written as described by {@link TreeOutput}.
+ *
+ * <p>Expressions are the exception, since they can be nested far deeper than
+ * statements (see {@code Parser#parseNestedExpr}). Their names and sizes come
+ * first, followed by their subexpressions, so they are written and read with
+ * a work stack instead of recursion.
+ *
+ * <p>The format starts with a magic number and {@link #VERSION}, which must be
+ * incremented whenever the format changes so old files are rejected.
+ */
+public final class AstCodec {
+
+    static final int MAGIC = 0x504C4341; // "PLCA"
+    static final int VERSION = 2;
+
+    private static final int LET = 0;
+    private static final int DEF = 1;
+    private static final int IF = 2;
+    private static final int FOR = 3;
+    private static final int RETURN = 4;
+    private static final int EXPRESSION = 5;
+    private static final int ASSIGNMENT = 6;
+    private static final int LITERAL = 7;
+    private static final int GROUP = 8;
+    private static final int BINARY = 9;
+    private static final int VARIABLE = 10;
+    private static final int PROPERTY = 11;
+    private static final int FUNCTION = 12;
+    private static final int METHOD = 13;
+    private static final int OBJECT = 14;
+
+    private AstCodec() {}
+
+    public static void write(Ast.Source source, OutputStream stream) throws IOException {
+        var output = new TreeOutput(stream);
+        output.writeInt(MAGIC);
+        output.writeInt(VERSION);
+        writeStmts(output, source.statements());
+        output.flush();
+    }
+
+    /**
+     * Reads a source written by {@link #write}, throwing a
+     * {@link StreamCorruptedException} if the data isn't a valid source of
+     * this version.
+     */
+    public static Ast.Source read(InputStream stream) throws IOException {
+        var input = new TreeInput(stream);
+        if (input.readInt() != MAGIC || input.readInt() != VERSION) {
+            throw new StreamCorruptedException("Not an AST of version " + VERSION + ".");
+        }
+        try {
+            var source = new Ast.Source(readStmts(input));
+            input.readEnd();
+            return source;
+        } catch (RuntimeException e) {
+            throw TreeInput.corrupt(e);
+        }
+    }
+
+    private static void writeStmts(TreeOutput output, List<? extends Ast.Stmt> statements) throws IOException {
+        output.writeSize(statements.size());
+        for (var statement : statements) {
+            writeStmt(output, statement);
+        }
+    }
+
+    private static void writeStmt(TreeOutput output, Ast.Stmt statement) throws IOException {
+        switch (statement) {
+            case Ast.Stmt.Let let -> {
+                output.writeByte(LET);
+                writeLet(output, let);
+            }
+            case Ast.Stmt.Def def -> {
+                output.writeByte(DEF);
+                writeDef(output, def);
+            }
+            case Ast.Stmt.If stmt -> {
+                output.writeByte(IF);
+                writeExpr(output, stmt.condition());
+                writeStmts(output, stmt.thenBody());
+                writeStmts(output, stmt.elseBody());
+            }
+            case Ast.Stmt.For stmt -> {
+                output.writeByte(FOR);
+                output.writeName(stmt.name());
+                writeExpr(output, stmt.expression());
+                writeStmts(output, stmt.body());
+            }
+            case Ast.Stmt.Return stmt -> {
+                output.writeByte(RETURN);
+                writeOptionalExpr(output, stmt.value());
+            }
+            case Ast.Stmt.Expression stmt -> {
+                output.writeByte(EXPRESSION);
+                writeExpr(output, stmt.expression());
+            }
+            case Ast.Stmt.Assignment stmt -> {
+                output.writeByte(ASSIGNMENT);
+                writeExpr(output, stmt.expression());
+                writeExpr(output, stmt.value());
+            }
+        }
+    }
+
+    private static void writeLet(TreeOutput output, Ast.Stmt.Let let) throws IOException {
+        output.writeName(let.name());
+        writeOptionalName(output, let.type());
+        writeOptionalExpr(output, let.value());
+    }
+
+    private static void writeDef(TreeOutput output, Ast.Stmt.Def def) throws IOException {
+        output.writeName(def.name());
+        output.writeSize(def.parameters().size());
+        for (var parameter : def.parameters()) {
+            output.writeName(parameter);
+        }
+        output.writeSize(def.parameterTypes().size());
+        for (var type : def.parameterTypes()) {
+            writeOptionalName(output, type);
+        }
+        writeOptionalName(output, def.returnType());
+        writeStmts(output, def.body());
+    }
+
+    private static void writeExpr(TreeOutput output, Ast.Expr root) throws IOException {
+        // subexpressions are pushed in reverse, so they're written in order
+        var stack = new ArrayDeque<Ast.Expr>();
+        stack.push(root);
+        while (!stack.isEmpty()) {
+            switch (stack.pop()) {
+                case Ast.Expr.Literal literal -> {
+                    output.writeByte(LITERAL);
+                    output.writeLiteral(literal.value());
+                }
+                case Ast.Expr.Group group -> {
+                    output.writeByte(GROUP);
+                    stack.push(group.expression());
+                }
+                case Ast.Expr.Binary binary -> {
+                    output.writeByte(BINARY);
+                    output.writeName(binary.operator());
+                    stack.push(binary.right());
+                    stack.push(binary.left());
+                }
+                case Ast.Expr.Variable variable -> {
+                    output.writeByte(VARIABLE);
+                    output.writeName(variable.name());
+                }
+                case Ast.Expr.Property property -> {
+                    output.writeByte(PROPERTY);
+                    output.writeName(property.name());
+                    stack.push(property.receiver());
+                }
+                case Ast.Expr.Function function -> {
+                    output.writeByte(FUNCTION);
+                    output.writeName(function.name());
+                    output.writeSize(function.arguments().size());
+                    pushAll(stack, function.arguments());
+                }
+                case Ast.Expr.Method method -> {
+                    output.writeByte(METHOD);
+                    output.writeName(method.name());
+                    output.writeSize(method.arguments().size());
+                    pushAll(stack, method.arguments());
+                    stack.push(method.receiver());
+                }
+                case Ast.Expr.ObjectExpr object -> {
+                    output.writeByte(OBJECT);
+                    writeOptionalName(output, object.name());
+                    output.writeSize(object.fields().size());
+                    for (var field : object.fields()) {
+                        writeLet(output, field);
+                    }
+                    output.writeSize(object.methods().size());
+                    for (var method : object.methods()) {
+                        writeDef(output, method);
+                    }
+                }
+            }
+        }
+    }
+
+    private static void pushAll(ArrayDeque<Ast.Expr> stack, List<Ast.Expr> exprs) {
+        for (int i = exprs.size() - 1; i >= 0; i--) {
+            stack.push(exprs.get(i));
+        }
+    }
+
+    private static void writeOptionalExpr(TreeOutput output, Optional<Ast.Expr> expr) throws IOException {
+        output.writeByte(expr.isPresent() ? 1 : 0);
+        if (expr.isPresent()) {
+            writeExpr(output, expr.get());
+        }
+    }
+
+    private static void writeOptionalName(TreeOutput output, Optional<String> name) throws IOException {
+        output.writeByte(name.isPresent() ? 1 : 0);
+        if (name.isPresent()) {
+            output.writeName(name.get());
+        }
+    }
+
+    private static List<Ast.Stmt> readStmts(TreeInput input) throws IOException {
+        var size = input.readSize();
+        var statements = new ArrayList<Ast.Stmt>(Math.min(size, 1024));
+        for (int i = 0; i < size; i++) {
+            statements.add(readStmt(input));
+        }
+        return statements;
+    }
+
+    private static Ast.Stmt readStmt(TreeInput input) throws IOException {
+        return switch (input.readByte()) {
+            case LET -> readLet(input);
+            case DEF -> readDef(input);
+            case IF -> new Ast.Stmt.If(readExpr(input), readStmts(input), readStmts(input));
+            case FOR -> new Ast.Stmt.For(input.readName(), readExpr(input), readStmts(input));
+            case RETURN -> new Ast.Stmt.Return(readOptionalExpr(input));
+            case EXPRESSION -> new Ast.Stmt.Expression(readExpr(input));
+            case ASSIGNMENT -> new Ast.Stmt.Assignment(readExpr(input), readExpr(input));
+            default -> throw new StreamCorruptedException("Invalid statement.");
+        };
+    }
+
+    private static Ast.Stmt.Let readLet(TreeInput input) throws IOException {
+        return new Ast.Stmt.Let(input.readName(), readOptionalName(input), readOptionalExpr(input));
+    }
+
+    private static Ast.Stmt.Def readDef(TreeInput input) throws IOException {
+        var name = input.readName();
+        var parameters = new ArrayList<String>();
+        for (int i = input.readSize(); i > 0; i--) {
+            parameters.add(input.readName());
+        }
+        var parameterTypes = new ArrayList<Optional<String>>();
+        for (int i = input.readSize(); i > 0; i--) {
+            parameterTypes.add(readOptionalName(input));
+        }
+        return new Ast.Stmt.Def(name, parameters, parameterTypes, readOptionalName(input), readStmts(input));
+    }
+
+    /**
+     * Reads an expression with a stack of the nodes whose subexpressions are
+     * still being read. Each expression read is added to the node on top of
+     * the stack, which is then built once it has all of them.
+     */
+    private static Ast.Expr readExpr(TreeInput input) throws IOException {
+        var stack = new ArrayDeque<Node>();
+        while (true) {
+            var tag = input.readByte();
+            Ast.Expr expr = switch (tag) {
+                case LITERAL -> new Ast.Expr.Literal(input.readLiteral());
+                case VARIABLE -> new Ast.Expr.Variable(input.readName());
+                case OBJECT -> {
+                    var name = readOptionalName(input);
+                    var fields = new ArrayList<Ast.Stmt.Let>();
+                    for (int i = input.readSize(); i > 0; i--) {
+                        fields.add(readLet(input));
+                    }
+                    var methods = new ArrayList<Ast.Stmt.Def>();
+                    for (int i = input.readSize(); i > 0; i--) {
+                        methods.add(readDef(input));
+                    }
+                    yield new Ast.Expr.ObjectExpr(name, fields, methods);
+                }
+                case GROUP -> push(stack, new Node(tag, "", 1));
+                case BINARY -> push(stack, new Node(tag, input.readName(), 2));
+                case PROPERTY -> push(stack, new Node(tag, input.readName(), 1));
+                case FUNCTION -> push(stack, new Node(tag, input.readName(), input.readSize()));
+                case METHOD -> push(stack, new Node(tag, input.readName(), Math.addExact(input.readSize(), 1)));
+                default -> throw new StreamCorruptedException("Invalid expression.");
+            };
+            while (expr != null) {
+                var node = stack.peek();
+                if (node == null) {
+                    return expr;
+                }
+                node.children.add(expr);
+                expr = node.children.size() == node.size ? stack.pop().build() : null;
+            }
+        }
+    }
+
+    /**
+     * Pushes a node which has subexpressions to read, or returns it if it
+     * doesn't (a function without arguments).
+     */
+    private static Ast.@Nullable Expr push(ArrayDeque<Node> stack, Node node) {
+        if (node.size == 0) {
+            return node.build();
+        }
+        stack.push(node);
+        return null;
+    }
+
+    /**
+     * An expression whose subexpressions are being read.
+     */
+    private static final class Node {
+
+        private final int tag;
+        private final String name;
+        private final int size;
+        private final List<Ast.Expr> children;
+
+        private Node(int tag, String name, int size) {
+            this.tag = tag;
+            this.name = name;
+            this.size = size;
+            this.children = new ArrayList<>(Math.min(size, 1024));
+        }
+
+        private Ast.Expr build() {
+            return switch (tag) {
+                case GROUP -> new Ast.Expr.Group(children.getFirst());
+                case BINARY -> new Ast.Expr.Binary(name, children.get(0), children.get(1));
+                case PROPERTY -> new Ast.Expr.Property(children.getFirst(), name);
+                case FUNCTION -> new Ast.Expr.Function(name, children);
+                default -> new Ast.Expr.Method(children.getFirst(), name, new ArrayList<>(children.subList(1, size)));
+            };
+        }
+
+    }
+
+    private static Optional<Ast.Expr> readOptionalExpr(TreeInput input) throws IOException {
+        return readPresent(input) ? Optional.of(readExpr(input)) : Optional.empty();
+    }
+
+    private static Optional<String> readOptionalName(TreeInput input) throws IOException {
+        return readPresent(input) ? Optional.of(input.readName()) : Optional.empty();
+    }
+
+    private static boolean readPresent(TreeInput input) throws IOException {
+        return switch (input.readByte()) {
+            case 0 -> false;
+            case 1 -> true;
+            default -> throw new StreamCorruptedException("Invalid optional.");
+        };
+    }
+
+}
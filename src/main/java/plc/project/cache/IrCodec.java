@@ -0,0 +1,493 @@
+package plc.project.cache;
+
+import org.checkerframework.checker.nullness.qual.Nullable;
+import plc.project.analyzer.Ir;
+import plc.project.analyzer.Scope;
+import plc.project.analyzer.Type;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.StreamCorruptedException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+/**
+ * A compact binary format for {@link Ir.Source}, used by {@link TreeCache}.
+ * Nodes are written as with {@link AstCodec}, with each expression's type
+ * after its names and sizes (except groups, whose type is their expression's)
+ * and object expressions followed by their type.
+ *
+ * <p>Object types are written once and later occurrences refer back to them,
+ * so types shared in the IR are also shared when read. A read object type only
+ * has its own fields and methods, with no parent scope, which is all that the
+ * IR and {@link Type.Object#equals} use.
+ */
+public final class IrCodec {
+
+    static final int MAGIC = 0x504C4349; // "PLCI"
+    static final int VERSION = 2;
+
+    private static final int LET = 0;
+    private static final int DEF = 1;
+    private static final int IF = 2;
+    private static final int FOR = 3;
+    private static final int RETURN = 4;
+    private static final int EXPRESSION = 5;
+    private static final int ASSIGNMENT_VARIABLE = 6;
+    private static final int ASSIGNMENT_PROPERTY = 7;
+    private static final int LITERAL = 8;
+    private static final int GROUP = 9;
+    private static final int BINARY = 10;
+    private static final int VARIABLE = 11;
+    private static final int PROPERTY = 12;
+    private static final int FUNCTION = 13;
+    private static final int METHOD = 14;
+    private static final int OBJECT = 15;
+
+    private static final int TYPE_PRIMITIVE = 0;
+    private static final int TYPE_NAMED = 1;
+    private static final int TYPE_FUNCTION = 2;
+    private static final int TYPE_OBJECT = 3;
+    private static final int TYPE_REFERENCE = 4;
+
+    private static final List<Type.Primitive> PRIMITIVES = List.of(
+        Type.NIL, Type.BOOLEAN, Type.INTEGER, Type.DECIMAL, Type.STRING,
+        Type.ANY, Type.EQUATABLE, Type.COMPARABLE, Type.ITERABLE
+    );
+
+    private IrCodec() {}
+
+    public static void write(Ir.Source source, OutputStream stream) throws IOException {
+        var writer = new Writer(new TreeOutput(stream));
+        writer.output.writeInt(MAGIC);
+        writer.output.writeInt(VERSION);
+        writer.writeStmts(source.statements());
+        writer.output.flush();
+    }
+
+    /**
+     * Reads a source written by {@link #write}, throwing a
+     * {@link StreamCorruptedException} if the data isn't a valid source of
+     * this version.
+     */
+    public static Ir.Source read(InputStream stream) throws IOException {
+        var reader = new Reader(new TreeInput(stream));
+        if (reader.input.readInt() != MAGIC || reader.input.readInt() != VERSION) {
+            throw new StreamCorruptedException("Not an IR of version " + VERSION + ".");
+        }
+        try {
+            var source = new Ir.Source(reader.readStmts());
+            reader.input.readEnd();
+            return source;
+        } catch (RuntimeException e) {
+            throw TreeInput.corrupt(e);
+        }
+    }
+
+    private static final class Writer {
+
+        private final TreeOutput output;
+        private final Map<Type.Object, Integer> objects = new IdentityHashMap<>();
+
+        private Writer(TreeOutput output) {
+            this.output = output;
+        }
+
+        private void writeStmts(List<? extends Ir.Stmt> statements) throws IOException {
+            output.writeSize(statements.size());
+            for (var statement : statements) {
+                writeStmt(statement);
+            }
+        }
+
+        private void writeStmt(Ir.Stmt statement) throws IOException {
+            switch (statement) {
+                case Ir.Stmt.Let let -> {
+                    output.writeByte(LET);
+                    writeLet(let);
+                }
+                case Ir.Stmt.Def def -> {
+                    output.writeByte(DEF);
+                    writeDef(def);
+                }
+                case Ir.Stmt.If stmt -> {
+                    output.writeByte(IF);
+                    writeExpr(stmt.condition());
+                    writeStmts(stmt.thenBody());
+                    writeStmts(stmt.elseBody());
+                }
+                case Ir.Stmt.For stmt -> {
+                    output.writeByte(FOR);
+                    output.writeName(stmt.name());
+                    writeType(stmt.type());
+                    writeExpr(stmt.expression());
+                    writeStmts(stmt.body());
+                }
+                case Ir.Stmt.Return stmt -> {
+                    output.writeByte(RETURN);
+                    writeOptionalExpr(stmt.value());
+                }
+                case Ir.Stmt.Expression stmt -> {
+                    output.writeByte(EXPRESSION);
+                    writeExpr(stmt.expression());
+                }
+                case Ir.Stmt.Assignment.Variable stmt -> {
+                    output.writeByte(ASSIGNMENT_VARIABLE);
+                    output.writeName(stmt.variable().name());
+                    writeType(stmt.variable().type());
+                    writeExpr(stmt.value());
+                }
+                case Ir.Stmt.Assignment.Property stmt -> {
+                    output.writeByte(ASSIGNMENT_PROPERTY);
+                    writeExpr(stmt.property().receiver());
+                    output.writeName(stmt.property().name());
+                    writeType(stmt.property().type());
+                    writeExpr(stmt.value());
+                }
+            }
+        }
+
+        private void writeLet(Ir.Stmt.Let let) throws IOException {
+            output.writeName(let.name());
+            writeType(let.type());
+            writeOptionalExpr(let.value());
+        }
+
+        private void writeDef(Ir.Stmt.Def def) throws IOException {
+            output.writeName(def.name());
+            output.writeSize(def.parameters().size());
+            for (var parameter : def.parameters()) {
+                output.writeName(parameter.name());
+                writeType(parameter.type());
+            }
+            writeType(def.returns());
+            writeStmts(def.body());
+        }
+
+        private void writeExpr(Ir.Expr root) throws IOException {
+            // subexpressions are pushed in reverse, so they're written in order
+            var stack = new ArrayDeque<Ir.Expr>();
+            stack.push(root);
+            while (!stack.isEmpty()) {
+                switch (stack.pop()) {
+                    case Ir.Expr.Literal literal -> {
+                        output.writeByte(LITERAL);
+                        output.writeLiteral(literal.value());
+                        writeType(literal.type());
+                    }
+                    case Ir.Expr.Group group -> {
+                        output.writeByte(GROUP);
+                        stack.push(group.expression());
+                    }
+                    case Ir.Expr.Binary binary -> {
+                        output.writeByte(BINARY);
+                        output.writeName(binary.operator());
+                        writeType(binary.type());
+                        stack.push(binary.right());
+                        stack.push(binary.left());
+                    }
+                    case Ir.Expr.Variable variable -> {
+                        output.writeByte(VARIABLE);
+                        output.writeName(variable.name());
+                        writeType(variable.type());
+                    }
+                    case Ir.Expr.Property property -> {
+                        output.writeByte(PROPERTY);
+                        output.writeName(property.name());
+                        writeType(property.type());
+                        stack.push(property.receiver());
+                    }
+                    case Ir.Expr.Function function -> {
+                        output.writeByte(FUNCTION);
+                        output.writeName(function.name());
+                        output.writeSize(function.arguments().size());
+                        writeType(function.type());
+                        pushAll(stack, function.arguments());
+                    }
+                    case Ir.Expr.Method method -> {
+                        output.writeByte(METHOD);
+                        output.writeName(method.name());
+                        output.writeSize(method.arguments().size());
+                        writeType(method.type());
+                        pushAll(stack, method.arguments());
+                        stack.push(method.receiver());
+                    }
+                    case Ir.Expr.ObjectExpr object -> {
+                        output.writeByte(OBJECT);
+                        output.writeByte(object.name().isPresent() ? 1 : 0);
+                        if (object.name().isPresent()) {
+                            output.writeName(object.name().get());
+                        }
+                        output.writeSize(object.fields().size());
+                        for (var field : object.fields()) {
+                            writeLet(field);
+                        }
+                        output.writeSize(object.methods().size());
+                        for (var method : object.methods()) {
+                            writeDef(method);
+                        }
+                        writeType(object.type());
+                    }
+                }
+            }
+        }
+
+        private static void pushAll(ArrayDeque<Ir.Expr> stack, List<Ir.Expr> exprs) {
+            for (int i = exprs.size() - 1; i >= 0; i--) {
+                stack.push(exprs.get(i));
+            }
+        }
+
+        private void writeOptionalExpr(Optional<Ir.Expr> expr) throws IOException {
+            output.writeByte(expr.isPresent() ? 1 : 0);
+            if (expr.isPresent()) {
+                writeExpr(expr.get());
+            }
+        }
+
+        private void writeType(Type type) throws IOException {
+            switch (type) {
+                case Type.Primitive primitive when PRIMITIVES.contains(primitive) -> {
+                    output.writeByte(TYPE_PRIMITIVE);
+                    output.writeSize(PRIMITIVES.indexOf(primitive));
+                }
+                case Type.Primitive primitive -> {
+                    output.writeByte(TYPE_NAMED);
+                    output.writeName(primitive.name());
+                    output.writeName(primitive.jvmName());
+                }
+                case Type.Function function -> {
+                    output.writeByte(TYPE_FUNCTION);
+                    output.writeSize(function.parameters().size());
+                    for (var parameter : function.parameters()) {
+                        writeType(parameter);
+                    }
+                    writeType(function.returns());
+                }
+                case Type.Object object -> {
+                    var index = objects.get(object);
+                    if (index != null) {
+                        output.writeByte(TYPE_REFERENCE);
+                        output.writeSize(index);
+                        return;
+                    }
+                    // registered first in case a member refers back to it
+                    objects.put(object, objects.size());
+                    output.writeByte(TYPE_OBJECT);
+                    var members = object.scope().collect(true);
+                    output.writeSize(members.size());
+                    for (var member : members.entrySet()) {
+                        output.writeName(member.getKey());
+                        writeType(member.getValue());
+                    }
+                }
+            }
+        }
+
+    }
+
+    private static final class Reader {
+
+        private final TreeInput input;
+        private final List<Type.Object> objects = new ArrayList<>();
+
+        private Reader(TreeInput input) {
+            this.input = input;
+        }
+
+        private List<Ir.Stmt> readStmts() throws IOException {
+            var size = input.readSize();
+            var statements = new ArrayList<Ir.Stmt>(Math.min(size, 1024));
+            for (int i = 0; i < size; i++) {
+                statements.add(readStmt());
+            }
+            return statements;
+        }
+
+        private Ir.Stmt readStmt() throws IOException {
+            return switch (input.readByte()) {
+                case LET -> readLet();
+                case DEF -> readDef();
+                case IF -> new Ir.Stmt.If(readExpr(), readStmts(), readStmts());
+                case FOR -> new Ir.Stmt.For(input.readName(), readType(), readExpr(), readStmts());
+                case RETURN -> new Ir.Stmt.Return(readOptionalExpr());
+                case EXPRESSION -> new Ir.Stmt.Expression(readExpr());
+                case ASSIGNMENT_VARIABLE -> new Ir.Stmt.Assignment.Variable(
+                    new Ir.Expr.Variable(input.readName(), readType()),
+                    readExpr()
+                );
+                case ASSIGNMENT_PROPERTY -> new Ir.Stmt.Assignment.Property(
+                    new Ir.Expr.Property(readExpr(), input.readName(), readType()),
+                    readExpr()
+                );
+                default -> throw new StreamCorruptedException("Invalid statement.");
+            };
+        }
+
+        private Ir.Stmt.Let readLet() throws IOException {
+            return new Ir.Stmt.Let(input.readName(), readType(), readOptionalExpr());
+        }
+
+        private Ir.Stmt.Def readDef() throws IOException {
+            var name = input.readName();
+            var parameters = new ArrayList<Ir.Stmt.Def.Parameter>();
+            for (int i = input.readSize(); i > 0; i--) {
+                parameters.add(new Ir.Stmt.Def.Parameter(input.readName(), readType()));
+            }
+            return new Ir.Stmt.Def(name, parameters, readType(), readStmts());
+        }
+
+        /**
+         * Reads an expression with a stack of the nodes whose subexpressions
+         * are still being read, as in {@link AstCodec}.
+         */
+        private Ir.Expr readExpr() throws IOException {
+            var stack = new ArrayDeque<Node>();
+            while (true) {
+                var tag = input.readByte();
+                Ir.Expr expr = switch (tag) {
+                    case LITERAL -> new Ir.Expr.Literal(input.readLiteral(), readType());
+                    case VARIABLE -> new Ir.Expr.Variable(input.readName(), readType());
+                    case OBJECT -> {
+                        var name = readPresent() ? Optional.of(input.readName()) : Optional.<String>empty();
+                        var fields = new ArrayList<Ir.Stmt.Let>();
+                        for (int i = input.readSize(); i > 0; i--) {
+                            fields.add(readLet());
+                        }
+                        var methods = new ArrayList<Ir.Stmt.Def>();
+                        for (int i = input.readSize(); i > 0; i--) {
+                            methods.add(readDef());
+                        }
+                        yield new Ir.Expr.ObjectExpr(name, fields, methods, readType());
+                    }
+                    case GROUP -> push(stack, new Node(tag, "", 1, Type.ANY));
+                    case BINARY -> push(stack, new Node(tag, input.readName(), 2, readType()));
+                    case PROPERTY -> push(stack, new Node(tag, input.readName(), 1, readType()));
+                    case FUNCTION -> {
+                        var name = input.readName();
+                        var size = input.readSize();
+                        yield push(stack, new Node(tag, name, size, readType()));
+                    }
+                    case METHOD -> {
+                        var name = input.readName();
+                        var size = Math.addExact(input.readSize(), 1);
+                        yield push(stack, new Node(tag, name, size, readType()));
+                    }
+                    default -> throw new StreamCorruptedException("Invalid expression.");
+                };
+                while (expr != null) {
+                    var node = stack.peek();
+                    if (node == null) {
+                        return expr;
+                    }
+                    node.children.add(expr);
+                    expr = node.children.size() == node.size ? stack.pop().build() : null;
+                }
+            }
+        }
+
+        /**
+         * Pushes a node which has subexpressions to read, or returns it if it
+         * doesn't (a function without arguments).
+         */
+        private static Ir.@Nullable Expr push(ArrayDeque<Node> stack, Node node) {
+            if (node.size == 0) {
+                return node.build();
+            }
+            stack.push(node);
+            return null;
+        }
+
+        private Optional<Ir.Expr> readOptionalExpr() throws IOException {
+            return readPresent() ? Optional.of(readExpr()) : Optional.empty();
+        }
+
+        private boolean readPresent() throws IOException {
+            return switch (input.readByte()) {
+                case 0 -> false;
+                case 1 -> true;
+                default -> throw new StreamCorruptedException("Invalid optional.");
+            };
+        }
+
+        private Type readType() throws IOException {
+            return switch (input.readByte()) {
+                case TYPE_PRIMITIVE -> {
+                    var index = input.readSize();
+                    if (index >= PRIMITIVES.size()) {
+                        throw new StreamCorruptedException("Invalid primitive type.");
+                    }
+                    yield PRIMITIVES.get(index);
+                }
+                case TYPE_NAMED -> new Type.Primitive(input.readName(), input.readName());
+                case TYPE_FUNCTION -> {
+                    var parameters = new ArrayList<Type>();
+                    for (int i = input.readSize(); i > 0; i--) {
+                        parameters.add(readType());
+                    }
+                    yield new Type.Function(parameters, readType());
+                }
+                case TYPE_OBJECT -> {
+                    var object = new Type.Object(new Scope(null));
+                    objects.add(object);
+                    for (int i = input.readSize(); i > 0; i--) {
+                        var name = input.readName();
+                        try {
+                            object.scope().define(name, readType());
+                        } catch (IllegalStateException e) {
+                            throw new StreamCorruptedException("Duplicate member " + name + ".");
+                        }
+                    }
+                    yield object;
+                }
+                case TYPE_REFERENCE -> {
+                    var index = input.readSize();
+                    if (index >= objects.size()) {
+                        throw new StreamCorruptedException("Invalid object type reference " + index + ".");
+                    }
+                    yield objects.get(index);
+                }
+                default -> throw new StreamCorruptedException("Invalid type.");
+            };
+        }
+
+    }
+
+    /**
+     * An expression whose subexpressions are being read. The type is unused
+     * for groups, whose type is their expression's.
+     */
+    private static final class Node {
+
+        private final int tag;
+        private final String name;
+        private final int size;
+        private final Type type;
+        private final List<Ir.Expr> children;
+
+        private Node(int tag, String name, int size, Type type) {
+            this.tag = tag;
+            this.name = name;
+            this.size = size;
+            this.type = type;
+            this.children = new ArrayList<>(Math.min(size, 1024));
+        }
+
+        private Ir.Expr build() {
+            return switch (tag) {
+                case GROUP -> new Ir.Expr.Group(children.getFirst());
+                case BINARY -> new Ir.Expr.Binary(name, children.get(0), children.get(1), type);
+                case PROPERTY -> new Ir.Expr.Property(children.getFirst(), name, type);
+                case FUNCTION -> new Ir.Expr.Function(name, children, type);
+                default -> new Ir.Expr.Method(children.getFirst(), name, new ArrayList<>(children.subList(1, size)), type);
+            };
+        }
+
+    }
+
+}
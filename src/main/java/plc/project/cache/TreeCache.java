@@ -0,0 +1,121 @@
+package plc.project.cache;
+
+import org.checkerframework.checker.nullness.qual.Nullable;
+import plc.project.analyzer.AnalyzeException;
+import plc.project.analyzer.Analyzer;
+import plc.project.analyzer.Environment;
+import plc.project.analyzer.Ir;
+import plc.project.analyzer.Scope;
+import plc.project.lexer.Lexer;
+import plc.project.parser.Ast;
+import plc.project.parser.ParseException;
+import plc.project.parser.Parser;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+
+/**
+ * An on-disk cache of ASTs and IRs, stored in a directory as files named by
+ * the SHA-256 hash of their source. A source which was seen before is read
+ * from its file instead of being lexed and parsed (or analyzed) again.
+ *
+ * <p>A file which can't be read, such as one from an older format, is treated
+ * as missing and replaced. Files are written to a temporary file and then
+ * moved into place, so a file is never seen partially written, even by
+ * another process sharing the directory. Writing is best-effort: if a file
+ * can't be written the tree is still returned, just not cached. Sources with
+ * errors aren't cached.
+ *
+ * <p>Cached trees are trusted, so the directory must only be writable by the
+ * user running the program.
+ */
+public final class TreeCache {
+
+    private final Path directory;
+
+    public TreeCache(Path directory) {
+        this.directory = directory;
+    }
+
+    public Ast.Source parse(String input) throws ParseException {
+        var path = directory.resolve(hash(input) + ".ast");
+        var cached = read(path, AstCodec::read);
+        if (cached != null) {
+            return cached;
+        }
+        var ast = new Parser(new Lexer(input).decodeLiterals().tokens()).parseSource();
+        write(path, stream -> AstCodec.write(ast, stream));
+        return ast;
+    }
+
+    /**
+     * Returns the IR of the input, analyzed in a new scope of the standard
+     * {@link Environment}. Unlike the REPL's analyzer, whose scope has the
+     * definitions of previous inputs, the IR then only depends on the input.
+     */
+    public Ir.Source analyze(String input) throws ParseException, AnalyzeException {
+        var path = directory.resolve(hash(input) + ".ir");
+        var cached = read(path, IrCodec::read);
+        if (cached != null) {
+            return cached;
+        }
+        var ast = parse(input);
+        var ir = new Analyzer(new Scope(Environment.scope())).visit(ast);
+        write(path, stream -> IrCodec.write(ir, stream));
+        return ir;
+    }
+
+    private <T> @Nullable T read(Path path, Decoder<T> decoder) {
+        try (var stream = new BufferedInputStream(Files.newInputStream(path), 1 << 16)) {
+            return decoder.read(stream);
+        } catch (IOException e) {
+            // missing, unreadable, or corrupt, so parse again
+            return null;
+        }
+    }
+
+    private void write(Path path, Encoder encoder) {
+        try {
+            Files.createDirectories(directory);
+            var temporary = Files.createTempFile(directory, path.getFileName().toString(), ".tmp");
+            try {
+                try (var stream = new BufferedOutputStream(Files.newOutputStream(temporary), 1 << 16)) {
+                    encoder.write(stream);
+                }
+                Files.move(temporary, path, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+            } finally {
+                Files.deleteIfExists(temporary);
+            }
+        } catch (IOException e) {
+            // not cached, so the source is just parsed again next time
+        }
+    }
+
+    private static String hash(String input) {
+        try {
+            var digest = MessageDigest.getInstance("SHA-256").digest(input.getBytes(StandardCharsets.UTF_8));
+            return HexFormat.of().formatHex(digest);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private interface Decoder<T> {
+        T read(InputStream stream) throws IOException;
+    }
+
+    private interface Encoder {
+        void write(OutputStream stream) throws IOException;
+    }
+
+}
@@ -0,0 +1,148 @@
+package plc.project.cache;
+
+import org.checkerframework.checker.nullness.qual.Nullable;
+
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.StreamCorruptedException;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Reads the values written by {@link TreeOutput}. Names are shared between
+ * their occurrences, as with interning in the lexer. Invalid data throws a
+ * {@link StreamCorruptedException}.
+ */
+final class TreeInput {
+
+    private final DataInputStream input;
+    private final List<String> names = new ArrayList<>();
+
+    TreeInput(InputStream input) {
+        this.input = new DataInputStream(input);
+    }
+
+    int readByte() throws IOException {
+        return input.readUnsignedByte();
+    }
+
+    int readInt() throws IOException {
+        return input.readInt();
+    }
+
+    int readSize() throws IOException {
+        var value = 0;
+        for (int shift = 0; shift < 35; shift += 7) {
+            var b = input.readUnsignedByte();
+            value |= (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                if (value < 0) {
+                    break;
+                }
+                return value;
+            }
+        }
+        throw new StreamCorruptedException("Invalid size.");
+    }
+
+    long readLong() throws IOException {
+        var zigzag = 0L;
+        for (int shift = 0; shift < 70; shift += 7) {
+            var b = input.readUnsignedByte();
+            zigzag |= (long) (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return (zigzag >>> 1) ^ -(zigzag & 1);
+            }
+        }
+        throw new StreamCorruptedException("Invalid long.");
+    }
+
+    String readString() throws IOException {
+        return new String(readBytes(), StandardCharsets.UTF_8);
+    }
+
+    String readName() throws IOException {
+        var index = readSize();
+        if (index == 0) {
+            var name = readString();
+            names.add(name);
+            return name;
+        } else if (index <= names.size()) {
+            return names.get(index - 1);
+        }
+        throw new StreamCorruptedException("Invalid name reference " + index + ".");
+    }
+
+    @Nullable Object readLiteral() throws IOException {
+        return switch (readByte()) {
+            case TreeOutput.NIL -> null;
+            case TreeOutput.TRUE -> true;
+            case TreeOutput.FALSE -> false;
+            case TreeOutput.LONG -> BigInteger.valueOf(readLong());
+            case TreeOutput.INTEGER -> readInteger();
+            case TreeOutput.DECIMAL -> {
+                var scale = readLong();
+                if (scale != (int) scale) {
+                    throw new StreamCorruptedException("Invalid decimal scale.");
+                }
+                yield new BigDecimal(readInteger(), (int) scale);
+            }
+            case TreeOutput.CHARACTER -> {
+                var character = readSize();
+                if (character > Character.MAX_VALUE) {
+                    throw new StreamCorruptedException("Invalid character.");
+                }
+                yield (char) character;
+            }
+            case TreeOutput.STRING -> readString();
+            default -> throw new StreamCorruptedException("Invalid literal.");
+        };
+    }
+
+    /**
+     * Checks that the input has ended, so a file with data after the tree
+     * (such as one overwritten after its header) isn't read as a prefix.
+     */
+    void readEnd() throws IOException {
+        if (input.read() != -1) {
+            throw new StreamCorruptedException("Unexpected data after the end.");
+        }
+    }
+
+    private BigInteger readInteger() throws IOException {
+        var bytes = readBytes();
+        if (bytes.length == 0) {
+            throw new StreamCorruptedException("Invalid integer.");
+        }
+        return new BigInteger(bytes);
+    }
+
+    /**
+     * Reads bytes prefixed by their size, which is only allocated as the bytes
+     * are read so that an invalid size can't allocate more than the input.
+     */
+    private byte[] readBytes() throws IOException {
+        var size = readSize();
+        var bytes = input.readNBytes(size);
+        if (bytes.length != size) {
+            throw new EOFException();
+        }
+        return bytes;
+    }
+
+    /**
+     * Returns a {@link StreamCorruptedException} for an exception thrown while
+     * decoding invalid data, such as by the constructor of a node.
+     */
+    static StreamCorruptedException corrupt(Throwable cause) {
+        var exception = new StreamCorruptedException("Invalid data (" + cause + ").");
+        exception.initCause(cause);
+        return exception;
+    }
+
+}
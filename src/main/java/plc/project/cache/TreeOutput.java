@@ -0,0 +1,130 @@
+package plc.project.cache;
+
+import org.checkerframework.checker.nullness.qual.Nullable;
+
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Writes the values shared by {@link AstCodec} and {@link IrCodec}, read back
+ * by {@link TreeInput}. Sizes and small integers are variable length, and
+ * names are written in full only the first time they occur, with later
+ * occurrences referring back to them, since identifiers repeat heavily.
+ */
+final class TreeOutput {
+
+    static final int NIL = 0;
+    static final int TRUE = 1;
+    static final int FALSE = 2;
+    static final int LONG = 3;
+    static final int INTEGER = 4;
+    static final int DECIMAL = 5;
+    static final int CHARACTER = 6;
+    static final int STRING = 7;
+
+    private final DataOutputStream output;
+    private final Map<String, Integer> names = new HashMap<>();
+
+    TreeOutput(OutputStream output) {
+        this.output = new DataOutputStream(output);
+    }
+
+    void writeByte(int value) throws IOException {
+        output.writeByte(value);
+    }
+
+    void writeInt(int value) throws IOException {
+        output.writeInt(value);
+    }
+
+    /**
+     * Writes a non-negative int in 7 bit groups, low bits first, with the
+     * high bit of each byte set if more follow.
+     */
+    void writeSize(int value) throws IOException {
+        while ((value & ~0x7F) != 0) {
+            output.writeByte((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        output.writeByte(value);
+    }
+
+    /**
+     * Writes a long as with {@link #writeSize}, after zigzag encoding so
+     * small negative values are also short.
+     */
+    void writeLong(long value) throws IOException {
+        var zigzag = (value << 1) ^ (value >> 63);
+        while ((zigzag & ~0x7FL) != 0) {
+            output.writeByte((int) (zigzag & 0x7F) | 0x80);
+            zigzag >>>= 7;
+        }
+        output.writeByte((int) zigzag);
+    }
+
+    void writeString(String value) throws IOException {
+        var bytes = value.getBytes(StandardCharsets.UTF_8);
+        writeSize(bytes.length);
+        output.write(bytes);
+    }
+
+    /**
+     * Writes a name, which is the index of its first occurrence plus one if
+     * it was written before, or otherwise 0 followed by the name itself.
+     */
+    void writeName(String name) throws IOException {
+        var index = names.get(name);
+        if (index != null) {
+            writeSize(index + 1);
+        } else {
+            names.put(name, names.size());
+            writeSize(0);
+            writeString(name);
+        }
+    }
+
+    void writeLiteral(@Nullable Object value) throws IOException {
+        switch (value) {
+            case null -> writeByte(NIL);
+            case Boolean b -> writeByte(b ? TRUE : FALSE);
+            case BigInteger integer when integer.bitLength() < Long.SIZE -> {
+                writeByte(LONG);
+                writeLong(integer.longValue());
+            }
+            case BigInteger integer -> {
+                writeByte(INTEGER);
+                writeBytes(integer.toByteArray());
+            }
+            case BigDecimal decimal -> {
+                writeByte(DECIMAL);
+                writeLong(decimal.scale());
+                writeBytes(decimal.unscaledValue().toByteArray());
+            }
+            case Character character -> {
+                writeByte(CHARACTER);
+                writeSize(character);
+            }
+            case String string -> {
+                writeByte(STRING);
+                writeString(string);
+            }
+            default -> throw new IllegalArgumentException("Unexpected literal " + value.getClass() + ".");
+        }
+    }
+
+    private void writeBytes(byte[] bytes) throws IOException {
+        writeSize(bytes.length);
+        output.write(bytes);
+    }
+
+    void flush() throws IOException {
+        output.flush();
+    }
+
+}
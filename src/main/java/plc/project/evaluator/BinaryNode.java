@@ -0,0 +1,175 @@
+package plc.project.evaluator;
+
+import org.checkerframework.checker.nullness.qual.Nullable;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.math.RoundingMode;
+
+/**
+ * A self-specializing node for the {@link Compiler}'s arithmetic and
+ * comparison operators. The generic operators in {@link Evaluator} check
+ * the operand types with {@link Evaluator#requireType} on every evaluation,
+ * so instead the node records the types of the first operands it sees and
+ * switches to a fast path for them (integers, decimals, or string
+ * concatenation), which only needs a pattern match. If the operands later
+ * have other types, the node falls back to the generic operator for good,
+ * since a polymorphic node would keep respecializing.
+ *
+ * <p>Fast paths compute the same results and errors as the generic
+ * operators, which are still used for anything they don't handle.
+ */
+final class BinaryNode implements Compiler.Code {
+
+    private static final int UNINITIALIZED = 0;
+    private static final int INTEGER = 1;
+    private static final int DECIMAL = 2;
+    private static final int STRING = 3;
+    private static final int GENERIC = 4;
+
+    private static final int ADD = 0;
+    private static final int SUBTRACT = 1;
+    private static final int MULTIPLY = 2;
+    private static final int DIVIDE = 3;
+    private static final int EQUAL = 4;
+    private static final int NOT_EQUAL = 5;
+    private static final int LESS = 6;
+    private static final int LESS_EQUAL = 7;
+    private static final int GREATER = 8;
+    private static final int GREATER_EQUAL = 9;
+
+    private static final RuntimeValue TRUE = new RuntimeValue.Primitive(true);
+    private static final RuntimeValue FALSE = new RuntimeValue.Primitive(false);
+
+    private final int operator;
+    private final Compiler.Code left;
+    private final Compiler.Code right;
+    private int state = UNINITIALIZED;
+
+    BinaryNode(String operator, Compiler.Code left, Compiler.Code right) {
+        this.operator = switch (operator) {
+            case "+" -> ADD;
+            case "-" -> SUBTRACT;
+            case "*" -> MULTIPLY;
+            case "/" -> DIVIDE;
+            case "==" -> EQUAL;
+            case "!=" -> NOT_EQUAL;
+            case "<" -> LESS;
+            case "<=" -> LESS_EQUAL;
+            case ">" -> GREATER;
+            case ">=" -> GREATER_EQUAL;
+            default -> throw new IllegalArgumentException(operator);
+        };
+        this.left = left;
+        this.right = right;
+    }
+
+    @Override
+    public RuntimeValue execute(@Nullable Frame frame, Scope scope) throws EvaluateException {
+        var left = this.left.execute(frame, scope);
+        var right = this.right.execute(frame, scope);
+        switch (state) {
+            case INTEGER -> {
+                if (left instanceof RuntimeValue.Primitive(BigInteger l) && right instanceof RuntimeValue.Primitive(BigInteger r)) {
+                    return integer(l, r);
+                }
+            }
+            case DECIMAL -> {
+                if (left instanceof RuntimeValue.Primitive(BigDecimal l) && right instanceof RuntimeValue.Primitive(BigDecimal r)) {
+                    return decimal(l, r);
+                }
+            }
+            case STRING -> {
+                if (left instanceof RuntimeValue.Primitive(String l)) {
+                    return new RuntimeValue.Primitive(l + right.print());
+                }
+            }
+            case GENERIC -> {
+                return generic(left, right);
+            }
+            default -> {}
+        }
+        return specialize(left, right);
+    }
+
+    /**
+     * Picks the fast path for the operand types if this is the first
+     * evaluation, or otherwise falls back to the generic operator.
+     */
+    private RuntimeValue specialize(RuntimeValue left, RuntimeValue right) throws EvaluateException {
+        if (state == UNINITIALIZED) {
+            if (left instanceof RuntimeValue.Primitive(BigInteger l) && right instanceof RuntimeValue.Primitive(BigInteger r)) {
+                state = INTEGER;
+                return integer(l, r);
+            } else if (left instanceof RuntimeValue.Primitive(BigDecimal l) && right instanceof RuntimeValue.Primitive(BigDecimal r)) {
+                state = DECIMAL;
+                return decimal(l, r);
+            } else if (operator == ADD && left instanceof RuntimeValue.Primitive(String l)) {
+                state = STRING;
+                return new RuntimeValue.Primitive(l + right.print());
+            }
+        }
+        state = GENERIC;
+        return generic(left, right);
+    }
+
+    private RuntimeValue integer(BigInteger left, BigInteger right) throws EvaluateException {
+        return switch (operator) {
+            case ADD -> new RuntimeValue.Primitive(left.add(right));
+            case SUBTRACT -> new RuntimeValue.Primitive(left.subtract(right));
+            case MULTIPLY -> new RuntimeValue.Primitive(left.multiply(right));
+            case DIVIDE -> {
+                if (right.signum() == 0) {
+                    throw new EvaluateException("Divide by zero error");
+                }
+                yield new RuntimeValue.Primitive(left.divide(right));
+            }
+            case EQUAL -> bool(left.equals(right));
+            case NOT_EQUAL -> bool(!left.equals(right));
+            case LESS -> bool(left.compareTo(right) < 0);
+            case LESS_EQUAL -> bool(left.compareTo(right) <= 0);
+            case GREATER -> bool(left.compareTo(right) > 0);
+            default -> bool(left.compareTo(right) >= 0);
+        };
+    }
+
+    private RuntimeValue decimal(BigDecimal left, BigDecimal right) throws EvaluateException {
+        return switch (operator) {
+            case ADD -> new RuntimeValue.Primitive(left.add(right));
+            case SUBTRACT -> new RuntimeValue.Primitive(left.subtract(right));
+            case MULTIPLY -> new RuntimeValue.Primitive(left.multiply(right));
+            case DIVIDE -> {
+                if (right.signum() == 0) {
+                    throw new EvaluateException("Divide by zero error");
+                }
+                yield new RuntimeValue.Primitive(left.divide(right, RoundingMode.HALF_EVEN));
+            }
+            case EQUAL -> bool(left.equals(right));
+            case NOT_EQUAL -> bool(!left.equals(right));
+            case LESS -> bool(left.compareTo(right) < 0);
+            case LESS_EQUAL -> bool(left.compareTo(right) <= 0);
+            case GREATER -> bool(left.compareTo(right) > 0);
+            default -> bool(left.compareTo(right) >= 0);
+        };
+    }
+
+    private RuntimeValue generic(RuntimeValue left, RuntimeValue right) throws EvaluateException {
+        return switch (operator) {
+            case ADD -> Evaluator.add(left, right);
+            case SUBTRACT -> Evaluator.subtract(left, right);
+            case MULTIPLY -> Evaluator.multiply(left, right);
+            case DIVIDE -> Evaluator.divide(left, right);
+            case EQUAL -> bool(Evaluator.equal(left, right));
+            case NOT_EQUAL -> bool(!Evaluator.equal(left, right));
+            case LESS -> bool(Evaluator.compare(left, right) < 0);
+            case LESS_EQUAL -> bool(Evaluator.compare(left, right) <= 0);
+            case GREATER -> bool(Evaluator.compare(left, right) > 0);
+            default -> bool(Evaluator.compare(left, right) >= 0);
+        };
+    }
+
+    private static RuntimeValue bool(boolean value) {
+        return value ? TRUE : FALSE;
+    }
+
+}
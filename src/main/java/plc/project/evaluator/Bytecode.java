@@ -0,0 +1,142 @@
+package plc.project.evaluator;
+
+import plc.project.parser.Ast;
+
+/**
+ * Compiled bytecode for the {@link Machine}: a function (or the top level)
+ * with its instructions, constant pool, and frame layout. Nested functions
+ * and methods are their own bytecode in the constant pool.
+ *
+ * <p>Instructions are an opcode followed by its int operands, which are
+ * constant pool indices, jump targets (instruction offsets), or frame
+ * addresses from the {@link Resolver}. Values are passed on an operand stack,
+ * and every statement leaves its value on the stack for the block to pop, so
+ * the last value is the result as with the {@link Evaluator}. Variables use
+ * frame slots with the same layouts as the evaluator, addressed by (depth,
+ * slot) and falling back to searching by name when a slot isn't defined yet.
+ *
+ * <p>Name operands are the constant index shifted left by one, with the low
+ * bit set if the name is a function (which changes error messages, and
+ * requires the loaded value to be a function).
+ */
+public final class Bytecode {
+
+    /*
+     * Opcodes, with operands and their effect on the stack.
+     */
+
+    /** {@code CONST k}: push constants[k]. */
+    static final int CONST = 0;
+    /** {@code POP}: pop a value. */
+    static final int POP = 1;
+    /** {@code LOAD_LOCAL depth slot name}: push a variable in a frame. */
+    static final int LOAD_LOCAL = 2;
+    /** {@code LOAD_GLOBAL name}: push a variable in the scope. */
+    static final int LOAD_GLOBAL = 3;
+    /** {@code LOAD_DYNAMIC name}: push a variable searched for by name. */
+    static final int LOAD_DYNAMIC = 4;
+    /** {@code STORE_LOCAL depth slot name}: assign the top value to a variable in a frame, without popping it. */
+    static final int STORE_LOCAL = 5;
+    /** {@code STORE_GLOBAL name}: assign the top value to a variable in the scope. */
+    static final int STORE_GLOBAL = 6;
+    /** {@code STORE_DYNAMIC name}: assign the top value to a variable searched for by name. */
+    static final int STORE_DYNAMIC = 7;
+    /** {@code UNDEFINED_LOCAL slot name}: throw if a slot in the current frame is already defined. */
+    static final int UNDEFINED_LOCAL = 8;
+    /** {@code UNDEFINED_GLOBAL name}: throw if a name is already defined in the current scope. */
+    static final int UNDEFINED_GLOBAL = 9;
+    /** {@code DEFINE_LOCAL slot}: define the top value in the current frame, without popping it. */
+    static final int DEFINE_LOCAL = 10;
+    /** {@code DEFINE_GLOBAL name}: define the top value in the scope, without popping it. */
+    static final int DEFINE_GLOBAL = 11;
+    /** {@code ENTER k}: enter a new frame with layout constants[k]. */
+    static final int ENTER = 12;
+    /** {@code EXIT}: return to the parent frame. */
+    static final int EXIT = 13;
+    /** {@code JUMP target}: continue at target. */
+    static final int JUMP = 14;
+    /** {@code JUMP_IF_FALSE target}: pop a boolean condition, and continue at target if it's false. */
+    static final int JUMP_IF_FALSE = 15;
+    /** {@code JUMP_IF_BOOL target when operator}: pop a boolean operand of AND/OR, and push it and continue at target if it's when (1 or 0). */
+    static final int JUMP_IF_BOOL = 16;
+    /** {@code BOOL operator}: pop a boolean operand of AND/OR, and push it. */
+    static final int BOOL = 17;
+    /** {@code ADD}: pop right and left, and push left + right (and so on for the other binary operators). */
+    static final int ADD = 18;
+    static final int SUBTRACT = 19;
+    static final int MULTIPLY = 20;
+    static final int DIVIDE = 21;
+    static final int EQUAL = 22;
+    static final int NOT_EQUAL = 23;
+    static final int LESS = 24;
+    static final int LESS_EQUAL = 25;
+    static final int GREATER = 26;
+    static final int GREATER_EQUAL = 27;
+    /** {@code THROW k}: throw an EvaluateException with message constants[k]. */
+    static final int THROW = 28;
+    /** {@code GET_PROPERTY name receiver}: pop an object, and push its property. The receiver AST is for errors. */
+    static final int GET_PROPERTY = 29;
+    /** {@code CHECK_PROPERTY name receiver}: throw if the top value isn't an object with the property. */
+    static final int CHECK_PROPERTY = 30;
+    /** {@code SET_PROPERTY name}: pop a value and an object, set the property, and push the value. */
+    static final int SET_PROPERTY = 31;
+    /** {@code LOAD_METHOD name receiver}: push the method of the object on top of the stack. */
+    static final int LOAD_METHOD = 32;
+    /** {@code CALL count}: pop count arguments and a function, and push the result of calling it. */
+    static final int CALL = 33;
+    /** {@code CALL_METHOD count}: pop count arguments, a method, and its receiver, and push the result of calling it. */
+    static final int CALL_METHOD = 34;
+    /** {@code CLOSURE k}: push a function for bytecode constants[k] in the current frame. */
+    static final int CLOSURE = 35;
+    /** {@code OBJECT k}: push a new object, named constants[k]. */
+    static final int OBJECT = 36;
+    /** {@code UNDEFINED_FIELD name}: throw if the object under the top value already defines a field. */
+    static final int UNDEFINED_FIELD = 37;
+    /** {@code DEFINE_FIELD name}: pop a value and define it as a field of the object on top of the stack. */
+    static final int DEFINE_FIELD = 38;
+    /** {@code METHOD k}: define a method for bytecode constants[k] on the object on top of the stack. */
+    static final int METHOD = 39;
+    /** {@code ITERATOR index}: pop an iterable list, and store its iterator at index (the depth of loops). */
+    static final int ITERATOR = 40;
+    /** {@code NEXT index target}: push the next element of the iterator at index, or continue at target. */
+    static final int NEXT = 41;
+    /** {@code RETURN}: pop a value, and return it from the function. */
+    static final int RETURN = 42;
+    /** {@code CLEAR}: undefine every slot in the current frame, to reuse it for the next iteration of a loop. */
+    static final int CLEAR = 43;
+    /** {@code CHECK_LOCAL depth slot name}: throw if a variable in a frame isn't defined, as with LOAD_LOCAL. */
+    static final int CHECK_LOCAL = 44;
+
+    final String name;
+    final int arity;
+    /** Whether the parameters are unique, which is checked when defined. */
+    final boolean unique;
+    /** The layout of the function's frame, with parameters first. */
+    final String[] layout;
+    final int[] code;
+    final Object[] constants;
+    /** The maximum size of the operand stack. */
+    final int stack;
+    /** The maximum depth of nested loops, which each have an iterator. */
+    final int iterators;
+
+    Bytecode(String name, int arity, boolean unique, String[] layout, int[] code, Object[] constants, int stack, int iterators) {
+        this.name = name;
+        this.arity = arity;
+        this.unique = unique;
+        this.layout = layout;
+        this.code = code;
+        this.constants = constants;
+        this.stack = stack;
+        this.iterators = iterators;
+    }
+
+    /**
+     * Compiles a top-level node, usually {@link Ast.Source}, which returns
+     * the value of the node when executed by a {@link Machine}.
+     */
+    public static Bytecode compile(Ast ast) {
+        return BytecodeCompiler.compile(ast);
+    }
+
+}
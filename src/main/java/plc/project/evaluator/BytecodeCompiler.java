@@ -0,0 +1,428 @@
+package plc.project.evaluator;
+
+import org.checkerframework.checker.nullness.qual.Nullable;
+import plc.project.parser.Ast;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+import static plc.project.evaluator.Bytecode.*;
+
+/**
+ * Compiles an {@link Ast} to {@link Bytecode}, with one compiler for each
+ * function. Frames are addressed as in {@link Compiler}, including eliding
+ * frames for blocks which don't declare anything, and errors are reported by
+ * the {@link Machine} in the same order as the {@link Evaluator}.
+ */
+final class BytecodeCompiler {
+
+    private static final RuntimeValue NIL = new RuntimeValue.Primitive(null);
+
+    private final Resolver resolver;
+    /**
+     * Whether this is a function, or the top level where RETURN is an error.
+     */
+    private final boolean function;
+    private @Nullable Chain chain;
+
+    private int[] code = new int[16];
+    private int size = 0;
+    private final List<Object> constants = new ArrayList<>();
+    private final Map<Object, Integer> indices = new HashMap<>();
+
+    /**
+     * The current and maximum size of the operand stack.
+     */
+    private int depth = 0;
+    private int stack = 0;
+
+    /**
+     * The current and maximum depth of nested loops.
+     */
+    private int loops = 0;
+    private int iterators = 0;
+
+    private BytecodeCompiler(Resolver resolver, boolean function, @Nullable Chain chain) {
+        this.resolver = resolver;
+        this.function = function;
+        this.chain = chain;
+    }
+
+    static Bytecode compile(Ast ast) {
+        var compiler = new BytecodeCompiler(Resolver.resolve(ast), false, null);
+        compiler.code(ast);
+        compiler.emit(0, RETURN);
+        return compiler.bytecode("", 0, true, new String[0]);
+    }
+
+    /**
+     * Compiles a function or method body in a new compiler. Methods don't
+     * have access to enclosing frames, and their frames are never elided since
+     * they always have {@code this}.
+     */
+    private Bytecode function(Ast.Stmt.Def ast, boolean method) {
+        var layout = layout(ast);
+        var compiler = new BytecodeCompiler(resolver, true, new Chain(method ? null : chain, layout.length == 0));
+        compiler.statements(ast.body());
+        compiler.emit(1, CONST, compiler.constant(NIL));
+        compiler.emit(0, RETURN);
+        var unique = new HashSet<>(ast.parameters()).size() == ast.parameters().size();
+        return compiler.bytecode(ast.name(), ast.parameters().size(), unique, layout);
+    }
+
+    private Bytecode bytecode(String name, int arity, boolean unique, String[] layout) {
+        return new Bytecode(name, arity, unique, layout, Arrays.copyOf(code, size), constants.toArray(), stack, iterators);
+    }
+
+    /**
+     * Compiles a node, which pushes exactly one value.
+     */
+    private void code(Ast ast) {
+        switch (ast) {
+            case Ast.Source source -> block(source.statements());
+            case Ast.Stmt.Let stmt -> {
+                undefined(stmt, stmt.name(), false);
+                optional(stmt.value());
+                define(stmt, stmt.name());
+            }
+            case Ast.Stmt.Def stmt -> {
+                undefined(stmt, stmt.name(), true);
+                emit(1, CLOSURE, constant(function(stmt, false)));
+                define(stmt, stmt.name());
+            }
+            case Ast.Stmt.If stmt -> ifStmt(stmt);
+            case Ast.Stmt.For stmt -> forStmt(stmt);
+            case Ast.Stmt.Return stmt -> {
+                optional(stmt.value());
+                if (function) {
+                    // the value is popped, but the statement is treated as pushing one like the others
+                    emit(0, RETURN);
+                } else {
+                    emit(0, THROW, constant("Return statement outside of function"));
+                }
+            }
+            case Ast.Stmt.Expression stmt -> code(stmt.expression());
+            case Ast.Stmt.Assignment stmt -> assignment(stmt);
+            case Ast.Expr.Literal expr -> emit(1, CONST, constant(new RuntimeValue.Primitive(expr.value())));
+            case Ast.Expr.Group expr -> code(expr.expression());
+            case Ast.Expr.Binary expr -> binary(expr);
+            case Ast.Expr.Variable expr -> load(expr, expr.name(), false);
+            case Ast.Expr.Property expr -> {
+                code(expr.receiver());
+                emit(0, GET_PROPERTY, name(expr.name(), false), constant(expr.receiver()));
+            }
+            case Ast.Expr.Function expr -> {
+                load(expr, expr.name(), true);
+                arguments(expr.arguments());
+                emit(-expr.arguments().size(), CALL, expr.arguments().size());
+            }
+            case Ast.Expr.Method expr -> {
+                code(expr.receiver());
+                emit(1, LOAD_METHOD, name(expr.name(), false), constant(expr.receiver()));
+                arguments(expr.arguments());
+                emit(-expr.arguments().size() - 1, CALL_METHOD, expr.arguments().size());
+            }
+            case Ast.Expr.ObjectExpr expr -> object(expr);
+        }
+    }
+
+    private void optional(Optional<Ast.Expr> expr) {
+        if (expr.isPresent()) {
+            code(expr.get());
+        } else {
+            emit(1, CONST, constant(NIL));
+        }
+    }
+
+    /**
+     * Compiles statements, leaving the last value (or NIL).
+     */
+    private void block(List<? extends Ast> statements) {
+        if (statements.isEmpty()) {
+            emit(1, CONST, constant(NIL));
+        }
+        for (int i = 0; i < statements.size(); i++) {
+            if (i != 0) {
+                emit(-1, POP);
+            }
+            code(statements.get(i));
+        }
+    }
+
+    /**
+     * Compiles statements, discarding their values.
+     */
+    private void statements(List<Ast.Stmt> statements) {
+        for (var stmt : statements) {
+            code(stmt);
+            emit(-1, POP);
+        }
+    }
+
+    /**
+     * Compiles a body in a new frame with the given layout, which is elided
+     * if it's empty since nothing can be defined in it.
+     */
+    private void body(String[] layout, List<Ast.Stmt> statements) {
+        var enclosing = chain;
+        chain = new Chain(enclosing, layout.length == 0);
+        if (layout.length != 0) {
+            emit(0, ENTER, constant(layout));
+        }
+        block(statements);
+        if (layout.length != 0) {
+            emit(0, EXIT);
+        }
+        chain = enclosing;
+    }
+
+    private void ifStmt(Ast.Stmt.If ast) {
+        var layout = layout(ast);
+        code(ast.condition());
+        var otherwise = emit(-1, JUMP_IF_FALSE, -1);
+        body(layout, ast.thenBody());
+        var end = emit(0, JUMP, -1);
+        depth--;
+        patch(otherwise);
+        body(layout, ast.elseBody());
+        patch(end);
+    }
+
+    private void forStmt(Ast.Stmt.For ast) {
+        var layout = layout(ast);
+        // each iteration has a new frame, but it can be reused if no function could capture it
+        var reuse = !Compiler.defines(ast.body());
+        code(ast.expression());
+        var iterator = loops++;
+        iterators = Math.max(iterators, loops);
+        emit(-1, ITERATOR, iterator);
+        if (reuse) {
+            emit(0, ENTER, constant(layout));
+        }
+        var loop = size;
+        var end = emit(1, NEXT, iterator, -1) + 1;
+        if (!reuse) {
+            emit(0, ENTER, constant(layout));
+        } else if (layout.length > 1) {
+            emit(0, CLEAR);
+        }
+        emit(0, DEFINE_LOCAL, 0);
+        emit(-1, POP);
+        var enclosing = chain;
+        chain = new Chain(enclosing, false);
+        statements(ast.body());
+        chain = enclosing;
+        if (!reuse) {
+            emit(0, EXIT);
+        }
+        emit(0, JUMP, loop);
+        patch(end);
+        loops--;
+        if (reuse) {
+            emit(0, EXIT);
+        }
+        emit(1, CONST, constant(NIL));
+    }
+
+    private void assignment(Ast.Stmt.Assignment ast) {
+        if (ast.expression() instanceof Ast.Expr.Variable variable) {
+            // checks the variable is defined before evaluating the value
+            var local = local(ast);
+            if (local != null) {
+                emit(0, CHECK_LOCAL, local.depth(), local.slot(), name(variable.name(), false));
+            } else {
+                load(ast, variable.name(), false);
+                emit(-1, POP);
+            }
+            code(ast.value());
+            store(ast, variable.name());
+        } else if (ast.expression() instanceof Ast.Expr.Property property) {
+            code(property.receiver());
+            emit(0, CHECK_PROPERTY, name(property.name(), false), constant(property.receiver()));
+            code(ast.value());
+            emit(-1, SET_PROPERTY, name(property.name(), false));
+        } else {
+            emit(1, THROW, constant("Expected left-hand side property or variable expression but found " + ast.expression()));
+        }
+    }
+
+    private void binary(Ast.Expr.Binary ast) {
+        var operator = ast.operator();
+        code(ast.left());
+        if (operator.equals("AND") || operator.equals("OR")) {
+            var end = emit(-1, JUMP_IF_BOOL, -1, operator.equals("AND") ? 0 : 1, constant(operator));
+            code(ast.right());
+            emit(0, BOOL, constant(operator));
+            patch(end);
+            return;
+        }
+        code(ast.right());
+        var opcode = switch (operator) {
+            case "+" -> ADD;
+            case "-" -> SUBTRACT;
+            case "*" -> MULTIPLY;
+            case "/" -> DIVIDE;
+            case "==" -> EQUAL;
+            case "!=" -> NOT_EQUAL;
+            case "<" -> LESS;
+            case "<=" -> LESS_EQUAL;
+            case ">" -> GREATER;
+            case ">=" -> GREATER_EQUAL;
+            default -> -1;
+        };
+        if (opcode != -1) {
+            emit(-1, opcode);
+        } else {
+            emit(-1, POP);
+            emit(-1, POP);
+            emit(1, THROW, constant("Invalid operator: '" + operator + "'"));
+        }
+    }
+
+    private void arguments(List<Ast.Expr> arguments) {
+        for (var argument : arguments) {
+            code(argument);
+        }
+    }
+
+    private void object(Ast.Expr.ObjectExpr ast) {
+        emit(1, OBJECT, constant(ast));
+        for (var field : ast.fields()) {
+            emit(0, UNDEFINED_FIELD, name(field.name(), false));
+            optional(field.value());
+            emit(-1, DEFINE_FIELD, name(field.name(), false));
+        }
+        for (var method : ast.methods()) {
+            emit(0, METHOD, constant(function(method, true)));
+        }
+    }
+
+    /**
+     * Pushes a variable (or a function, which must be one), as in
+     * {@link Compiler}'s lookup.
+     */
+    private void load(Ast ast, String name, boolean function) {
+        var address = chain != null ? resolver.address(ast) : Resolver.GLOBAL;
+        var local = local(ast);
+        if (address == Resolver.GLOBAL) {
+            emit(1, LOAD_GLOBAL, name(name, function));
+        } else if (local == null) {
+            emit(1, LOAD_DYNAMIC, name(name, function));
+        } else {
+            emit(1, LOAD_LOCAL, local.depth(), local.slot(), name(name, function));
+        }
+    }
+
+    private void store(Ast ast, String name) {
+        var address = chain != null ? resolver.address(ast) : Resolver.GLOBAL;
+        var local = local(ast);
+        if (address == Resolver.GLOBAL) {
+            emit(0, STORE_GLOBAL, name(name, false));
+        } else if (local == null) {
+            emit(0, STORE_DYNAMIC, name(name, false));
+        } else {
+            emit(0, STORE_LOCAL, local.depth(), local.slot(), name(name, false));
+        }
+    }
+
+    /**
+     * Checks a LET/DEF's name isn't defined in the current frame (or the
+     * scope at the top level).
+     */
+    private void undefined(Ast.Stmt ast, String name, boolean function) {
+        if (chain == null) {
+            emit(0, UNDEFINED_GLOBAL, name(name, function));
+        } else {
+            emit(0, UNDEFINED_LOCAL, resolver.address(ast).slot(), name(name, function));
+        }
+    }
+
+    private void define(Ast.Stmt ast, String name) {
+        if (chain == null) {
+            emit(0, DEFINE_GLOBAL, name(name, false));
+        } else {
+            emit(0, DEFINE_LOCAL, resolver.address(ast).slot());
+        }
+    }
+
+    private String[] layout(Ast ast) {
+        var layout = resolver.layout(ast);
+        if (layout == null) {
+            throw new AssertionError("Unresolved " + ast.getClass().getSimpleName() + ".");
+        }
+        return layout;
+    }
+
+    /**
+     * Returns the address of a variable in a frame, with the depth adjusted
+     * for elided frames, or null if it isn't in one.
+     */
+    private Resolver.@Nullable Address local(Ast ast) {
+        var address = chain != null ? resolver.address(ast) : null;
+        if (address == null || address.depth() < 0) {
+            return null;
+        }
+        var depth = 0;
+        var link = chain;
+        for (int i = 0; i < address.depth(); i++) {
+            if (!link.elided()) {
+                depth++;
+            }
+            link = link.parent();
+        }
+        return new Resolver.Address(depth, address.slot());
+    }
+
+    /**
+     * Returns the index of a constant, reusing names and literals.
+     */
+    private int constant(Object value) {
+        if (value instanceof String || value instanceof RuntimeValue.Primitive) {
+            var index = indices.get(value);
+            if (index != null) {
+                return index;
+            }
+            indices.put(value, constants.size());
+        }
+        constants.add(value);
+        return constants.size() - 1;
+    }
+
+    /**
+     * Returns a name operand (see {@link Bytecode}).
+     */
+    private int name(String name, boolean function) {
+        return constant(name) << 1 | (function ? 1 : 0);
+    }
+
+    /**
+     * Emits an instruction which changes the size of the stack by effect,
+     * returning the offset of its first operand for jumps to patch.
+     */
+    private int emit(int effect, int opcode, int... operands) {
+        if (size + operands.length + 1 > code.length) {
+            code = Arrays.copyOf(code, Math.max(2 * code.length, size + operands.length + 1));
+        }
+        code[size++] = opcode;
+        System.arraycopy(operands, 0, code, size, operands.length);
+        size += operands.length;
+        depth += effect;
+        stack = Math.max(stack, depth);
+        return size - operands.length;
+    }
+
+    /**
+     * Sets a jump's target to the next instruction.
+     */
+    private void patch(int operand) {
+        code[operand] = size;
+    }
+
+    private record Chain(@Nullable Chain parent, boolean elided) {}
+
+}
@@ -0,0 +1,650 @@
+package plc.project.evaluator;
+
+import org.checkerframework.checker.nullness.qual.Nullable;
+import plc.project.parser.Ast;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+
+/**
+ * A second execution engine, which compiles an {@link Ast} once into a tree
+ * of Java lambdas ("closure compilation") and runs that instead of walking
+ * the AST like {@link Evaluator}. Everything known ahead of time is resolved
+ * during compilation: operators, literal values, arities, and variables,
+ * which use the {@link Resolver}'s frame addresses. The JIT can then inline
+ * each lambda into its parent, which re-dispatching through the visitor for
+ * every node prevents.
+ *
+ * <p>Programs behave the same as with the evaluator, including the order and
+ * messages of errors (which are reported when evaluated, not compiled), and
+ * share its binary operators (which {@link BinaryNode} specializes to the
+ * operand types it sees). The differences are internal: RETURN doesn't
+ * capture a stack trace, and frames for blocks which don't declare anything
+ * are elided. The evaluator also uses it to compile the bodies of hot
+ * functions, see {@link Evaluator#tierUp(int)}.
+ */
+public final class Compiler {
+
+    /**
+     * A compiled program, which may be run any number of times.
+     */
+    @FunctionalInterface
+    public interface Program {
+        RuntimeValue run(Scope scope) throws EvaluateException;
+    }
+
+    /**
+     * Compiled code for a node, given the current frame and the scope at the
+     * end of the frame chain (see {@link Resolver}). The frame is null at the
+     * top level, or if every frame so far was elided.
+     */
+    @FunctionalInterface
+    interface Code {
+        RuntimeValue execute(@Nullable Frame frame, Scope scope) throws EvaluateException;
+    }
+
+    @FunctionalInterface
+    private interface Lookup {
+        @Nullable RuntimeValue get(@Nullable Frame frame, Scope scope);
+    }
+
+    @FunctionalInterface
+    private interface Assign {
+        void set(@Nullable Frame frame, Scope scope, RuntimeValue value);
+    }
+
+    private static final RuntimeValue NIL = new RuntimeValue.Primitive(null);
+
+    private final Resolver resolver;
+
+    /**
+     * The frames enclosing the code being compiled, or null at the top level.
+     */
+    private @Nullable Chain chain = null;
+
+    private Compiler(Resolver resolver) {
+        this.resolver = resolver;
+    }
+
+    /**
+     * Compiles a top-level node, usually {@link Ast.Source}. Running the
+     * program is equivalent to {@link Evaluator#visit(Ast)} with an evaluator
+     * for the scope.
+     */
+    public static Program compile(Ast ast) {
+        var code = new Compiler(Resolver.resolve(ast)).code(ast);
+        return scope -> {
+            try {
+                return code.execute(null, scope);
+            } catch (Return e) {
+                throw new EvaluateException("Return statement outside of function");
+            }
+        };
+    }
+
+    /**
+     * Compiles the body of a function defined by the {@link Evaluator}, which
+     * runs it instead once the function is hot. The code is given a frame of
+     * the function's layout with the arguments first, whose parent is the
+     * frame it was defined in, and returns the result of the call. Since the
+     * evaluator doesn't elide frames, the enclosing frames all exist.
+     */
+    static Code function(Ast.Stmt.Def ast, Resolver resolver) {
+        var compiler = new Compiler(resolver);
+        compiler.chain = new Chain(null, false);
+        var body = compiler.block(ast.body());
+        return (frame, scope) -> {
+            try {
+                body.execute(frame, scope);
+                return NIL;
+            } catch (Return e) {
+                return e.value;
+            }
+        };
+    }
+
+    private Code code(Ast ast) {
+        return switch (ast) {
+            case Ast.Source source -> block(source.statements());
+            case Ast.Stmt.Let stmt -> let(stmt);
+            case Ast.Stmt.Def stmt -> def(stmt);
+            case Ast.Stmt.If stmt -> ifStmt(stmt);
+            case Ast.Stmt.For stmt -> forStmt(stmt);
+            case Ast.Stmt.Return stmt -> {
+                var value = optional(stmt.value());
+                yield (frame, scope) -> {
+                    throw new Return(value.execute(frame, scope));
+                };
+            }
+            case Ast.Stmt.Expression stmt -> code(stmt.expression());
+            case Ast.Stmt.Assignment stmt -> assignment(stmt);
+            case Ast.Expr.Literal expr -> {
+                var value = new RuntimeValue.Primitive(expr.value());
+                yield (frame, scope) -> value;
+            }
+            case Ast.Expr.Group expr -> code(expr.expression());
+            case Ast.Expr.Binary expr -> binary(expr);
+            case Ast.Expr.Variable expr -> variable(expr);
+            case Ast.Expr.Property expr -> property(expr);
+            case Ast.Expr.Function expr -> function(expr);
+            case Ast.Expr.Method expr -> method(expr);
+            case Ast.Expr.ObjectExpr expr -> object(expr);
+        };
+    }
+
+    private Code optional(java.util.Optional<Ast.Expr> expr) {
+        return expr.isPresent() ? code(expr.get()) : (frame, scope) -> NIL;
+    }
+
+    /**
+     * Compiles statements to run in order, returning the last value (or NIL).
+     */
+    private Code block(List<? extends Ast> statements) {
+        var codes = new Code[statements.size()];
+        for (int i = 0; i < codes.length; i++) {
+            codes[i] = code(statements.get(i));
+        }
+        return switch (codes.length) {
+            case 0 -> (frame, scope) -> NIL;
+            case 1 -> codes[0];
+            case 2 -> {
+                var first = codes[0];
+                var second = codes[1];
+                yield (frame, scope) -> {
+                    first.execute(frame, scope);
+                    return second.execute(frame, scope);
+                };
+            }
+            default -> (frame, scope) -> {
+                RuntimeValue value = NIL;
+                for (var code : codes) {
+                    value = code.execute(frame, scope);
+                }
+                return value;
+            };
+        };
+    }
+
+    /**
+     * Compiles a body in a new frame with the given layout, which is elided
+     * if it's empty since nothing can be defined in it. Methods don't have
+     * access to enclosing frames.
+     */
+    private Code body(String[] layout, List<Ast.Stmt> statements, boolean method) {
+        var enclosing = chain;
+        chain = new Chain(method ? null : enclosing, layout.length == 0);
+        try {
+            return block(statements);
+        } finally {
+            chain = enclosing;
+        }
+    }
+
+    private Code let(Ast.Stmt.Let ast) {
+        var name = ast.name();
+        var value = optional(ast.value());
+        var define = define(ast, name);
+        var defined = defined(ast, name);
+        return (frame, scope) -> {
+            // check if name already defined in current scope
+            if (defined.get(frame, scope) != null) {
+                throw new EvaluateException("Variable '" + name + "' is already defined in the current scope");
+            }
+            var result = value.execute(frame, scope);
+            define.set(frame, scope, result);
+            return result;
+        };
+    }
+
+    private Code def(Ast.Stmt.Def ast) {
+        var name = ast.name();
+        var define = define(ast, name);
+        var defined = defined(ast, name);
+        var unique = new HashSet<>(ast.parameters()).size() == ast.parameters().size();
+        var arity = ast.parameters().size();
+        var layout = layout(ast);
+        var body = body(layout, ast.body(), false);
+        return (frame, scope) -> {
+            // check if name already defined in current scope
+            if (defined.get(frame, scope) != null) {
+                throw new EvaluateException("Function '" + name + "' is already defined in the current scope");
+            } else if (!unique) {
+                throw new EvaluateException("Parameters must be unique");
+            }
+            RuntimeValue function = new RuntimeValue.Function(name, arguments -> {
+                if (arguments.size() != arity) {
+                    throw new EvaluateException("Function '" + name + "' expects " + arity +
+                        " arguments, but found " + arguments.size());
+                }
+                var called = frame;
+                if (layout.length != 0) {
+                    called = new Frame(frame, layout);
+                    for (int i = 0; i < arity; i++) {
+                        called.values[i] = arguments.get(i);
+                    }
+                }
+                try {
+                    body.execute(called, scope);
+                    return NIL;
+                } catch (Return e) {
+                    return e.value;
+                }
+            });
+            define.set(frame, scope, function);
+            return function;
+        };
+    }
+
+    private Code ifStmt(Ast.Stmt.If ast) {
+        var condition = code(ast.condition());
+        var layout = layout(ast);
+        var thenBody = body(layout, ast.thenBody(), false);
+        var elseBody = body(layout, ast.elseBody(), false);
+        return (frame, scope) -> {
+            var value = Evaluator.requireType(condition.execute(frame, scope), Boolean.class);
+            var block = layout.length != 0 ? new Frame(frame, layout) : frame;
+            return value ? thenBody.execute(block, scope) : elseBody.execute(block, scope);
+        };
+    }
+
+    private Code forStmt(Ast.Stmt.For ast) {
+        var expression = code(ast.expression());
+        var layout = layout(ast);
+        var body = body(layout, ast.body(), false);
+        // each iteration has a new frame, but it can be reused if no function could capture it
+        var reuse = !defines(ast.body());
+        return (frame, scope) -> {
+            var primitive = Evaluator.requireType(expression.execute(frame, scope), RuntimeValue.Primitive.class);
+            if (primitive.value() == null) {
+                throw new EvaluateException("Expect an iterable, but found NIL");
+            }
+            if (!(primitive.value() instanceof Iterable<?> iterable)) {
+                throw new EvaluateException("Expected an iterable, but found " + primitive.value().getClass().getName());
+            }
+            var block = new Frame(frame, layout);
+            for (var element : iterable) {
+                if (!reuse) {
+                    block = new Frame(frame, layout);
+                } else if (layout.length > 1) {
+                    Arrays.fill(block.values, null);
+                }
+                if (!(element instanceof RuntimeValue value)) {
+                    throw new EvaluateException("Expected RuntimeValue in iterable, received " +
+                        (element != null ? element.getClass().getName() : "null"));
+                }
+                block.values[0] = value;
+                body.execute(block, scope);
+            }
+            return NIL;
+        };
+    }
+
+    /**
+     * Returns if statements contain a DEF, including in nested blocks.
+     */
+    static boolean defines(List<Ast.Stmt> statements) {
+        for (var stmt : statements) {
+            var defines = switch (stmt) {
+                case Ast.Stmt.Def _ -> true;
+                case Ast.Stmt.If ast -> defines(ast.thenBody()) || defines(ast.elseBody());
+                case Ast.Stmt.For ast -> defines(ast.body());
+                default -> false;
+            };
+            if (defines) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private Code variable(Ast.Expr.Variable ast) {
+        var name = ast.name();
+        var lookup = lookup(ast, name);
+        Code general = (frame, scope) -> {
+            var value = lookup.get(frame, scope);
+            if (value == null) {
+                throw new EvaluateException("Variable '" + name + "' is not defined");
+            }
+            return value;
+        };
+        // locals are read directly, rather than through the lookup
+        var address = local(ast);
+        if (address == null) {
+            return general;
+        }
+        var depth = address.depth();
+        var slot = address.slot();
+        return (frame, scope) -> {
+            var value = frame.ancestor(depth).values[slot];
+            return value != null ? value : general.execute(frame, scope);
+        };
+    }
+
+    private Code assignment(Ast.Stmt.Assignment ast) {
+        var value = code(ast.value());
+        if (ast.expression() instanceof Ast.Expr.Variable variable) {
+            var name = variable.name();
+            var lookup = lookup(ast, name);
+            var assign = assign(ast, name);
+            Code general = (frame, scope) -> {
+                if (lookup.get(frame, scope) == null) {
+                    throw new EvaluateException("Variable '" + name + "' is not defined");
+                }
+                var result = value.execute(frame, scope);
+                assign.set(frame, scope, result);
+                return result;
+            };
+            var address = local(ast);
+            if (address == null) {
+                return general;
+            }
+            var depth = address.depth();
+            var slot = address.slot();
+            return (frame, scope) -> {
+                var target = frame.ancestor(depth);
+                if (target.values[slot] == null) {
+                    return general.execute(frame, scope);
+                }
+                var result = value.execute(frame, scope);
+                target.values[slot] = result;
+                return result;
+            };
+        } else if (ast.expression() instanceof Ast.Expr.Property property) {
+            var receiver = code(property.receiver());
+            var name = property.name();
+            return (frame, scope) -> {
+                if (!(receiver.execute(frame, scope) instanceof RuntimeValue.ObjectValue object)) {
+                    throw new EvaluateException("Cannot access property since '" + property.receiver() + "' is not defined");
+                } else if (object.scope().get(name, false).isEmpty()) {
+                    throw new EvaluateException("Property '" + name + "' is not defined on '" + property.receiver() + "'");
+                }
+                var result = value.execute(frame, scope);
+                object.scope().set(name, result);
+                return result;
+            };
+        } else {
+            return (frame, scope) -> {
+                throw new EvaluateException("Expected left-hand side property or variable expression but found " + ast.expression());
+            };
+        }
+    }
+
+    private Code binary(Ast.Expr.Binary ast) {
+        var left = code(ast.left());
+        var right = code(ast.right());
+        return switch (ast.operator()) {
+            case "AND" -> (frame, scope) -> {
+                if (!Evaluator.requireBoolean(left.execute(frame, scope), "left", "AND")) {
+                    return new RuntimeValue.Primitive(false);
+                }
+                return new RuntimeValue.Primitive(Evaluator.requireBoolean(right.execute(frame, scope), "right", "AND"));
+            };
+            case "OR" -> (frame, scope) -> {
+                if (Evaluator.requireBoolean(left.execute(frame, scope), "left", "OR")) {
+                    return new RuntimeValue.Primitive(true);
+                }
+                return new RuntimeValue.Primitive(Evaluator.requireBoolean(right.execute(frame, scope), "right", "OR"));
+            };
+            case "+", "-", "*", "/", "==", "!=", "<", "<=", ">", ">=" -> new BinaryNode(ast.operator(), left, right);
+            default -> (frame, scope) -> {
+                left.execute(frame, scope);
+                right.execute(frame, scope);
+                throw new EvaluateException("Invalid operator: '" + ast.operator() + "'");
+            };
+        };
+    }
+
+    private Code property(Ast.Expr.Property ast) {
+        var receiver = code(ast.receiver());
+        var name = ast.name();
+        return (frame, scope) -> {
+            if (!(receiver.execute(frame, scope) instanceof RuntimeValue.ObjectValue object)) {
+                throw new EvaluateException("Cannot access property since '" + ast.receiver() + "' is not defined");
+            }
+            var property = object.scope().get(name, false);
+            if (property.isEmpty()) {
+                throw new EvaluateException("Property '" + name + "' is not defined on '" + ast.receiver() + "'");
+            }
+            return property.get();
+        };
+    }
+
+    private Code function(Ast.Expr.Function ast) {
+        var name = ast.name();
+        var lookup = lookup(ast, name);
+        var arguments = arguments(ast.arguments(), false);
+        return (frame, scope) -> {
+            var function = lookup.get(frame, scope);
+            if (function == null) {
+                throw new EvaluateException("Function '" + name + "' is not defined");
+            }
+            var definition = Evaluator.requireType(function, RuntimeValue.Function.class).definition();
+            return definition.invoke(evaluate(arguments, null, frame, scope));
+        };
+    }
+
+    private Code method(Ast.Expr.Method ast) {
+        var receiver = code(ast.receiver());
+        var name = ast.name();
+        var arguments = arguments(ast.arguments(), true);
+        return (frame, scope) -> {
+            var value = receiver.execute(frame, scope);
+            if (!(value instanceof RuntimeValue.ObjectValue object)) {
+                throw new EvaluateException("Cannot access property since '" + ast.receiver() + "' is not defined");
+            }
+            var method = object.scope().get(name, false);
+            if (method.isEmpty()) {
+                throw new EvaluateException("Property '" + name + "' is not defined on '" + ast.receiver() + "'");
+            }
+            var definition = Evaluator.requireType(method.get(), RuntimeValue.Function.class).definition();
+            return definition.invoke(evaluate(arguments, value, frame, scope));
+        };
+    }
+
+    /**
+     * Compiles arguments, leaving the first slot for the receiver of methods.
+     */
+    private Code[] arguments(List<Ast.Expr> arguments, boolean receiver) {
+        var offset = receiver ? 1 : 0;
+        var codes = new Code[arguments.size() + offset];
+        for (int i = 0; i < arguments.size(); i++) {
+            codes[i + offset] = code(arguments.get(i));
+        }
+        return codes;
+    }
+
+    private static List<RuntimeValue> evaluate(Code[] arguments, @Nullable RuntimeValue receiver, @Nullable Frame frame, Scope scope) throws EvaluateException {
+        if (arguments.length == 0) {
+            return List.of();
+        }
+        var values = new RuntimeValue[arguments.length];
+        var start = 0;
+        if (receiver != null) {
+            values[start++] = receiver;
+        }
+        for (int i = start; i < arguments.length; i++) {
+            values[i] = arguments[i].execute(frame, scope);
+        }
+        return Arrays.asList(values);
+    }
+
+    private Code object(Ast.Expr.ObjectExpr ast) {
+        var fields = new Code[ast.fields().size()];
+        for (int i = 0; i < fields.length; i++) {
+            fields[i] = optional(ast.fields().get(i).value());
+        }
+        var methods = new Code[ast.methods().size()];
+        for (int i = 0; i < methods.length; i++) {
+            var method = ast.methods().get(i);
+            methods[i] = body(layout(method), method.body(), true);
+        }
+        return (frame, scope) -> {
+            var object_scope = new Scope(null);
+            var object = new RuntimeValue.ObjectValue(ast.name(), object_scope);
+            for (int i = 0; i < fields.length; i++) {
+                var field = ast.fields().get(i);
+                if (object_scope.get(field.name(), true).isPresent()) {
+                    throw new EvaluateException("Variable '" + field.name() + "' is already defined in '" + ast.name() + "'s' scope");
+                }
+                object_scope.define(field.name(), fields[i].execute(frame, scope));
+            }
+            for (int i = 0; i < methods.length; i++) {
+                var method = ast.methods().get(i);
+                if (object_scope.get(method.name(), true).isPresent()) {
+                    throw new EvaluateException("Method '" + method.name() + "' is already defined in '" + ast.name() + "'s' scope");
+                } else if (new HashSet<>(method.parameters()).size() != method.parameters().size()) {
+                    throw new EvaluateException("Method parameters must be unique");
+                }
+                var body = methods[i];
+                var layout = resolver.layout(method);
+                var arity = method.parameters().size();
+                object_scope.define(method.name(), new RuntimeValue.Function(method.name(), arguments -> {
+                    if (arguments.size() != arity + 1) {
+                        throw new EvaluateException("Method '" + method.name() + "' expects " + arity +
+                            " arguments, but found " + (arguments.size() - 1));
+                    }
+                    // methods are evaluated in the object's scope, with this and parameters first
+                    var called = new Frame(null, layout);
+                    for (int j = 0; j <= arity; j++) {
+                        called.values[j] = arguments.get(j);
+                    }
+                    try {
+                        body.execute(called, object_scope);
+                        return NIL;
+                    } catch (Return e) {
+                        return e.value;
+                    }
+                }));
+            }
+            return object;
+        };
+    }
+
+    private String[] layout(Ast ast) {
+        var layout = resolver.layout(ast);
+        if (layout == null) {
+            throw new AssertionError("Unresolved " + ast.getClass().getSimpleName() + ".");
+        }
+        return layout;
+    }
+
+    /**
+     * Returns the number of frames which actually exist at runtime for a
+     * resolver depth, skipping elided frames. Frames past the end of the chain
+     * enclose a function compiled for the evaluator, so they always exist.
+     */
+    private int depth(int depth) {
+        var actual = 0;
+        var link = chain;
+        for (int i = 0; i < depth; i++) {
+            if (link == null || !link.elided()) {
+                actual++;
+            }
+            link = link != null ? link.parent() : null;
+        }
+        return actual;
+    }
+
+    /**
+     * Returns the address of a variable in a frame, with the depth adjusted
+     * for elided frames, or null if it isn't in one.
+     */
+    private Resolver.@Nullable Address local(Ast ast) {
+        var address = chain != null ? resolver.address(ast) : null;
+        if (address == null || address.depth() < 0) {
+            return null;
+        }
+        return new Resolver.Address(depth(address.depth()), address.slot());
+    }
+
+    /**
+     * Looks up a variable by its address, as in {@link Evaluator}.
+     */
+    private Lookup lookup(Ast ast, String name) {
+        var address = chain != null ? resolver.address(ast) : Resolver.GLOBAL;
+        if (address == Resolver.GLOBAL) {
+            return (frame, scope) -> scope.get(name, false).orElse(null);
+        }
+        var local = local(ast);
+        if (local == null) {
+            return (frame, scope) -> dynamic(frame, scope, name);
+        }
+        var depth = local.depth();
+        var slot = local.slot();
+        return (frame, scope) -> {
+            var value = frame.ancestor(depth).values[slot];
+            return value != null ? value : dynamic(frame, scope, name);
+        };
+    }
+
+    private static @Nullable RuntimeValue dynamic(@Nullable Frame frame, Scope scope, String name) {
+        var value = frame != null ? frame.get(name) : null;
+        return value != null ? value : scope.get(name, false).orElse(null);
+    }
+
+    /**
+     * Assigns a variable which {@link #lookup(Ast, String)} found.
+     */
+    private Assign assign(Ast ast, String name) {
+        var address = chain != null ? resolver.address(ast) : Resolver.GLOBAL;
+        if (address == Resolver.GLOBAL) {
+            return (frame, scope, value) -> scope.set(name, value);
+        } else if (address == null || address == Resolver.DYNAMIC) {
+            return (frame, scope, value) -> {
+                if (frame == null || !frame.set(name, value)) {
+                    scope.set(name, value);
+                }
+            };
+        }
+        var depth = depth(address.depth());
+        var slot = address.slot();
+        return (frame, scope, value) -> {
+            var target = frame.ancestor(depth);
+            if (target.values[slot] != null) {
+                target.values[slot] = value;
+            } else if (!frame.set(name, value)) {
+                scope.set(name, value);
+            }
+        };
+    }
+
+    /**
+     * Returns the current definition of a LET/DEF's name in the current frame
+     * (or the scope at the top level), if any.
+     */
+    private Lookup defined(Ast.Stmt ast, String name) {
+        if (chain == null) {
+            return (frame, scope) -> scope.get(name, true).orElse(null);
+        }
+        var slot = resolver.address(ast).slot();
+        return (frame, scope) -> frame.values[slot];
+    }
+
+    private Assign define(Ast.Stmt ast, String name) {
+        if (chain == null) {
+            return (frame, scope, value) -> scope.define(name, value);
+        }
+        var slot = resolver.address(ast).slot();
+        return (frame, scope, value) -> frame.values[slot] = value;
+    }
+
+    private record Chain(@Nullable Chain parent, boolean elided) {}
+
+    /**
+     * Unwinds to the enclosing function for RETURN. Unlike the evaluator's
+     * ReturnException this doesn't capture a stack trace, which dominates the
+     * cost of returning from deep recursion.
+     */
+    private static final class Return extends RuntimeException {
+
+        private final RuntimeValue value;
+
+        private Return(RuntimeValue value) {
+            super(null, null, false, false);
+            this.value = value;
+        }
+
+    }
+
+}
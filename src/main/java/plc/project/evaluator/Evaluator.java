@@ -1,20 +1,49 @@
 package plc.project.evaluator;
 
+import org.checkerframework.checker.nullness.qual.Nullable;
 import plc.project.parser.Ast;
+import plc.project.parser.ParseException;
+import plc.project.parser.Parser;
 
 import java.math.BigDecimal;
 import java.math.BigInteger;
 import java.util.HashSet;
 import java.util.List;
+import java.util.Objects;
 
 public final class Evaluator implements Ast.Visitor<RuntimeValue, EvaluateException> {
 
     private Scope scope;
 
+    /**
+     * The frame of the current function or block, or null at the top level
+     * where variables are in the scope. See {@link Resolver}.
+     */
+    private @Nullable Frame frame = null;
+    private Resolver resolver = Resolver.EMPTY;
+
+    /**
+     * The number of calls after which functions are compiled, see
+     * {@link #tierUp(int)}.
+     */
+    private int threshold = 100;
+
     public Evaluator(Scope scope) {
         this.scope = scope;
     }
 
+    /**
+     * Sets the number of calls after which a function defined by this
+     * evaluator is compiled with the {@link Compiler}, which then runs its body
+     * on later calls instead of evaluating it again. This only changes how
+     * fast hot functions (such as recursive ones) run, not their behavior;
+     * {@link Integer#MAX_VALUE} disables compiling functions. Defaults to 100.
+     */
+    public Evaluator tierUp(int threshold) {
+        this.threshold = threshold;
+        return this;
+    }
+
     @Override
     public RuntimeValue visit(Ast.Source ast) throws EvaluateException {
         RuntimeValue value = new RuntimeValue.Primitive(null);
@@ -33,10 +62,31 @@ public final class Evaluator implements Ast.Visitor<RuntimeValue, EvaluateExcept
         }
     }
 
+    /**
+     * Evaluates statements as they're parsed, rather than parsing the whole
+     * source first as with {@link #visit(Ast.Source)}, so output starts after
+     * the first statement and statements can be discarded once evaluated.
+     * As a consequence, statements before a syntax error have already been
+     * evaluated when the {@link ParseException} is thrown.
+     */
+    public RuntimeValue evaluate(Parser parser) throws ParseException, EvaluateException {
+        RuntimeValue value = new RuntimeValue.Primitive(null);
+
+        try {
+            for (var stmt = parser.parseNextStmt(); stmt != null; stmt = parser.parseNextStmt()) {
+                value = visit(stmt);
+            }
+
+            return value;
+        } catch (ReturnException e) {
+            throw new EvaluateException("Return statement outside of function");
+        }
+    }
+
     @Override
     public RuntimeValue visit(Ast.Stmt.Let ast) throws EvaluateException {
         // check if name already defined in current scope
-        if (scope.get(ast.name(), true).isPresent()) {
+        if (defined(ast, ast.name())) {
             throw new EvaluateException("Variable '" + ast.name() + "' is already defined in the current scope");
         }
 
@@ -47,7 +97,7 @@ public final class Evaluator implements Ast.Visitor<RuntimeValue, EvaluateExcept
             value = new RuntimeValue.Primitive(null);
         }
 
-        scope.define(ast.name(), value);
+        define(ast, ast.name(), value);
 
         return value;
     }
@@ -55,7 +105,7 @@ public final class Evaluator implements Ast.Visitor<RuntimeValue, EvaluateExcept
     @Override
     public RuntimeValue visit(Ast.Stmt.Def ast) throws EvaluateException {
         // check if name already defined in current scope
-        if (scope.get(ast.name(), true).isPresent()) {
+        if (defined(ast, ast.name())) {
             throw new EvaluateException("Function '" + ast.name() + "' is already defined in the current scope");
         }
 
@@ -67,6 +117,10 @@ public final class Evaluator implements Ast.Visitor<RuntimeValue, EvaluateExcept
 
         // scope where function is defined
         Scope def_scope = scope;
+        Frame def_frame = frame;
+        String[] layout = layout(ast, ast);
+        Resolver def_resolver = resolver;
+        Tier tier = new Tier(threshold);
 
         // function behavior
         RuntimeValue.Function.Definition definition = arguments -> {
@@ -76,15 +130,31 @@ public final class Evaluator implements Ast.Visitor<RuntimeValue, EvaluateExcept
                         " arguments, but found " + arguments.size());
             }
 
+            // run the compiled body once the function is hot
+            if (tier.code == null && ++tier.calls >= tier.threshold) {
+                tier.code = Compiler.function(ast, def_resolver);
+            }
+            if (tier.code != null) {
+                Frame called = new Frame(def_frame, layout);
+                for (int i = 0; i < ast.parameters().size(); i++) {
+                    called.values[i] = arguments.get(i);
+                }
+                return tier.code.execute(called, def_scope);
+            }
+
             // scope where function is called
             Scope caller_scope = scope;
+            Frame caller_frame = frame;
+            Resolver caller_resolver = resolver;
 
             try {
-                // scope within function definition body
-                scope = new Scope(def_scope);
+                // frame within function definition body, with parameters first
+                scope = def_scope;
+                frame = new Frame(def_frame, layout);
+                resolver = def_resolver;
 
                 for (int i = 0; i < ast.parameters().size(); i++) {
-                    scope.define(ast.parameters().get(i), arguments.get(i));
+                    frame.values[i] = arguments.get(i);
                 }
 
                 RuntimeValue result = new RuntimeValue.Primitive(null); // Default to NIL
@@ -103,11 +173,13 @@ public final class Evaluator implements Ast.Visitor<RuntimeValue, EvaluateExcept
 
             } finally {
                 scope = caller_scope;   // revert to caller scope
+                frame = caller_frame;
+                resolver = caller_resolver;
             }
         };
 
         RuntimeValue.Function function = new RuntimeValue.Function(ast.name(), definition);
-        scope.define(ast.name(), function);
+        define(ast, ast.name(), function);
 
         return function;
     }
@@ -117,11 +189,11 @@ public final class Evaluator implements Ast.Visitor<RuntimeValue, EvaluateExcept
         RuntimeValue condition_value = visit(ast.condition());
         Boolean bool_value = requireType(condition_value, Boolean.class);
 
-        Scope original_scope = scope;
+        Frame original_frame = frame;
         RuntimeValue result = new RuntimeValue.Primitive(null); // Default to NIL
 
         try {
-            scope = new Scope(original_scope);
+            frame = new Frame(original_frame, layout(ast, ast));
 
             List<Ast.Stmt> body = bool_value ? ast.thenBody() : ast.elseBody();
 
@@ -131,7 +203,7 @@ public final class Evaluator implements Ast.Visitor<RuntimeValue, EvaluateExcept
 
             return result;
         } finally {
-            scope = original_scope;
+            frame = original_frame;
         }
     }
 
@@ -152,13 +224,14 @@ public final class Evaluator implements Ast.Visitor<RuntimeValue, EvaluateExcept
 
         Iterable<?> iterable = (Iterable<?>) primitive.value();
 
-        // scope where for loop is entered
-        Scope parent_scope = scope;
+        // frame where for loop is entered
+        Frame parent_frame = frame;
+        String[] layout = layout(ast, ast);
 
         try {
             for (Object element : iterable) {
-                // scope corresponding to for loop body
-                scope = new Scope(parent_scope);
+                // frame corresponding to for loop body, with the variable first
+                frame = new Frame(parent_frame, layout);
 
                 // check if element is a RuntimeValue
                 if (!(element instanceof RuntimeValue)) {
@@ -166,7 +239,7 @@ public final class Evaluator implements Ast.Visitor<RuntimeValue, EvaluateExcept
                             (element != null ? element.getClass().getName() : "null"));
                 }
 
-                scope.define(ast.name(), (RuntimeValue) element);
+                frame.values[0] = (RuntimeValue) element;
 
                 for (Ast.Stmt stmt : ast.body()) {
                     visit(stmt);
@@ -176,11 +249,26 @@ public final class Evaluator implements Ast.Visitor<RuntimeValue, EvaluateExcept
             return new RuntimeValue.Primitive(null);
 
         } finally {
-            // revert to parent scope
-            scope = parent_scope;
+            // revert to parent frame
+            frame = parent_frame;
         }
     }
 
+    /**
+     * Counts the calls to a function, and holds its body once compiled.
+     */
+    private static final class Tier {
+
+        private final int threshold;
+        private int calls = 0;
+        private Compiler.@Nullable Code code = null;
+
+        private Tier(int threshold) {
+            this.threshold = threshold;
+        }
+
+    }
+
     /**
      * Exception class which exits all nested scopes within a function and propagates the return value to the call scope.
      */
@@ -222,13 +310,13 @@ public final class Evaluator implements Ast.Visitor<RuntimeValue, EvaluateExcept
             String lhs = ((Ast.Expr.Variable) ast.expression()).name();
 
             // Check variable name exists
-            if (scope.get(lhs, false).isEmpty()) {
+            if (lookup(ast, lhs) == null) {
                 throw new EvaluateException("Variable '" + lhs + "' is not defined");
             }
 
             RuntimeValue rhs = visit(ast.value());
 
-            scope.set(lhs, rhs);
+            assign(ast, lhs, rhs);
 
             return rhs;
 
@@ -277,47 +365,29 @@ public final class Evaluator implements Ast.Visitor<RuntimeValue, EvaluateExcept
         if (ast.operator().equals("AND")) {
             // check left first
             var left = visit(ast.left());
-            var left_primitive = requireType(left, RuntimeValue.Primitive.class);
-            if (!(left_primitive.value() instanceof Boolean)) {
-                throw new EvaluateException("left operand must be a Boolean for AND operator");
-            }
 
             // check for falsey short-circuiting
-            if (!(Boolean) left_primitive.value()) {
+            if (!requireBoolean(left, "left", "AND")) {
                 return new RuntimeValue.Primitive(false);
             }
 
             // O.W. left true
             var right = visit(ast.right());
-            var right_primitive = requireType(right, RuntimeValue.Primitive.class);
-            if (!(right_primitive.value() instanceof Boolean)) {
-                throw new EvaluateException("right operand must be a Boolean for AND operator");
-            }
-
-            return new RuntimeValue.Primitive((Boolean) right_primitive.value());
+            return new RuntimeValue.Primitive(requireBoolean(right, "right", "AND"));
         }
 
         if (ast.operator().equals("OR")) {
             // check left first
             var left = visit(ast.left());
-            var left_primitive = requireType(left, RuntimeValue.Primitive.class);
-            if (!(left_primitive.value() instanceof Boolean)) {
-                throw new EvaluateException("left operand must be a Boolean for OR operator");
-            }
 
             // check for truthy short-circuiting
-            if ((Boolean) left_primitive.value()) {
+            if (requireBoolean(left, "left", "OR")) {
                 return new RuntimeValue.Primitive(true);
             }
 
             // O.W. left false
             var right = visit(ast.right());
-            var right_primitive = requireType(right, RuntimeValue.Primitive.class);
-            if (!(right_primitive.value() instanceof Boolean)) {
-                throw new EvaluateException("right operand must be a Boolean for OR operator");
-            }
-
-            return new RuntimeValue.Primitive((Boolean) right_primitive.value());
+            return new RuntimeValue.Primitive(requireBoolean(right, "right", "OR"));
         }
 
         var left = visit(ast.left());
@@ -325,200 +395,199 @@ public final class Evaluator implements Ast.Visitor<RuntimeValue, EvaluateExcept
 
         switch (ast.operator()) {
             case "+":
-                // check if left string
-                var left_primitive = requireType(left, RuntimeValue.Primitive.class);
-
-                if (left_primitive.value() instanceof String) {
-                    return new RuntimeValue.Primitive(left_primitive.value().toString() + right.print());
-                }
+                return add(left, right);
+            case "-":
+                return subtract(left, right);
+            case "*":
+                return multiply(left, right);
+            case "/":
+                return divide(left, right);
+            case "==":
+                return new RuntimeValue.Primitive(equal(left, right));
+            case "!=":
+                return new RuntimeValue.Primitive(!equal(left, right));
+            case "<":
+                return new RuntimeValue.Primitive(compare(left, right) < 0);
+            case "<=":
+                return new RuntimeValue.Primitive(compare(left, right) <= 0);
+            case ">":
+                return new RuntimeValue.Primitive(compare(left, right) > 0);
+            case ">=":
+                return new RuntimeValue.Primitive(compare(left, right) >= 0);
+            default:
+                throw new EvaluateException("Invalid operator: '" + ast.operator() + "'");
+        }
+    }
 
-                // check if right is string
-                try {
-                    var right_primitive = requireType(right, RuntimeValue.Primitive.class);
-                    if (right_primitive.value() instanceof String) {
-                        return new RuntimeValue.Primitive(left.print() + right_primitive.value().toString());
-                    }
-                // O.W. continue
-                } catch (EvaluateException _) {}
-
-                // check if left is integer
-                if (left_primitive.value() instanceof BigInteger) {
-                    // assume right is (primitive) integer
-                    var right_int = requireType(right, BigInteger.class);
-                    return new RuntimeValue.Primitive(((BigInteger)left_primitive.value()).add(right_int));
-                }
+    /*
+     * Binary operators, which are shared with the Compiler so both engines
+     * have the same semantics.
+     */
 
-                // check if left is decimal
-                if (left_primitive.value() instanceof BigDecimal) {
-                    var right_decimal = requireType(right, BigDecimal.class);
-                    return new RuntimeValue.Primitive(((BigDecimal)left_primitive.value()).add(right_decimal));
-                }
+    static boolean requireBoolean(RuntimeValue value, String operand, String operator) throws EvaluateException {
+        var primitive = requireType(value, RuntimeValue.Primitive.class);
+        if (!(primitive.value() instanceof Boolean bool)) {
+            throw new EvaluateException(operand + " operand must be a Boolean for " + operator + " operator");
+        }
+        return bool;
+    }
 
-                // O.W. invalid
-                throw new EvaluateException("Invalid operands for '+' operator");
+    static RuntimeValue add(RuntimeValue left, RuntimeValue right) throws EvaluateException {
+        // check if left string
+        var left_primitive = requireType(left, RuntimeValue.Primitive.class);
 
-            case "-":
-                // check if left is primitive
-                left_primitive = requireType(left, RuntimeValue.Primitive.class);
-
-                // check if left is integer
-                if (left_primitive.value() instanceof BigInteger) {
-                    // assume right is (primitive) integer
-                    var right_int = requireType(right, BigInteger.class);
-                    return new RuntimeValue.Primitive(((BigInteger)left_primitive.value()).subtract(right_int));
-                }
+        if (left_primitive.value() instanceof String string) {
+            return new RuntimeValue.Primitive(string + right.print());
+        }
 
-                // check if left is decimal
-                if (left_primitive.value() instanceof BigDecimal) {
-                    // assume right is (primitive) decimal
-                    var right_decimal = requireType(right, BigDecimal.class);
-                    return new RuntimeValue.Primitive(((BigDecimal)left_primitive.value()).subtract(right_decimal));
-                }
+        // check if right is string, O.W. continue
+        if (right instanceof RuntimeValue.Primitive(String string)) {
+            return new RuntimeValue.Primitive(left.print() + string);
+        }
 
-                // O.W. invalid
-                throw new EvaluateException("Invalid operands for '-' operator");
+        // check if left is integer
+        if (left_primitive.value() instanceof BigInteger left_int) {
+            // assume right is (primitive) integer
+            var right_int = requireType(right, BigInteger.class);
+            return new RuntimeValue.Primitive(left_int.add(right_int));
+        }
 
-            case "*":
-                // check if left is primitive
-                left_primitive = requireType(left, RuntimeValue.Primitive.class);
-
-                // check if left is integer
-                if (left_primitive.value() instanceof BigInteger) {
-                    // assume right is (primitive) integer
-                    var right_int = requireType(right, BigInteger.class);
-                    return new RuntimeValue.Primitive(((BigInteger)left_primitive.value()).multiply(right_int));
-                }
+        // check if left is decimal
+        if (left_primitive.value() instanceof BigDecimal left_decimal) {
+            var right_decimal = requireType(right, BigDecimal.class);
+            return new RuntimeValue.Primitive(left_decimal.add(right_decimal));
+        }
 
-                // check if left is decimal
-                if (left_primitive.value() instanceof BigDecimal) {
-                    // assume right is (primitive) decimal
-                    var right_decimal = requireType(right, BigDecimal.class);
-                    return new RuntimeValue.Primitive(((BigDecimal)left_primitive.value()).multiply(right_decimal));
-                }
+        // O.W. invalid
+        throw new EvaluateException("Invalid operands for '+' operator");
+    }
 
-                // O.W. invalid
-                throw new EvaluateException("Invalid operands for '*' operator");
+    static RuntimeValue subtract(RuntimeValue left, RuntimeValue right) throws EvaluateException {
+        // check if left is primitive
+        var left_primitive = requireType(left, RuntimeValue.Primitive.class);
 
-            case "/":
-                // check if left is primitive
-                left_primitive = requireType(left, RuntimeValue.Primitive.class);
+        // check if left is integer
+        if (left_primitive.value() instanceof BigInteger left_int) {
+            // assume right is (primitive) integer
+            var right_int = requireType(right, BigInteger.class);
+            return new RuntimeValue.Primitive(left_int.subtract(right_int));
+        }
 
-                // check if left is integer
-                if (left_primitive.value() instanceof BigInteger) {
-                    // assume right is (primitive) integer
-                    var right_int = requireType(right, BigInteger.class);
+        // check if left is decimal
+        if (left_primitive.value() instanceof BigDecimal left_decimal) {
+            // assume right is (primitive) decimal
+            var right_decimal = requireType(right, BigDecimal.class);
+            return new RuntimeValue.Primitive(left_decimal.subtract(right_decimal));
+        }
 
-                    if (right_int.equals(BigInteger.ZERO)) {
-                        throw new EvaluateException("Divide by zero error");
-                    }
+        // O.W. invalid
+        throw new EvaluateException("Invalid operands for '-' operator");
+    }
 
-                    return new RuntimeValue.Primitive(((BigInteger)left_primitive.value()).divide(right_int));
-                }
+    static RuntimeValue multiply(RuntimeValue left, RuntimeValue right) throws EvaluateException {
+        // check if left is primitive
+        var left_primitive = requireType(left, RuntimeValue.Primitive.class);
 
-                // check if left is decimal
-                if (left_primitive.value() instanceof BigDecimal) {
-                    // assume right is (primitive) decimal
-                    var right_decimal = requireType(right, BigDecimal.class);
+        // check if left is integer
+        if (left_primitive.value() instanceof BigInteger left_int) {
+            // assume right is (primitive) integer
+            var right_int = requireType(right, BigInteger.class);
+            return new RuntimeValue.Primitive(left_int.multiply(right_int));
+        }
 
-                    if (right_decimal.compareTo(BigDecimal.ZERO) == 0) {
-                        throw new EvaluateException("Divide by zero error");
-                    }
+        // check if left is decimal
+        if (left_primitive.value() instanceof BigDecimal left_decimal) {
+            // assume right is (primitive) decimal
+            var right_decimal = requireType(right, BigDecimal.class);
+            return new RuntimeValue.Primitive(left_decimal.multiply(right_decimal));
+        }
 
-                    return new RuntimeValue.Primitive(
-                            ((BigDecimal)left_primitive.value()).divide(right_decimal, java.math.RoundingMode.HALF_EVEN));
-                }
+        // O.W. invalid
+        throw new EvaluateException("Invalid operands for '*' operator");
+    }
 
-                // O.W. invalid
-                throw new EvaluateException("Invalid operands for '/' operator");
+    static RuntimeValue divide(RuntimeValue left, RuntimeValue right) throws EvaluateException {
+        // check if left is primitive
+        var left_primitive = requireType(left, RuntimeValue.Primitive.class);
 
-            case "==":
-                // check if object comparison
-                if (left instanceof RuntimeValue.ObjectValue && right instanceof RuntimeValue.ObjectValue) {
-                    return new RuntimeValue.Primitive(java.util.Objects.equals(left, right));
-                }
+        // check if left is integer
+        if (left_primitive.value() instanceof BigInteger left_int) {
+            // assume right is (primitive) integer
+            var right_int = requireType(right, BigInteger.class);
 
-                // check if object-primitive comparison
-                if (left instanceof RuntimeValue.ObjectValue || right instanceof RuntimeValue.ObjectValue) {
-                    return new RuntimeValue.Primitive(false);
-                }
+            if (right_int.equals(BigInteger.ZERO)) {
+                throw new EvaluateException("Divide by zero error");
+            }
 
-                left_primitive = requireType(left, RuntimeValue.Primitive.class);
-                var right_primitive = requireType(right, RuntimeValue.Primitive.class);
+            return new RuntimeValue.Primitive(left_int.divide(right_int));
+        }
 
-                return new RuntimeValue.Primitive(
-                        java.util.Objects.equals(left_primitive.value(), right_primitive.value()));
+        // check if left is decimal
+        if (left_primitive.value() instanceof BigDecimal left_decimal) {
+            // assume right is (primitive) decimal
+            var right_decimal = requireType(right, BigDecimal.class);
 
+            if (right_decimal.compareTo(BigDecimal.ZERO) == 0) {
+                throw new EvaluateException("Divide by zero error");
+            }
 
-            case "!=":
-                // check if object comparison
-                if (left instanceof RuntimeValue.ObjectValue && right instanceof RuntimeValue.ObjectValue) {
-                    return new RuntimeValue.Primitive(!java.util.Objects.equals(left, right));
-                }
+            return new RuntimeValue.Primitive(left_decimal.divide(right_decimal, java.math.RoundingMode.HALF_EVEN));
+        }
 
-                // check if object-primitive comparison
-                if (left instanceof RuntimeValue.ObjectValue || right instanceof RuntimeValue.ObjectValue) {
-                    return new RuntimeValue.Primitive(true);
-                }
+        // O.W. invalid
+        throw new EvaluateException("Invalid operands for '/' operator");
+    }
 
-                left_primitive = requireType(left, RuntimeValue.Primitive.class);
-                right_primitive = requireType(right, RuntimeValue.Primitive.class);
+    static boolean equal(RuntimeValue left, RuntimeValue right) throws EvaluateException {
+        // check if object comparison
+        if (left instanceof RuntimeValue.ObjectValue && right instanceof RuntimeValue.ObjectValue) {
+            return java.util.Objects.equals(left, right);
+        }
 
-                return new RuntimeValue.Primitive(
-                        !java.util.Objects.equals(left_primitive.value(), right_primitive.value()));
+        // check if object-primitive comparison
+        if (left instanceof RuntimeValue.ObjectValue || right instanceof RuntimeValue.ObjectValue) {
+            return false;
+        }
 
-            case "<":
-            case "<=":
-            case ">":
-            case ">=":
-                left_primitive = requireType(left, RuntimeValue.Primitive.class);
+        var left_primitive = requireType(left, RuntimeValue.Primitive.class);
+        var right_primitive = requireType(right, RuntimeValue.Primitive.class);
 
-                // check left is comparable
-                if (!(left_primitive.value() instanceof Comparable)) {
-                    throw new EvaluateException("left operand must be comparable");
-                }
+        return java.util.Objects.equals(left_primitive.value(), right_primitive.value());
+    }
 
-                right_primitive = requireType(right, RuntimeValue.Primitive.class);
+    @SuppressWarnings({"rawtypes", "unchecked"})
+    static int compare(RuntimeValue left, RuntimeValue right) throws EvaluateException {
+        var left_primitive = requireType(left, RuntimeValue.Primitive.class);
 
-                // check right is comparable
-                if (!(right_primitive.value() instanceof Comparable)) {
-                    throw new EvaluateException("right operand must be comparable");
-                }
+        // check left is comparable
+        if (!(left_primitive.value() instanceof Comparable)) {
+            throw new EvaluateException("left operand must be comparable");
+        }
 
-                // check operand types match
-                if (left_primitive.value() == null || right_primitive.value() == null ||
-                        !left_primitive.value().getClass().equals(right_primitive.value().getClass())) {
-                    throw new EvaluateException("Comparison operands types must match");
-                }
+        var right_primitive = requireType(right, RuntimeValue.Primitive.class);
 
-                int comparison = ((Comparable) left_primitive.value()).compareTo(right_primitive.value());
-
-                switch (ast.operator()) {
-                    case "<":
-                        return new RuntimeValue.Primitive(comparison < 0);
-                    case "<=":
-                        return new RuntimeValue.Primitive(comparison <= 0);
-                    case ">":
-                        return new RuntimeValue.Primitive(comparison > 0);
-                    case ">=":
-                        return new RuntimeValue.Primitive(comparison >= 0);
-                    default:
-                        throw new EvaluateException("Invalid comparison operator: '" + ast.operator() + "'");
-                }
+        // check right is comparable
+        if (!(right_primitive.value() instanceof Comparable)) {
+            throw new EvaluateException("right operand must be comparable");
+        }
 
-            default:
-                throw new EvaluateException("Invalid operator: '" + ast.operator() + "'");
+        // check operand types match
+        if (!left_primitive.value().getClass().equals(right_primitive.value().getClass())) {
+            throw new EvaluateException("Comparison operands types must match");
         }
+
+        return ((Comparable) left_primitive.value()).compareTo(right_primitive.value());
     }
 
     @Override
     public RuntimeValue visit(Ast.Expr.Variable ast) throws EvaluateException {
-        var variable = scope.get(ast.name(), false);
+        var variable = lookup(ast, ast.name());
 
-        if (variable.isEmpty()) {
+        if (variable == null) {
             throw new EvaluateException("Variable '" + ast.name() + "' is not defined");
         }
 
-        return variable.get();
+        return variable;
     }
 
     @Override
@@ -543,14 +612,14 @@ public final class Evaluator implements Ast.Visitor<RuntimeValue, EvaluateExcept
 
     @Override
     public RuntimeValue visit(Ast.Expr.Function ast) throws EvaluateException {
-        var function = scope.get(ast.name(), false);
+        var function = lookup(ast, ast.name());
 
-        if (function.isEmpty()) {
+        if (function == null) {
             throw new EvaluateException("Function '" + ast.name() + "' is not defined");
         }
 
         // check if function type
-        var funct = requireType(function.get(), RuntimeValue.Function.class);
+        var funct = requireType(function, RuntimeValue.Function.class);
 
         var evaluated_args = new java.util.ArrayList<RuntimeValue>();
         for (var arg : ast.arguments()) {
@@ -626,6 +695,9 @@ public final class Evaluator implements Ast.Visitor<RuntimeValue, EvaluateExcept
                 throw new EvaluateException("Method parameters must be unique");
             }
 
+            String[] layout = layout(ast, method);
+            Resolver def_resolver = resolver;
+
             // method behavior
             RuntimeValue.Function.Definition definition = arguments -> {
                 // check if number of arguments passed in matches arity
@@ -636,15 +708,19 @@ public final class Evaluator implements Ast.Visitor<RuntimeValue, EvaluateExcept
 
                 // scope where method is called
                 Scope caller_scope = scope;
+                Frame caller_frame = frame;
+                Resolver caller_resolver = resolver;
 
                 try {
-                    // scope within method definition body
-                    scope = new Scope(object_scope);
+                    // frame within method definition body, with this and parameters first
+                    scope = object_scope;
+                    frame = new Frame(null, layout);
+                    resolver = def_resolver;
 
-                    scope.define("this", arguments.getFirst());
+                    frame.values[0] = arguments.getFirst();
 
                     for (int i = 0; i < method.parameters().size(); i++) {
-                        scope.define(method.parameters().get(i), arguments.get(i + 1));
+                        frame.values[i + 1] = arguments.get(i + 1);
                     }
 
                     RuntimeValue result = new RuntimeValue.Primitive(null); // Default to NIL
@@ -663,6 +739,8 @@ public final class Evaluator implements Ast.Visitor<RuntimeValue, EvaluateExcept
 
                 } finally {
                     scope = caller_scope;   // revert to caller scope
+                    frame = caller_frame;
+                    resolver = caller_resolver;
                 }
             };
 
@@ -673,13 +751,91 @@ public final class Evaluator implements Ast.Visitor<RuntimeValue, EvaluateExcept
         return object_value;
     }
 
+    /**
+     * Returns the frame layout of a function or block. Unless it's nested in
+     * one that's already been resolved, root is a top-level statement (or
+     * object) evaluated outside of any frame, so it's resolved first.
+     */
+    private String[] layout(Ast root, Ast ast) {
+        var layout = resolver.layout(ast);
+        if (layout == null) {
+            resolver = Resolver.resolve(root);
+            layout = Objects.requireNonNull(resolver.layout(ast));
+        }
+        return layout;
+    }
+
+    /**
+     * Returns if a LET/DEF's name is already defined in the current frame (or
+     * the scope at the top level).
+     */
+    private boolean defined(Ast.Stmt ast, String name) {
+        if (frame == null) {
+            return scope.get(name, true).isPresent();
+        }
+        return frame.values[Objects.requireNonNull(resolver.address(ast)).slot()] != null;
+    }
+
+    private void define(Ast.Stmt ast, String name, RuntimeValue value) {
+        if (frame == null) {
+            scope.define(name, value);
+        } else {
+            frame.values[Objects.requireNonNull(resolver.address(ast)).slot()] = value;
+        }
+    }
+
+    /**
+     * Returns the value of a variable using its resolved address, falling
+     * back to searching by name if it's unresolved or the slot hasn't been
+     * defined yet (such as a function referring to a later definition), or
+     * null if it isn't defined.
+     */
+    private @Nullable RuntimeValue lookup(Ast ast, String name) {
+        if (frame != null) {
+            var address = resolver.address(ast);
+            if (address != null && address.depth() >= 0) {
+                var value = frame.ancestor(address.depth()).values[address.slot()];
+                if (value != null) {
+                    return value;
+                }
+            }
+            if (address != Resolver.GLOBAL) {
+                var value = frame.get(name);
+                if (value != null) {
+                    return value;
+                }
+            }
+        }
+        return scope.get(name, false).orElse(null);
+    }
+
+    /**
+     * Assigns a variable which {@link #lookup(Ast, String)} found.
+     */
+    private void assign(Ast ast, String name, RuntimeValue value) {
+        if (frame != null) {
+            var address = resolver.address(ast);
+            if (address != null && address.depth() >= 0) {
+                var target = frame.ancestor(address.depth());
+                if (target.values[address.slot()] != null) {
+                    target.values[address.slot()] = value;
+                    return;
+                }
+            }
+            if (address != Resolver.GLOBAL && frame.set(name, value)) {
+                return;
+            }
+        }
+        scope.set(name, value);
+    }
+
     /**
      * Helper function for extracting RuntimeValues of specific types. If the
      * type is subclass of {@link RuntimeValue} the check applies to the value
      * itself, otherwise the value is expected to be a {@link RuntimeValue.Primitive}
      * and the check applies to the primitive value.
      */
-    private static <T> T requireType(RuntimeValue value, Class<T> type) throws EvaluateException {
+    static <T> T requireType(RuntimeValue value, Class<T> type) throws EvaluateException {
         //To be discussed in lecture 3/5.
         if (RuntimeValue.class.isAssignableFrom(type)) {
             if (!type.isInstance(value)) {
@@ -0,0 +1,72 @@
+package plc.project.evaluator;
+
+import org.checkerframework.checker.nullness.qual.Nullable;
+
+/**
+ * An array-backed scope for a function or block, which the {@link Evaluator}
+ * indexes directly using the addresses from the {@link Resolver} rather than
+ * searching by name like {@link Scope}. Slots are laid out by the resolver
+ * ahead of time, so a null slot is a variable which hasn't been defined yet.
+ */
+final class Frame {
+
+    final @Nullable Frame parent;
+    final String[] names;
+    final @Nullable RuntimeValue[] values;
+
+    Frame(@Nullable Frame parent, String[] names) {
+        this.parent = parent;
+        this.names = names;
+        this.values = new RuntimeValue[names.length];
+    }
+
+    /**
+     * Returns the frame depth levels up, which the resolver guarantees exists.
+     */
+    Frame ancestor(int depth) {
+        var frame = this;
+        for (int i = 0; i < depth; i++) {
+            frame = frame.parent;
+        }
+        return frame;
+    }
+
+    /**
+     * Searches each frame by name, returning the innermost defined value. This
+     * is the slow path for references the resolver couldn't address.
+     */
+    @Nullable RuntimeValue get(String name) {
+        for (var frame = this; frame != null; frame = frame.parent) {
+            var slot = frame.slot(name);
+            if (slot != -1 && frame.values[slot] != null) {
+                return frame.values[slot];
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Searches each frame by name as with {@link #get(String)}, returning
+     * false if the variable isn't defined in any frame.
+     */
+    boolean set(String name, RuntimeValue value) {
+        for (var frame = this; frame != null; frame = frame.parent) {
+            var slot = frame.slot(name);
+            if (slot != -1 && frame.values[slot] != null) {
+                frame.values[slot] = value;
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private int slot(String name) {
+        for (int i = 0; i < names.length; i++) {
+            if (names[i].equals(name)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+}
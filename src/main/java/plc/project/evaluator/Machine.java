@@ -0,0 +1,367 @@
+package plc.project.evaluator;
+
+import org.checkerframework.checker.nullness.qual.Nullable;
+import plc.project.parser.Ast;
+
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+
+/**
+ * A third execution engine, which runs {@link Bytecode} with a dispatch loop
+ * over its instructions rather than walking the AST like {@link Evaluator}.
+ * Each call runs a new loop with its own operand stack, and returns directly
+ * from RETURN rather than unwinding with an exception.
+ *
+ * <p>Programs behave the same as with the evaluator, including the order and
+ * messages of errors, and share its binary operators.
+ */
+public final class Machine {
+
+    private static final RuntimeValue NIL = new RuntimeValue.Primitive(null);
+    private static final RuntimeValue TRUE = new RuntimeValue.Primitive(true);
+    private static final RuntimeValue FALSE = new RuntimeValue.Primitive(false);
+
+    private final Scope scope;
+
+    public Machine(Scope scope) {
+        this.scope = scope;
+    }
+
+    /**
+     * Executes top-level bytecode (see {@link Bytecode#compile(Ast)}) in the
+     * machine's scope, which is equivalent to {@link Evaluator#visit(Ast)}.
+     */
+    public RuntimeValue execute(Bytecode bytecode) throws EvaluateException {
+        return run(bytecode, null, scope);
+    }
+
+    private static RuntimeValue run(Bytecode bytecode, @Nullable Frame frame, Scope scope) throws EvaluateException {
+        var code = bytecode.code;
+        var constants = bytecode.constants;
+        var stack = new RuntimeValue[bytecode.stack];
+        var iterators = bytecode.iterators != 0 ? new Iterator<?>[bytecode.iterators] : null;
+        var sp = 0;
+        var pc = 0;
+        while (true) {
+            switch (code[pc++]) {
+                case Bytecode.CONST -> stack[sp++] = (RuntimeValue) constants[code[pc++]];
+                case Bytecode.POP -> sp--;
+                case Bytecode.LOAD_LOCAL -> {
+                    var target = frame.ancestor(code[pc++]);
+                    var value = target.values[code[pc++]];
+                    var name = code[pc++];
+                    if (value == null) {
+                        value = dynamic(frame, scope, (String) constants[name >>> 1]);
+                    }
+                    stack[sp++] = (name & 1) == 0 && value != null ? value : require(value, constants, name);
+                }
+                case Bytecode.CHECK_LOCAL -> {
+                    var target = frame.ancestor(code[pc++]);
+                    var value = target.values[code[pc++]];
+                    var name = code[pc++];
+                    if (value == null) {
+                        require(dynamic(frame, scope, (String) constants[name >>> 1]), constants, name);
+                    }
+                }
+                case Bytecode.LOAD_GLOBAL -> {
+                    var name = code[pc++];
+                    var value = scope.get((String) constants[name >>> 1], false).orElse(null);
+                    stack[sp++] = require(value, constants, name);
+                }
+                case Bytecode.LOAD_DYNAMIC -> {
+                    var name = code[pc++];
+                    var value = dynamic(frame, scope, (String) constants[name >>> 1]);
+                    stack[sp++] = require(value, constants, name);
+                }
+                case Bytecode.STORE_LOCAL -> {
+                    var target = frame.ancestor(code[pc++]);
+                    var slot = code[pc++];
+                    var name = (String) constants[code[pc++] >>> 1];
+                    var value = stack[sp - 1];
+                    if (target.values[slot] != null) {
+                        target.values[slot] = value;
+                    } else if (!frame.set(name, value)) {
+                        scope.set(name, value);
+                    }
+                }
+                case Bytecode.STORE_GLOBAL -> scope.set((String) constants[code[pc++] >>> 1], stack[sp - 1]);
+                case Bytecode.STORE_DYNAMIC -> {
+                    var name = (String) constants[code[pc++] >>> 1];
+                    var value = stack[sp - 1];
+                    if (frame == null || !frame.set(name, value)) {
+                        scope.set(name, value);
+                    }
+                }
+                case Bytecode.UNDEFINED_LOCAL -> {
+                    var slot = code[pc++];
+                    var name = code[pc++];
+                    if (frame.values[slot] != null) {
+                        throw defined(constants, name);
+                    }
+                }
+                case Bytecode.UNDEFINED_GLOBAL -> {
+                    var name = code[pc++];
+                    if (scope.get((String) constants[name >>> 1], true).isPresent()) {
+                        throw defined(constants, name);
+                    }
+                }
+                case Bytecode.DEFINE_LOCAL -> frame.values[code[pc++]] = stack[sp - 1];
+                case Bytecode.DEFINE_GLOBAL -> scope.define((String) constants[code[pc++] >>> 1], stack[sp - 1]);
+                case Bytecode.ENTER -> frame = new Frame(frame, (String[]) constants[code[pc++]]);
+                case Bytecode.EXIT -> frame = frame.parent;
+                case Bytecode.CLEAR -> Arrays.fill(frame.values, null);
+                case Bytecode.JUMP -> pc = code[pc];
+                case Bytecode.JUMP_IF_FALSE -> {
+                    var target = code[pc++];
+                    if (!Evaluator.requireType(stack[--sp], Boolean.class)) {
+                        pc = target;
+                    }
+                }
+                case Bytecode.JUMP_IF_BOOL -> {
+                    var target = code[pc++];
+                    var when = code[pc++] != 0;
+                    var operator = (String) constants[code[pc++]];
+                    var value = Evaluator.requireBoolean(stack[--sp], "left", operator);
+                    if (value == when) {
+                        stack[sp++] = bool(value);
+                        pc = target;
+                    }
+                }
+                case Bytecode.BOOL -> {
+                    var operator = (String) constants[code[pc++]];
+                    stack[sp - 1] = bool(Evaluator.requireBoolean(stack[sp - 1], "right", operator));
+                }
+                case Bytecode.ADD -> {
+                    var right = stack[--sp];
+                    stack[sp - 1] = Evaluator.add(stack[sp - 1], right);
+                }
+                case Bytecode.SUBTRACT -> {
+                    var right = stack[--sp];
+                    stack[sp - 1] = Evaluator.subtract(stack[sp - 1], right);
+                }
+                case Bytecode.MULTIPLY -> {
+                    var right = stack[--sp];
+                    stack[sp - 1] = Evaluator.multiply(stack[sp - 1], right);
+                }
+                case Bytecode.DIVIDE -> {
+                    var right = stack[--sp];
+                    stack[sp - 1] = Evaluator.divide(stack[sp - 1], right);
+                }
+                case Bytecode.EQUAL -> {
+                    var right = stack[--sp];
+                    stack[sp - 1] = bool(Evaluator.equal(stack[sp - 1], right));
+                }
+                case Bytecode.NOT_EQUAL -> {
+                    var right = stack[--sp];
+                    stack[sp - 1] = bool(!Evaluator.equal(stack[sp - 1], right));
+                }
+                case Bytecode.LESS -> {
+                    var right = stack[--sp];
+                    stack[sp - 1] = bool(Evaluator.compare(stack[sp - 1], right) < 0);
+                }
+                case Bytecode.LESS_EQUAL -> {
+                    var right = stack[--sp];
+                    stack[sp - 1] = bool(Evaluator.compare(stack[sp - 1], right) <= 0);
+                }
+                case Bytecode.GREATER -> {
+                    var right = stack[--sp];
+                    stack[sp - 1] = bool(Evaluator.compare(stack[sp - 1], right) > 0);
+                }
+                case Bytecode.GREATER_EQUAL -> {
+                    var right = stack[--sp];
+                    stack[sp - 1] = bool(Evaluator.compare(stack[sp - 1], right) >= 0);
+                }
+                case Bytecode.THROW -> throw new EvaluateException((String) constants[code[pc]]);
+                case Bytecode.GET_PROPERTY -> {
+                    var name = (String) constants[code[pc++] >>> 1];
+                    var receiver = (Ast) constants[code[pc++]];
+                    stack[sp - 1] = property(stack[sp - 1], name, receiver);
+                }
+                case Bytecode.CHECK_PROPERTY -> {
+                    var name = (String) constants[code[pc++] >>> 1];
+                    var receiver = (Ast) constants[code[pc++]];
+                    property(stack[sp - 1], name, receiver);
+                }
+                case Bytecode.SET_PROPERTY -> {
+                    var name = (String) constants[code[pc++] >>> 1];
+                    var value = stack[--sp];
+                    ((RuntimeValue.ObjectValue) stack[sp - 1]).scope().set(name, value);
+                    stack[sp - 1] = value;
+                }
+                case Bytecode.LOAD_METHOD -> {
+                    var name = (String) constants[code[pc++] >>> 1];
+                    var receiver = (Ast) constants[code[pc++]];
+                    var method = property(stack[sp - 1], name, receiver);
+                    stack[sp++] = Evaluator.requireType(method, RuntimeValue.Function.class);
+                }
+                case Bytecode.CALL -> {
+                    var count = code[pc++];
+                    var arguments = arguments(stack, sp - count, count);
+                    sp -= count;
+                    var function = (RuntimeValue.Function) stack[sp - 1];
+                    stack[sp - 1] = function.definition().invoke(arguments);
+                }
+                case Bytecode.CALL_METHOD -> {
+                    var count = code[pc++];
+                    var arguments = new RuntimeValue[count + 1];
+                    arguments[0] = stack[sp - count - 2];
+                    for (int i = 0; i < count; i++) {
+                        arguments[i + 1] = stack[sp - count + i];
+                    }
+                    sp -= count + 1;
+                    var method = (RuntimeValue.Function) stack[sp];
+                    stack[sp - 1] = method.definition().invoke(Arrays.asList(arguments));
+                }
+                case Bytecode.CLOSURE -> {
+                    var function = (Bytecode) constants[code[pc++]];
+                    if (!function.unique) {
+                        throw new EvaluateException("Parameters must be unique");
+                    }
+                    stack[sp++] = function(function, frame, scope);
+                }
+                case Bytecode.OBJECT -> {
+                    var ast = (Ast.Expr.ObjectExpr) constants[code[pc++]];
+                    stack[sp++] = new RuntimeValue.ObjectValue(ast.name(), new Scope(null));
+                }
+                case Bytecode.UNDEFINED_FIELD -> {
+                    var name = (String) constants[code[pc++] >>> 1];
+                    var object = (RuntimeValue.ObjectValue) stack[sp - 1];
+                    if (object.scope().get(name, true).isPresent()) {
+                        throw new EvaluateException("Variable '" + name + "' is already defined in '" + object.name() + "'s' scope");
+                    }
+                }
+                case Bytecode.DEFINE_FIELD -> {
+                    var name = (String) constants[code[pc++] >>> 1];
+                    var value = stack[--sp];
+                    ((RuntimeValue.ObjectValue) stack[sp - 1]).scope().define(name, value);
+                }
+                case Bytecode.METHOD -> {
+                    var method = (Bytecode) constants[code[pc++]];
+                    var object = (RuntimeValue.ObjectValue) stack[sp - 1];
+                    if (object.scope().get(method.name, true).isPresent()) {
+                        throw new EvaluateException("Method '" + method.name + "' is already defined in '" + object.name() + "'s' scope");
+                    } else if (!method.unique) {
+                        throw new EvaluateException("Method parameters must be unique");
+                    }
+                    object.scope().define(method.name, method(method, object.scope()));
+                }
+                case Bytecode.ITERATOR -> iterators[code[pc++]] = iterator(stack[--sp]);
+                case Bytecode.NEXT -> {
+                    var index = code[pc++];
+                    var target = code[pc++];
+                    var iterator = iterators[index];
+                    if (!iterator.hasNext()) {
+                        iterators[index] = null;
+                        pc = target;
+                        continue;
+                    }
+                    var element = iterator.next();
+                    if (!(element instanceof RuntimeValue value)) {
+                        throw new EvaluateException("Expected RuntimeValue in iterable, received " +
+                            (element != null ? element.getClass().getName() : "null"));
+                    }
+                    stack[sp++] = value;
+                }
+                case Bytecode.RETURN -> {
+                    return stack[--sp];
+                }
+                default -> throw new AssertionError("Invalid opcode " + code[pc - 1] + ".");
+            }
+        }
+    }
+
+    private static RuntimeValue bool(boolean value) {
+        return value ? TRUE : FALSE;
+    }
+
+    private static @Nullable RuntimeValue dynamic(@Nullable Frame frame, Scope scope, String name) {
+        var value = frame != null ? frame.get(name) : null;
+        return value != null ? value : scope.get(name, false).orElse(null);
+    }
+
+    /**
+     * Checks a loaded variable is defined, and a function if it's called.
+     */
+    private static RuntimeValue require(@Nullable RuntimeValue value, Object[] constants, int name) throws EvaluateException {
+        var function = (name & 1) != 0;
+        if (value == null) {
+            throw new EvaluateException((function ? "Function '" : "Variable '") + constants[name >>> 1] + "' is not defined");
+        }
+        return function ? Evaluator.requireType(value, RuntimeValue.Function.class) : value;
+    }
+
+    private static EvaluateException defined(Object[] constants, int name) {
+        var function = (name & 1) != 0;
+        return new EvaluateException((function ? "Function '" : "Variable '") + constants[name >>> 1] +
+            "' is already defined in the current scope");
+    }
+
+    private static RuntimeValue property(RuntimeValue value, String name, Ast receiver) throws EvaluateException {
+        if (!(value instanceof RuntimeValue.ObjectValue object)) {
+            throw new EvaluateException("Cannot access property since '" + receiver + "' is not defined");
+        }
+        var property = object.scope().get(name, false);
+        if (property.isEmpty()) {
+            throw new EvaluateException("Property '" + name + "' is not defined on '" + receiver + "'");
+        }
+        return property.get();
+    }
+
+    private static List<RuntimeValue> arguments(RuntimeValue[] stack, int start, int count) {
+        if (count == 0) {
+            return List.of();
+        }
+        var arguments = new RuntimeValue[count];
+        for (int i = 0; i < count; i++) {
+            arguments[i] = stack[start + i];
+        }
+        return Arrays.asList(arguments);
+    }
+
+    private static Iterator<?> iterator(RuntimeValue value) throws EvaluateException {
+        var primitive = Evaluator.requireType(value, RuntimeValue.Primitive.class);
+        if (primitive.value() == null) {
+            throw new EvaluateException("Expect an iterable, but found NIL");
+        }
+        if (!(primitive.value() instanceof Iterable<?> iterable)) {
+            throw new EvaluateException("Expected an iterable, but found " + primitive.value().getClass().getName());
+        }
+        return iterable.iterator();
+    }
+
+    private static RuntimeValue function(Bytecode function, @Nullable Frame frame, Scope scope) {
+        return new RuntimeValue.Function(function.name, arguments -> {
+            if (arguments.size() != function.arity) {
+                throw new EvaluateException("Function '" + function.name + "' expects " + function.arity +
+                    " arguments, but found " + arguments.size());
+            }
+            var called = frame;
+            if (function.layout.length != 0) {
+                called = new Frame(frame, function.layout);
+                for (int i = 0; i < function.arity; i++) {
+                    called.values[i] = arguments.get(i);
+                }
+            }
+            return run(function, called, scope);
+        });
+    }
+
+    /**
+     * Methods are run in the object's scope, with this and parameters first.
+     */
+    private static RuntimeValue method(Bytecode method, Scope scope) {
+        return new RuntimeValue.Function(method.name, arguments -> {
+            if (arguments.size() != method.arity + 1) {
+                throw new EvaluateException("Method '" + method.name + "' expects " + method.arity +
+                    " arguments, but found " + (arguments.size() - 1));
+            }
+            var called = new Frame(null, method.layout);
+            for (int i = 0; i <= method.arity; i++) {
+                called.values[i] = arguments.get(i);
+            }
+            return run(method, called, scope);
+        });
+    }
+
+}
@@ -0,0 +1,242 @@
+package plc.project.evaluator;
+
+import org.checkerframework.checker.nullness.qual.Nullable;
+import plc.project.parser.Ast;
+
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Resolves variables to lexical addresses ahead of evaluation, so the
+ * {@link Evaluator} can index {@link Frame} slots directly instead of
+ * searching each {@link Scope} by name.
+ *
+ * <p>Each function and block (if, for, and method bodies) has a frame whose
+ * layout is every name it declares: parameters, the loop variable, and its
+ * direct LET/DEF statements. Since layouts include declarations after a
+ * reference (which a function may see once they've run), a reference resolves
+ * to the innermost frame declaring the name, and the evaluator falls back to
+ * searching by name if that slot hasn't been defined yet. This keeps the
+ * dynamic semantics of {@link Scope} exactly, including errors, which are
+ * still reported when evaluated.
+ *
+ * <p>Top-level statements aren't in a frame, so they're still evaluated with
+ * the evaluator's {@link Scope} (which keeps the REPL and tests working), as
+ * are references not declared in any enclosing frame ({@link #GLOBAL}).
+ * Methods are resolved without enclosing frames, since their bodies are
+ * evaluated in the object's scope rather than where they're defined.
+ *
+ * <p>Addresses are recorded by identity, so an expression shared with
+ * {@link plc.project.parser.Parser#shareNodes()} which resolves differently
+ * in different places is marked {@link #DYNAMIC} and searched by name.
+ */
+final class Resolver {
+
+    /**
+     * The address of a variable, as the number of frames up and its slot.
+     */
+    record Address(int depth, int slot) {}
+
+    /**
+     * Marks references not declared in any enclosing frame.
+     */
+    static final Address GLOBAL = new Address(-1, -1);
+
+    /**
+     * Marks shared references which resolved to different addresses.
+     */
+    static final Address DYNAMIC = new Address(-2, -2);
+
+    static final Resolver EMPTY = new Resolver();
+
+    private final Map<Ast, Address> addresses = new IdentityHashMap<>();
+    private final Map<Ast, String[]> layouts = new IdentityHashMap<>();
+    private @Nullable Block block = null;
+
+    private Resolver() {}
+
+    /**
+     * Resolves a top-level node (usually a statement), which is evaluated
+     * outside of any frame.
+     */
+    static Resolver resolve(Ast ast) {
+        var resolver = new Resolver();
+        resolver.visit(ast);
+        return resolver;
+    }
+
+    /**
+     * Returns the address of a variable reference (Variable, Function, or an
+     * Assignment to a variable) or the slot of a definition (Let or Def) in
+     * its frame, if it's been resolved.
+     */
+    @Nullable Address address(Ast ast) {
+        return addresses.get(ast);
+    }
+
+    /**
+     * Returns the frame layout of a function or block (Def, If, or For), with
+     * parameters (after {@code this} for methods) or the loop variable first.
+     */
+    String @Nullable [] layout(Ast ast) {
+        return layouts.get(ast);
+    }
+
+    private void visit(Ast ast) {
+        switch (ast) {
+            case Ast.Source source -> visit(source.statements());
+            case Ast.Stmt.Let stmt -> {
+                stmt.value().ifPresent(this::visit);
+                define(stmt, stmt.name());
+            }
+            case Ast.Stmt.Def stmt -> {
+                define(stmt, stmt.name());
+                function(stmt, block, List.of());
+            }
+            case Ast.Stmt.If stmt -> {
+                visit(stmt.condition());
+                // only one branch is evaluated, so they can share a frame
+                var names = new ArrayList<String>();
+                declare(names, stmt.thenBody());
+                declare(names, stmt.elseBody());
+                enter(stmt, names);
+                visit(stmt.thenBody());
+                visit(stmt.elseBody());
+                exit();
+            }
+            case Ast.Stmt.For stmt -> {
+                visit(stmt.expression());
+                var names = new ArrayList<String>();
+                names.add(stmt.name());
+                declare(names, stmt.body());
+                enter(stmt, names);
+                visit(stmt.body());
+                exit();
+            }
+            case Ast.Stmt.Return stmt -> stmt.value().ifPresent(this::visit);
+            case Ast.Stmt.Expression stmt -> visit(stmt.expression());
+            case Ast.Stmt.Assignment stmt -> {
+                if (stmt.expression() instanceof Ast.Expr.Variable variable) {
+                    reference(stmt, variable.name());
+                } else {
+                    visit(stmt.expression());
+                }
+                visit(stmt.value());
+            }
+            case Ast.Expr.Literal _ -> {}
+            case Ast.Expr.Group expr -> visit(expr.expression());
+            case Ast.Expr.Binary expr -> {
+                visit(expr.left());
+                visit(expr.right());
+            }
+            case Ast.Expr.Variable expr -> reference(expr, expr.name());
+            case Ast.Expr.Property expr -> visit(expr.receiver());
+            case Ast.Expr.Function expr -> {
+                reference(expr, expr.name());
+                visit(expr.arguments());
+            }
+            case Ast.Expr.Method expr -> {
+                visit(expr.receiver());
+                visit(expr.arguments());
+            }
+            case Ast.Expr.ObjectExpr expr -> {
+                // fields are evaluated where the object is, but aren't defined there
+                for (var field : expr.fields()) {
+                    field.value().ifPresent(this::visit);
+                }
+                for (var method : expr.methods()) {
+                    function(method, null, List.of("this"));
+                }
+            }
+        }
+    }
+
+    private void visit(List<? extends Ast> asts) {
+        for (var ast : asts) {
+            visit(ast);
+        }
+    }
+
+    private void function(Ast.Stmt.Def ast, @Nullable Block parent, List<String> receiver) {
+        var names = new ArrayList<>(receiver);
+        for (var parameter : ast.parameters()) {
+            if (!names.contains(parameter)) {
+                names.add(parameter);
+            }
+        }
+        declare(names, ast.body());
+        var enclosing = block;
+        block = parent;
+        enter(ast, names);
+        visit(ast.body());
+        block = enclosing;
+    }
+
+    /**
+     * Adds the names declared directly in a body, which (like Scope) share a
+     * slot if declared more than once since only the first can succeed.
+     */
+    private static void declare(List<String> names, List<Ast.Stmt> body) {
+        for (var stmt : body) {
+            var name = switch (stmt) {
+                case Ast.Stmt.Let let -> let.name();
+                case Ast.Stmt.Def def -> def.name();
+                default -> null;
+            };
+            if (name != null && !names.contains(name)) {
+                names.add(name);
+            }
+        }
+    }
+
+    private void enter(Ast ast, List<String> names) {
+        var layout = names.toArray(String[]::new);
+        layouts.put(ast, layout);
+        block = new Block(block, layout);
+    }
+
+    private void exit() {
+        block = block.parent();
+    }
+
+    private void define(Ast.Stmt ast, String name) {
+        if (block != null) {
+            addresses.put(ast, new Address(0, block.slot(name)));
+        }
+    }
+
+    private void reference(Ast ast, String name) {
+        if (block == null) {
+            return;
+        }
+        var address = GLOBAL;
+        var depth = 0;
+        for (var current = block; current != null; current = current.parent(), depth++) {
+            var slot = current.slot(name);
+            if (slot != -1) {
+                address = new Address(depth, slot);
+                break;
+            }
+        }
+        var previous = addresses.putIfAbsent(ast, address);
+        if (previous != null && !previous.equals(address)) {
+            addresses.put(ast, DYNAMIC);
+        }
+    }
+
+    private record Block(@Nullable Block parent, String[] names) {
+
+        private int slot(String name) {
+            for (int i = 0; i < names.length; i++) {
+                if (names[i].equals(name)) {
+                    return i;
+                }
+            }
+            return -1;
+        }
+
+    }
+
+}
@@ -0,0 +1,63 @@
+package plc.project.lexer;
+
+import org.checkerframework.checker.nullness.qual.Nullable;
+
+import java.lang.reflect.Constructor;
+
+/**
+ * Scans long runs of whitespace and comment text in {@link Utf8Input} a block
+ * of bytes at a time, for {@link Lexer#lexWhitespace} and
+ * {@link Lexer#lexComment}.
+ *
+ * <p>The implementation is {@code VectorScanner}, which uses the incubating
+ * Vector API and so is kept in a separate source root ({@code src/vector/java})
+ * that is only compiled with {@code --add-modules jdk.incubator.vector}. It is
+ * loaded by name, so the lexer compiles and runs without it, using its scalar
+ * loops instead. Setting the {@code plc.project.lexer.scalar} system property
+ * disables it as well, for comparison.
+ */
+abstract class BlockScanner {
+
+    private static final @Nullable Constructor<? extends BlockScanner> VECTOR = load();
+
+    /**
+     * Returns a new scanner, or null if the Vector API isn't available at
+     * runtime or {@code VectorScanner} wasn't compiled.
+     */
+    static @Nullable BlockScanner create() {
+        if (VECTOR == null) {
+            return null;
+        }
+        try {
+            return VECTOR.newInstance();
+        } catch (ReflectiveOperationException e) {
+            return null;
+        }
+    }
+
+    private static @Nullable Constructor<? extends BlockScanner> load() {
+        if (ModuleLayer.boot().findModule("jdk.incubator.vector").isEmpty() || Boolean.getBoolean("plc.project.lexer.scalar")) {
+            return null;
+        }
+        try {
+            return Class.forName("plc.project.lexer.VectorScanner").asSubclass(BlockScanner.class).getDeclaredConstructor();
+        } catch (ReflectiveOperationException | LinkageError e) {
+            return null;
+        }
+    }
+
+    /**
+     * Returns the index of the first byte in [index, end) that isn't
+     * whitespace ({@code [ \b\n\r\t]}). If there isn't one in any whole
+     * block, returns the start of the remaining partial block instead, which
+     * the caller scans one character at a time.
+     */
+    abstract int skipWhitespace(Utf8Input input, int index, int end);
+
+    /**
+     * Returns the index of the first line break ({@code \n} or {@code \r}) in
+     * [index, end), or the start of the remaining partial block as above.
+     */
+    abstract int findLineBreak(Utf8Input input, int index, int end);
+
+}
@@ -0,0 +1,140 @@
+package plc.project.lexer;
+
+import static com.google.common.base.Preconditions.checkPositionIndexes;
+
+/**
+ * Keeps a {@link TokenBuffer} up to date as its input is edited, re-lexing
+ * only the region affected by each edit rather than the whole input.
+ *
+ * <p>Lexing restarts at the beginning of the line containing the edit, since
+ * newlines are always token boundaries (see {@link ParallelLexer}), and stops
+ * as soon as a token starts where a token started before the edit (adjusted
+ * for the change in length). The lexer has no state between tokens, so every
+ * token after that point is unchanged and reused. The edited region is lexed
+ * through a view of the edit, so lexing work is proportional to the edited
+ * lines instead of the input. Only once lexing succeeds are the input and
+ * buffer updated in place, which are bulk array moves.
+ */
+public final class IncrementalLexer {
+
+    /**
+     * The tokens replaced by an edit: tokens [start, start + removed) of the
+     * previous buffer became tokens [start, start + inserted) of the new one.
+     */
+    public record Damage(int start, int removed, int inserted) {}
+
+    private final StringBuilder input;
+    private final TokenBuffer tokens;
+
+    public IncrementalLexer(String input) throws LexException {
+        this.input = new StringBuilder(input);
+        this.tokens = new Lexer(this.input, 0, input.length()).lexBuffer();
+    }
+
+    /**
+     * Returns the tokens, which are updated in place by each edit along with
+     * the buffer's input.
+     */
+    public TokenBuffer tokens() {
+        return tokens;
+    }
+
+    /**
+     * Replaces the removed number of characters at offset with the inserted
+     * text and updates the tokens, returning the range of tokens that changed.
+     * If the edited input is invalid the exception is thrown and both the
+     * input and tokens are left as they were.
+     */
+    public Damage edit(int offset, int removed, String inserted) throws LexException {
+        checkPositionIndexes(offset, offset + removed, input.length());
+        var text = new Edited(input, offset, removed, inserted);
+        var shift = inserted.length() - removed;
+
+        // restart at the beginning of the line containing the edit
+        var restart = input.lastIndexOf("\n", offset - 1) + 1;
+        var start = search(tokens, restart);
+
+        var relexed = new TokenBuffer(text, 16);
+        var lexer = new Lexer(text, restart, text.length());
+        var count = 0;
+        var end = start;
+        var resynced = false;
+
+        while (!resynced && lexer.lexInto(relexed)) {
+            var position = relexed.start(relexed.size() - 1);
+
+            // only tokens past the edit can match previous tokens, which are
+            // compared by their positions adjusted for the edit
+            if (position >= offset + inserted.length()) {
+                while (end < tokens.size() && tokens.start(end) + shift < position) {
+                    end++;
+                }
+                resynced = end < tokens.size() && tokens.start(end) + shift == position;
+            }
+
+            if (!resynced) {
+                count++;
+            }
+        }
+
+        if (!resynced) {
+            end = tokens.size();
+        }
+
+        input.replace(offset, offset + removed, inserted);
+        tokens.splice(start, end, relexed, count, shift);
+
+        return new Damage(start, end - start, count);
+    }
+
+    /**
+     * Returns the index of the first token starting at or after offset.
+     */
+    private static int search(TokenBuffer tokens, int offset) {
+        int low = 0;
+        int high = tokens.size();
+        while (low < high) {
+            var middle = (low + high) >>> 1;
+            if (tokens.start(middle) < offset) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * A view of the input with an edit applied, without copying the input.
+     */
+    private record Edited(CharSequence input, int offset, int removed, String inserted) implements CharSequence {
+
+        @Override
+        public int length() {
+            return input.length() - removed + inserted.length();
+        }
+
+        @Override
+        public char charAt(int index) {
+            if (index < offset) {
+                return input.charAt(index);
+            } else if (index < offset + inserted.length()) {
+                return inserted.charAt(index - offset);
+            } else {
+                return input.charAt(index + removed - inserted.length());
+            }
+        }
+
+        @Override
+        public CharSequence subSequence(int start, int end) {
+            return new StringBuilder(end - start).append(this, start, end);
+        }
+
+        @Override
+        public String toString() {
+            return new StringBuilder(length()).append(this).toString();
+        }
+
+    }
+
+}
@@ -1,7 +1,16 @@
 package plc.project.lexer;
 
+import org.checkerframework.checker.nullness.qual.Nullable;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.regex.Pattern;
 
 import static com.google.common.base.Preconditions.checkState;
 
@@ -9,44 +18,198 @@ import static com.google.common.base.Preconditions.checkState;
  * The lexer works through a combination of {@link #lex()}, which repeatedly
  * calls {@link #lexToken()} and skips over whitespace/comments, and
  * {@link #lexToken()}, which determines the type of the next token and
- * delegates to the corresponding lex method.
+ * delegates to the corresponding lex method. {@link #tokens()} does the same
+ * lazily, producing tokens only as they are requested, and
+ * {@link #lexBuffer()} records tokens compactly in a {@link TokenBuffer}.
  *
  * <p>Additionally, {@link CharStream} manages the lexer state and contains
  * {@link CharStream#peek} and {@link CharStream#match}. These are helpful
- * utilities for working with character state and building tokens.
+ * utilities for working with character state and building tokens. Both take a
+ * {@link CharClass}, which is precomputed from a single-character regex so no
+ * pattern matching happens per character.
+ *
+ * <p>Identifier and operator literals are interned through a
+ * {@link SymbolTable}, so keywords and repeated names share one String. When
+ * the Vector API is available, long whitespace runs and comments are skipped
+ * in UTF-8 input in blocks by a {@link BlockScanner}.
+ *
+ * <p>If enabled with {@link #decodeLiterals()}, the values of literals are
+ * decoded as they are lexed and provided alongside the tokens (such as by
+ * {@link TokenSource#value()}), so the parser doesn't scan them again.
  */
 public final class Lexer {
 
+    /**
+     * Whitespace runs are scanned one character at a time up to this length,
+     * since most are a single space, before switching to {@link BlockScanner}.
+     */
+    private static final int VECTOR_THRESHOLD = 4;
+
     private final CharStream chars;
+    private final SymbolTable symbols = new SymbolTable();
+    private boolean decode = false;
+    private @Nullable Object value = null;
+    private long longValue = 0;
 
     public Lexer(String input) {
-        chars = new CharStream(input);
+        this(input, 0, input.length());
+    }
+
+    /**
+     * Creates a lexer over UTF-8 encoded input, which is scanned directly
+     * rather than decoded into a String first; only literals are decoded as
+     * tokens are created. Offsets (such as in a {@link TokenBuffer}) are byte
+     * offsets, and non-ASCII characters are consumed as whole code points.
+     */
+    public Lexer(ByteBuffer input) {
+        this(new Utf8Input(input), 0, input.remaining());
+    }
+
+    public Lexer(byte[] input) {
+        this(ByteBuffer.wrap(input));
+    }
+
+    /**
+     * Creates a lexer over the range [start, end) of the input, which must
+     * begin and end on token boundaries. Tokens (and offsets in a
+     * {@link TokenBuffer}) are the same as when lexing the whole input.
+     */
+    Lexer(CharSequence input, int start, int end) {
+        chars = new CharStream(input, start, end);
+    }
+
+    /**
+     * Creates a lexer over a memory-mapped UTF-8 file, so the source is never
+     * copied onto the heap.
+     */
+    public static Lexer map(Path path) throws IOException {
+        try (var channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            return new Lexer(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+        }
+    }
+
+    /**
+     * Enables decoding the values of literals while lexing, which are then
+     * provided by {@link #tokens()} and {@link #lexBuffer()}. Returns this
+     * lexer for chaining.
+     */
+    public Lexer decodeLiterals() {
+        decode = true;
+        return this;
     }
 
     public List<Token> lex() throws LexException {
         var tokens = new ArrayList<Token>();
 
-        while (chars.has(0)) {
-            lexWhitespace();
+        for (var token = next(); token != null; token = next()) {
+            tokens.add(token);
+        }
 
-            lexComment();
+        return tokens;
+    }
 
-            if (!chars.has(0)) {
-                break;
+    /**
+     * Returns a {@link TokenSource} which lexes one token at a time as it is
+     * requested, rather than building the whole list like {@link #lex()}.
+     */
+    public TokenSource tokens() {
+        return new TokenSource() {
+
+            @Override
+            public @Nullable Token next() throws LexException {
+                return Lexer.this.next();
             }
 
-            tokens.add(lexToken());
+            @Override
+            public @Nullable Object value() {
+                return value;
+            }
+
+            @Override
+            public long longValue() {
+                checkState(value == TokenSource.LONG);
+                return longValue;
+            }
+
+        };
+    }
+
+    /**
+     * Lexes the entire input into a {@link TokenBuffer}, which stores token
+     * types and offsets into the input instead of {@link Token} objects.
+     */
+    public TokenBuffer lexBuffer() throws LexException {
+        var buffer = new TokenBuffer(chars.input, (chars.end - chars.index) / 8);
+
+        while (lexInto(buffer)) {}
+
+        return buffer;
+    }
+
+    /**
+     * Lexes the next token into the buffer, returning false if there are no
+     * more tokens. This allows lexing only part of the input, one token at a
+     * time, such as when re-lexing an edit with {@link IncrementalLexer}.
+     */
+    boolean lexInto(TokenBuffer buffer) throws LexException {
+        if (!skip()) {
+            return false;
         }
 
-        return tokens;
+        var type = lexToken();
+        buffer.add(type, chars.index - chars.length, chars.index);
+
+        if (decode) {
+            decode(type, chars.index - chars.length, chars.index);
+            if (value != null) {
+                buffer.setValue(buffer.size() - 1, value, longValue);
+            }
+        }
+
+        // reset the length, since the literal is never created
+        chars.length = 0;
+
+        return true;
+    }
+
+    private @Nullable Token next() throws LexException {
+        if (!skip()) {
+            return null;
+        }
+
+        var type = lexToken();
+        if (decode) {
+            decode(type, chars.index - chars.length, chars.index);
+        }
+        if (type == Token.Type.IDENTIFIER || type == Token.Type.OPERATOR) {
+            return new Token(type, chars.emit(symbols));
+        }
+        return new Token(type, chars.emit());
+    }
+
+    /**
+     * Skips whitespace/comments, returning true if there is another token.
+     */
+    private boolean skip() {
+        lexWhitespace();
+
+        lexComment();
+
+        return chars.has(0);
     }
 
     private void lexWhitespace() {
         // whitespace ::= [\b\n\r\t]+
+        var start = chars.index;
         while (chars.has(0)) {
             char c = chars.input.charAt(chars.index);
             if (c == ' ' || c == '\t' || c == '\n' || c == '\r' || c == '\b') {
                 chars.index++;
+
+                // longer runs (such as indentation) are scanned in blocks
+                if (chars.index - start == VECTOR_THRESHOLD && chars.scanner != null) {
+                    chars.index = chars.scanner.skipWhitespace((Utf8Input) chars.input, chars.index, chars.end);
+                }
             } else {
                 break;
             }
@@ -61,6 +224,16 @@ public final class Lexer {
         if (chars.has(1) && chars.input.charAt(chars.index) == '/' && chars.input.charAt(chars.index + 1) == '/') {
             chars.index += 2;
 
+            // skip ahead to the line break in bulk, then finish below
+            if (chars.input instanceof String string) {
+                // String.indexOf is already vectorized by the JVM
+                var lf = string.indexOf('\n', chars.index, chars.end);
+                var cr = string.indexOf('\r', chars.index, lf < 0 ? chars.end : lf);
+                chars.index = cr >= 0 ? cr : lf >= 0 ? lf : chars.end;
+            } else if (chars.scanner != null) {
+                chars.index = chars.scanner.findLineBreak((Utf8Input) chars.input, chars.index, chars.end);
+            }
+
             while (chars.has(0)) {
                 char c = chars.input.charAt(chars.index);
                 if (c == '\n' || c == '\r') {
@@ -80,108 +253,108 @@ public final class Lexer {
         }
     }
 
-    private Token lexToken() throws LexException {
-        if (chars.peek("[A-Za-z_]")) {
+    private Token.Type lexToken() throws LexException {
+        if (chars.peek(CharClass.IDENTIFIER_START)) {
             return lexIdentifier();
-        } else if (chars.peek("[+\\-0-9]")) {
+        } else if (chars.peek(CharClass.NUMBER_START)) {
             return lexNumber();
-        } else if (chars.match("'")) {
+        } else if (chars.match(CharClass.SINGLE_QUOTE)) {
             return lexCharacter();
-        } else if (chars.match("\"")) {
+        } else if (chars.match(CharClass.DOUBLE_QUOTE)) {
             return lexString();
         } else {
             return lexOperator();
         }
     }
 
-    private Token lexIdentifier() {
+    private Token.Type lexIdentifier() {
         // identifier ::= [A-Za-z_] [A-Za-z0-9_-]*
-        checkState(chars.match("[A-Za-z_]"));
+        checkState(chars.match(CharClass.IDENTIFIER_START));
 
         // Repeatedly check for match with A-Za-z0-9_-
-        while (chars.match("[A-Za-z0-9_-]")) {}
+        while (chars.match(CharClass.IDENTIFIER_PART)) {}
 
-        return new Token(Token.Type.IDENTIFIER, chars.emit());
+        return Token.Type.IDENTIFIER;
     }
 
-    private Token lexNumber() throws LexException {
+    private Token.Type lexNumber() throws LexException {
         // number ::= [+\-]? [0-9]+ ('.' [0-9]+)? ('e' [0-9]+)?
-        boolean hasSign = chars.match("[+\\-]");
+        boolean hasSign = chars.match(CharClass.SIGN);
 
         // Check integer digits exist
-        if (!chars.peek("[0-9]")) {
+        if (!chars.peek(CharClass.DIGIT)) {
             if (hasSign) {
-                return new Token(Token.Type.OPERATOR, chars.emit());
+                return Token.Type.OPERATOR;
             } else {
                 throw new LexException("Invalid number: missing digits");
             }
         }
 
-        while (chars.match("[0-9]")) {}
+        while (chars.match(CharClass.DIGIT)) {}
 
-        boolean isDecimal = chars.match("\\.");
+        boolean isDecimal = chars.match(CharClass.PERIOD);
         if (isDecimal) {
             // Check decimal digits exist
-            if (!chars.match("[0-9]")) {
+            if (!chars.match(CharClass.DIGIT)) {
                 chars.index--;
                 chars.length--;
-                return new Token(Token.Type.INTEGER, chars.emit());
+                return Token.Type.INTEGER;
             }
 
-            while (chars.match("[0-9]")) {}
+            while (chars.match(CharClass.DIGIT)) {}
         }
 
         int saved_index = chars.index;
         int saved_length = chars.length;
 
-        if (chars.match("e")) {
+        if (chars.match(CharClass.EXPONENT)) {
             // Check exponent digits exist
-            if (!chars.match("[0-9]")) {
+            if (!chars.match(CharClass.DIGIT)) {
                 chars.index = saved_index;
                 chars.length = saved_length;
 
-                return isDecimal ? new Token(Token.Type.DECIMAL, chars.emit()) : new Token(Token.Type.INTEGER, chars.emit());
+                return isDecimal ? Token.Type.DECIMAL : Token.Type.INTEGER;
             }
 
-            while (chars.match("[0-9]")) {}
+            while (chars.match(CharClass.DIGIT)) {}
         }
 
-        return isDecimal ? new Token(Token.Type.DECIMAL, chars.emit()) : new Token(Token.Type.INTEGER, chars.emit());
+        return isDecimal ? Token.Type.DECIMAL : Token.Type.INTEGER;
     }
 
-    private Token lexCharacter() throws LexException {
+    private Token.Type lexCharacter() throws LexException {
         // character ::= ['] ([^'\n\r\\] | escape) [']
-        if (chars.peek("'")) {
+        if (chars.peek(CharClass.SINGLE_QUOTE)) {
             throw new LexException("Invalid character literal: empty");
-        } else if (chars.peek("[\\n\\r]")) {
+        } else if (chars.peek(CharClass.LINE_BREAK)) {
             throw new LexException("Invalid character literal: NL or CR");
-        } else if (chars.match("\\\\")) {
+        } else if (chars.match(CharClass.BACKSLASH)) {
             lexEscape();
         } else {
-            chars.match(".");
+            chars.matchChar();
         }
 
-        if (!chars.match("'")) {
+        if (!chars.match(CharClass.SINGLE_QUOTE)) {
             throw new LexException("Invalid character literal: missing closing single quote");
         }
 
-        return new Token(Token.Type.CHARACTER, chars.emit());
+        return Token.Type.CHARACTER;
     }
 
-    private Token lexString() throws LexException {
+    private Token.Type lexString() throws LexException {
         // string ::= '"' ([^"\n\r\\] | escape)* '"'
         if (!chars.has(0)) {
             throw new LexException("Invalid character literal: unterminated string");
         }
 
-        while (!chars.peek("\"")) {
-            if (chars.peek("[\\n\\r]")) {
+        while (!chars.peek(CharClass.DOUBLE_QUOTE)) {
+            if (chars.peek(CharClass.LINE_BREAK)) {
                 throw new LexException("Invalid string literal: NL or CR");
             }
-            if (chars.match("\\\\")) {
+            if (chars.match(CharClass.BACKSLASH)) {
                 lexEscape();
             } else {
-                chars.match(".");
+                chars.matchAny();
             }
 
             if (!chars.has(0)) {
@@ -189,32 +362,174 @@ public final class Lexer {
             }
         }
 
-        chars.match("\"");
+        chars.match(CharClass.DOUBLE_QUOTE);
 
-        return new Token(Token.Type.STRING, chars.emit());
+        return Token.Type.STRING;
     }
 
     private void lexEscape() throws LexException {
         // escape ::= '\' [bnrt'"\]
-        if (!chars.match("[bnrt'\"\\\\]")) {
+        if (!chars.match(CharClass.ESCAPE)) {
             throw new LexException("Invalid escape character");
         }
     }
 
-    public Token lexOperator() throws LexException {
+    private Token.Type lexOperator() throws LexException {
         // operator ::= [<>!=] '='? | 'any other character'
-        if (chars.match("[<>!=]")) {
-            chars.match("=");
+        if (chars.match(CharClass.COMPARISON)) {
+            chars.match(CharClass.EQUALS);
         } else {
-            if (chars.match("\\n")) {
+            if (chars.match(CharClass.NEWLINE)) {
 //                throw new LexException("Invalid operator: newline");
                 lexWhitespace();
             }
 
-            chars.match(".");
+            chars.matchAny();
+        }
+
+        return Token.Type.OPERATOR;
+    }
+
+    /**
+     * Decodes the value of the token [start, end) into value (and longValue),
+     * which is null for tokens other than literals. Literals are known to be
+     * valid at this point, so this can't fail.
+     */
+    private void decode(Token.Type type, int start, int end) {
+        value = switch (type) {
+            case INTEGER -> decodeInteger(start, end);
+            case DECIMAL -> new BigDecimal(chars.input.subSequence(start, end).toString());
+            case CHARACTER -> decodeCharacter(start, end);
+            case STRING -> decodeString(start, end);
+            default -> null;
+        };
+    }
+
+    private Object decodeInteger(int start, int end) {
+        // accumulate negatively, since Long.MIN_VALUE has no positive equivalent
+        var negative = chars.input.charAt(start) == '-';
+        var index = chars.input.charAt(start) == '+' || negative ? start + 1 : start;
+        long result = 0;
+        for (; index < end; index++) {
+            var digit = chars.input.charAt(index) - '0';
+            if (digit < 0 || digit > 9 || result < (Long.MIN_VALUE + digit) / 10) {
+                break; // exponent or overflow
+            }
+            result = result * 10 - digit;
+        }
+
+        if (index == end && (negative || result != Long.MIN_VALUE)) {
+            longValue = negative ? result : -result;
+            return TokenSource.LONG;
+        }
+
+        // O.W. exponent (which is always an integer) or too large for a long
+        var integer = new BigDecimal(chars.input.subSequence(start, end).toString()).toBigIntegerExact();
+        if (integer.bitLength() < Long.SIZE) {
+            longValue = integer.longValue();
+            return TokenSource.LONG;
+        }
+        return integer;
+    }
+
+    private char decodeCharacter(int start, int end) {
+        var c = chars.input.charAt(start + 1);
+        if (c == '\\') {
+            return decodeEscape(chars.input.charAt(start + 2));
+        } else if (c >= 0x80 && chars.input instanceof Utf8Input) {
+            return chars.input.subSequence(start + 1, end - 1).toString().charAt(0);
+        }
+        return c;
+    }
+
+    private String decodeString(int start, int end) {
+        // copy runs between escapes as a whole, decoding UTF-8 if needed
+        StringBuilder builder = null;
+        var run = start + 1;
+        for (int i = start + 1; i < end - 1; i++) {
+            if (chars.input.charAt(i) == '\\') {
+                if (builder == null) {
+                    builder = new StringBuilder(end - start);
+                }
+                builder.append(chars.input.subSequence(run, i).toString());
+                builder.append(decodeEscape(chars.input.charAt(++i)));
+                run = i + 1;
+            }
+        }
+
+        var remaining = chars.input.subSequence(run, end - 1).toString();
+        return builder == null ? remaining : builder.append(remaining).toString();
+    }
+
+    private static char decodeEscape(char c) {
+        return switch (c) {
+            case 'b' -> '\b';
+            case 'n' -> '\n';
+            case 'r' -> '\r';
+            case 't' -> '\t';
+            default -> c; // ', ", and \ are themselves
+        };
+    }
+
+    /**
+     * A set of characters equivalent to a regex matching only ONE character.
+     * Membership for ASCII is precomputed into a 128-bit table when the class
+     * is created, so lookups are a shift and mask; anything outside ASCII is
+     * rare in sources and falls back to the original regex.
+     */
+    private static final class CharClass {
+
+        private static final CharClass IDENTIFIER_START = new CharClass("[A-Za-z_]");
+        private static final CharClass IDENTIFIER_PART = new CharClass("[A-Za-z0-9_-]");
+        private static final CharClass NUMBER_START = new CharClass("[+\\-0-9]");
+        private static final CharClass SIGN = new CharClass("[+\\-]");
+        private static final CharClass DIGIT = new CharClass("[0-9]");
+        private static final CharClass PERIOD = new CharClass("\\.");
+        private static final CharClass EXPONENT = new CharClass("e");
+        private static final CharClass SINGLE_QUOTE = new CharClass("'");
+        private static final CharClass DOUBLE_QUOTE = new CharClass("\"");
+        private static final CharClass BACKSLASH = new CharClass("\\\\");
+        private static final CharClass ESCAPE = new CharClass("[bnrt'\"\\\\]");
+        private static final CharClass LINE_BREAK = new CharClass("[\\n\\r]");
+        private static final CharClass NEWLINE = new CharClass("\\n");
+        private static final CharClass COMPARISON = new CharClass("[<>!=]");
+        private static final CharClass EQUALS = new CharClass("=");
+        private static final CharClass ANY = new CharClass(".");
+
+        private final Pattern pattern;
+        private final long low;
+        private final long high;
+
+        private CharClass(String regex) {
+            pattern = Pattern.compile(regex);
+            long low = 0;
+            long high = 0;
+            for (char c = 0; c < 128; c++) {
+                if (pattern.matcher(String.valueOf(c)).matches()) {
+                    if (c < 64) {
+                        low |= 1L << c;
+                    } else {
+                        high |= 1L << (c - 64);
+                    }
+                }
+            }
+            this.low = low;
+            this.high = high;
+        }
+
+        /**
+         * Returns true if the character is a member of this class.
+         */
+        public boolean contains(char c) {
+            if (c < 64) {
+                return (low & (1L << c)) != 0;
+            } else if (c < 128) {
+                return (high & (1L << (c - 64))) != 0;
+            } else {
+                return pattern.matcher(String.valueOf(c)).matches();
+            }
         }
 
-        return new Token(Token.Type.OPERATOR, chars.emit());
     }
 
     /**
@@ -223,60 +538,105 @@ public final class Lexer {
      */
     private static final class CharStream {
 
-        private final String input;
-        private int index = 0;
+        private final CharSequence input;
+        private final int end;
+        private final @Nullable BlockScanner scanner;
+        private int index;
         private int length = 0;
 
-        public CharStream(String input) {
+        public CharStream(CharSequence input, int start, int end) {
             this.input = input;
+            this.index = start;
+            this.end = end;
+            this.scanner = input instanceof Utf8Input ? BlockScanner.create() : null;
         }
 
         /**
          * Returns true if there is a character at (index + offset).
          */
         public boolean has(int offset) {
-            return index + offset < input.length();
+            return index + offset < end;
         }
 
         /**
-         * Returns true if the next characters match their corresponding
-         * pattern. Each pattern is a regex matching only ONE character!
+         * Returns true if the next character is a member of the given
+         * {@link CharClass}.
          */
-        public boolean peek(String... patterns) {
-            if (!has(patterns.length - 1)) {
-                return false;
-            }
-            for (int offset = 0; offset < patterns.length; offset++) {
-                var character = input.charAt(index + offset);
-                if (!String.valueOf(character).matches(patterns[offset])) {
-                    return false;
-                }
-            }
-            return true;
+        public boolean peek(CharClass characters) {
+            return has(0) && characters.contains(input.charAt(index));
         }
 
         /**
          * Equivalent to peek, but also advances the character stream.
          */
-        public boolean match(String... patterns) {
-            var peek = peek(patterns);
+        public boolean match(CharClass characters) {
+            var peek = peek(characters);
             if (peek) {
-                index += patterns.length;
-                length += patterns.length;
+                index++;
+                length++;
             }
             return peek;
         }
 
+        /**
+         * Matches any one character other than a line terminator, equivalent
+         * to {@code match(CharClass.ANY)}. For {@link Utf8Input} this consumes
+         * all the bytes of a non-ASCII character, not just the first.
+         */
+        public boolean matchAny() {
+            if (!(input instanceof Utf8Input utf8) || !has(0) || input.charAt(index) < 0x80) {
+                return match(CharClass.ANY);
+            }
+            var codePoint = utf8.codePoint(index);
+            if (codePoint == 0x85 || codePoint == 0x2028 || codePoint == 0x2029) {
+                return false; //line terminators, as with CharClass.ANY
+            }
+            var width = utf8.width(index);
+            index += width;
+            length += width;
+            return true;
+        }
+
+        /**
+         * Matches any one char other than a line terminator, as in a character
+         * literal. A supplementary character is two chars (a surrogate pair),
+         * so for {@link Utf8Input} it isn't matched, the same as for a String.
+         */
+        public boolean matchChar() {
+            if (input instanceof Utf8Input utf8 && has(0) && input.charAt(index) >= 0x80 && utf8.codePoint(index) > 0xFFFF) {
+                return false;
+            }
+            return matchAny();
+        }
+
         /**
          * Returns the literal built by all characters matched since the last
          * call to emit(); also resetting the length for subsequent tokens.
          */
         public String emit() {
-            var literal = input.substring(index - length, index);
+            var literal = input.subSequence(index - length, index).toString();
             length = 0;
             return literal;
         }
 
+        /**
+         * Equivalent to emit(), but returns the canonical literal from the
+         * {@link SymbolTable}. Non-ASCII UTF-8 input isn't interned, since the
+         * table compares chars and Utf8Input chars are bytes.
+         */
+        public String emit(SymbolTable symbols) {
+            var start = index - length;
+            if (input instanceof Utf8Input) {
+                for (int i = start; i < index; i++) {
+                    if (input.charAt(i) >= 0x80) {
+                        return emit();
+                    }
+                }
+            }
+            length = 0;
+            return symbols.intern(input, start, index);
+        }
+
     }
 
 }
@@ -0,0 +1,129 @@
+package plc.project.lexer;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+
+/**
+ * Lexes large inputs in parallel by splitting them into chunks, lexing each
+ * chunk with its own {@link Lexer} on a {@link ForkJoinPool}, and then joining
+ * the results in order. The tokens are identical to {@link Lexer#lex()}.
+ *
+ * <p>Chunks are split immediately after a newline. Newlines are never part of
+ * a token: literals cannot contain them (a string or character reaching a
+ * newline is a {@link LexException} either way) and comments end at them, so
+ * every newline is a token boundary and lexing can restart fresh after it.
+ * If several chunks are invalid, the exception from the first is thrown, which
+ * is the same one sequential lexing would have reached.
+ */
+public final class ParallelLexer {
+
+    /**
+     * Inputs are split into chunks of at least this many characters, since
+     * smaller chunks aren't worth the overhead of scheduling.
+     */
+    private static final int MINIMUM_CHUNK = 1 << 16;
+
+    private final CharSequence input;
+    private final ForkJoinPool pool;
+
+    public ParallelLexer(String input) {
+        this(input, ForkJoinPool.commonPool());
+    }
+
+    public ParallelLexer(String input, ForkJoinPool pool) {
+        this.input = input;
+        this.pool = pool;
+    }
+
+    /**
+     * Creates a parallel lexer over UTF-8 input, as with
+     * {@link Lexer#Lexer(ByteBuffer)}.
+     */
+    public ParallelLexer(ByteBuffer input, ForkJoinPool pool) {
+        this.input = new Utf8Input(input);
+        this.pool = pool;
+    }
+
+    public List<Token> lex() throws LexException {
+        var chunks = lexChunks(Lexer::lex);
+
+        var tokens = new ArrayList<Token>(chunks.stream().mapToInt(List::size).sum());
+        for (var chunk : chunks) {
+            tokens.addAll(chunk);
+        }
+        return tokens;
+    }
+
+    public TokenBuffer lexBuffer() throws LexException {
+        var chunks = lexChunks(Lexer::lexBuffer);
+
+        var buffer = new TokenBuffer(input, chunks.stream().mapToInt(TokenBuffer::size).sum());
+        for (var chunk : chunks) {
+            buffer.addAll(chunk);
+        }
+        return buffer;
+    }
+
+    private interface LexMethod<T> {
+        T invoke(Lexer lexer) throws LexException;
+    }
+
+    private <T> List<T> lexChunks(LexMethod<T> method) throws LexException {
+        var boundaries = split();
+
+        var futures = new ArrayList<Future<T>>();
+        for (int i = 0; i + 1 < boundaries.size(); i++) {
+            var lexer = new Lexer(input, boundaries.get(i), boundaries.get(i + 1));
+            futures.add(pool.submit((Callable<T>) () -> method.invoke(lexer)));
+        }
+
+        var results = new ArrayList<T>();
+        for (var future : futures) {
+            try {
+                results.add(future.get());
+            } catch (ExecutionException e) {
+                futures.forEach(f -> f.cancel(false));
+                //ForkJoinPool may wrap exceptions rethrown from another thread
+                for (var cause = e.getCause(); cause != null; cause = cause.getCause()) {
+                    if (cause instanceof LexException lex) {
+                        throw lex;
+                    }
+                }
+                throw new IllegalStateException(e.getCause());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException(e);
+            }
+        }
+        return results;
+    }
+
+    /**
+     * Returns the chunk boundaries, starting with 0 and ending with the input
+     * length, where every other boundary directly follows a newline.
+     */
+    private List<Integer> split() {
+        var size = Math.max(MINIMUM_CHUNK, input.length() / (4 * pool.getParallelism()));
+
+        var boundaries = new ArrayList<Integer>();
+        boundaries.add(0);
+        var index = size;
+        while (index < input.length()) {
+            while (index < input.length() && input.charAt(index - 1) != '\n') {
+                index++;
+            }
+            if (index < input.length()) {
+                boundaries.add(index);
+            }
+            index += size;
+        }
+        boundaries.add(input.length());
+        return boundaries;
+    }
+
+}
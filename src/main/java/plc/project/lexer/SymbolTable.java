@@ -0,0 +1,102 @@
+package plc.project.lexer;
+
+/**
+ * Interns identifier and operator literals, so repeated names share a single
+ * {@link String} instead of allocating a new one for every occurrence. Since
+ * Strings cache their hash code, this also means each distinct name is only
+ * hashed once by later stages (such as scope lookups).
+ *
+ * <p>Keywords and operators are pre-registered using the same String
+ * constants as the parser, which the JVM interns, so their tokens are
+ * identical to the constants and comparisons succeed on identity.
+ *
+ * <p>Lookups hash and compare characters directly from the input, so no
+ * String is created unless the symbol is new. Tables are not thread safe;
+ * each {@link Lexer} has its own.
+ */
+final class SymbolTable {
+
+    private static final String[] PREDEFINED = {
+        "LET", "DEF", "IF", "DO", "ELSE", "END", "FOR", "IN", "RETURN",
+        "NIL", "TRUE", "FALSE", "AND", "OR", "OBJECT", "this",
+        "=", ";", ":", "(", ")", ",", ".", "+", "-", "*", "/",
+        "<", "<=", ">", ">=", "==", "!=",
+    };
+
+    private String[] symbols = new String[64];
+    private int[] hashes = new int[64];
+    private int size = 0;
+
+    SymbolTable() {
+        for (var symbol : PREDEFINED) {
+            insert(symbol, symbol.hashCode());
+        }
+    }
+
+    /**
+     * Returns the canonical String for the characters [start, end) of the
+     * input, adding it to the table if it isn't present.
+     */
+    String intern(CharSequence input, int start, int end) {
+        var hash = 0;
+        for (int i = start; i < end; i++) {
+            hash = 31 * hash + input.charAt(i);
+        }
+
+        var mask = symbols.length - 1;
+        for (int slot = mix(hash) & mask; symbols[slot] != null; slot = (slot + 1) & mask) {
+            if (hashes[slot] == hash && equals(symbols[slot], input, start, end)) {
+                return symbols[slot];
+            }
+        }
+
+        var symbol = input.subSequence(start, end).toString();
+        insert(symbol, hash);
+        return symbol;
+    }
+
+    private void insert(String symbol, int hash) {
+        // keep the table at most half full, so probe sequences stay short
+        if (2 * (size + 1) > symbols.length) {
+            var previous = symbols;
+            symbols = new String[previous.length * 2];
+            hashes = new int[previous.length * 2];
+            size = 0;
+            for (var existing : previous) {
+                if (existing != null) {
+                    insert(existing, existing.hashCode());
+                }
+            }
+        }
+
+        var mask = symbols.length - 1;
+        var slot = mix(hash) & mask;
+        while (symbols[slot] != null) {
+            slot = (slot + 1) & mask;
+        }
+        symbols[slot] = symbol;
+        hashes[slot] = hash;
+        size++;
+    }
+
+    /**
+     * Spreads the high bits of the hash into the low bits used for slots,
+     * since String hashes of short names differ mostly in their low bits.
+     */
+    private static int mix(int hash) {
+        return hash ^ (hash >>> 16);
+    }
+
+    private static boolean equals(String symbol, CharSequence input, int start, int end) {
+        if (symbol.length() != end - start) {
+            return false;
+        }
+        for (int i = 0; i < symbol.length(); i++) {
+            if (symbol.charAt(i) != input.charAt(start + i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+}
@@ -0,0 +1,321 @@
+package plc.project.lexer;
+
+import org.checkerframework.checker.nullness.qual.Nullable;
+
+import java.util.Arrays;
+import java.util.Optional;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkElementIndex;
+import static com.google.common.base.Preconditions.checkPositionIndex;
+import static com.google.common.base.Preconditions.checkState;
+
+/**
+ * A compact alternative to {@code List<Token>}, produced by
+ * {@link Lexer#lexBuffer()}. Tokens are stored as parallel arrays of types and
+ * start/end offsets into the original input (9 bytes per token), and literals
+ * are only created when requested via {@link #literal(int)}.
+ *
+ * <p>Since offsets are kept, the line and column of any token is available
+ * through {@link #location(int)}. The table of line starts this relies on is
+ * only built the first time a location is requested, such as for an error.
+ *
+ * <p>When lexed with {@link Lexer#decodeLiterals()}, the decoded values of
+ * literals are kept in a side table available from {@link #value(int)}, with
+ * integers which fit in a long stored unboxed.
+ */
+public final class TokenBuffer {
+
+    private static final Token.Type[] TYPES = Token.Type.values();
+
+    private final CharSequence input;
+    private byte[] types;
+    private int[] starts;
+    private int[] ends;
+    private int size = 0;
+    private int @Nullable [] lines = null;
+    private @Nullable SymbolTable symbols = null;
+    private Object @Nullable [] values = null;
+    private long @Nullable [] longs = null;
+
+    TokenBuffer(CharSequence input, int capacity) {
+        this.input = input;
+        types = new byte[Math.max(16, capacity)];
+        starts = new int[types.length];
+        ends = new int[types.length];
+    }
+
+    void add(Token.Type type, int start, int end) {
+        if (size == types.length) {
+            grow(size + 1);
+        }
+        types[size] = (byte) type.ordinal();
+        starts[size] = start;
+        ends[size] = end;
+        if (values != null) {
+            values[size] = null; // may be left over from splice
+        }
+        size++;
+    }
+
+    /**
+     * Sets the decoded value of the token, where value is
+     * {@link TokenSource#LONG} for a long stored in longValue.
+     */
+    void setValue(int index, Object value, long longValue) {
+        if (values == null || longs == null) {
+            values = new Object[types.length];
+            longs = new long[types.length];
+        }
+        values[index] = value;
+        longs[index] = longValue;
+    }
+
+    /**
+     * Appends all tokens from another buffer over the same input.
+     */
+    void addAll(TokenBuffer other) {
+        checkArgument(input == other.input);
+        addRange(other, 0, other.size, 0);
+    }
+
+    /**
+     * Appends the tokens [from, to) from another buffer, adding shift to their
+     * offsets. The other buffer may be over a different (such as edited)
+     * input, with shift being the difference in positions between the two.
+     */
+    void addRange(TokenBuffer other, int from, int to, int shift) {
+        var count = to - from;
+        if (size + count > types.length) {
+            grow(size + count);
+        }
+        System.arraycopy(other.types, from, types, size, count);
+        System.arraycopy(other.starts, from, starts, size, count);
+        System.arraycopy(other.ends, from, ends, size, count);
+        if (other.values != null && other.longs != null) {
+            for (int i = from; i < to; i++) {
+                if (other.values[i] != null) {
+                    setValue(size + i - from, other.values[i], other.longs[i]);
+                }
+            }
+        }
+        if (shift != 0) {
+            for (int i = size; i < size + count; i++) {
+                starts[i] += shift;
+                ends[i] += shift;
+            }
+        }
+        size += count;
+    }
+
+    /**
+     * Replaces tokens [start, end) in place with the first count tokens of the
+     * replacement, adding shift to the offsets of all tokens after them. This
+     * is used when the input itself has been edited in place.
+     */
+    void splice(int start, int end, TokenBuffer replacement, int count, int shift) {
+        var difference = count - (end - start);
+        if (size + difference > types.length) {
+            grow(size + difference);
+        }
+        // most edits replace tokens one for one, so nothing after them moves
+        if (difference != 0) {
+            System.arraycopy(types, end, types, end + difference, size - end);
+            System.arraycopy(starts, end, starts, end + difference, size - end);
+            System.arraycopy(ends, end, ends, end + difference, size - end);
+        }
+        if (values != null && longs != null) {
+            if (difference != 0) {
+                System.arraycopy(values, end, values, end + difference, size - end);
+                System.arraycopy(longs, end, longs, end + difference, size - end);
+            }
+            Arrays.fill(values, start, end + difference, null);
+        }
+        if (replacement.values != null && replacement.longs != null) {
+            for (int i = 0; i < count; i++) {
+                if (replacement.values[i] != null) {
+                    setValue(start + i, replacement.values[i], replacement.longs[i]);
+                }
+            }
+        }
+        System.arraycopy(replacement.types, 0, types, start, count);
+        System.arraycopy(replacement.starts, 0, starts, start, count);
+        System.arraycopy(replacement.ends, 0, ends, start, count);
+        size += difference;
+        if (shift != 0) {
+            for (int i = start + count; i < size; i++) {
+                starts[i] += shift;
+                ends[i] += shift;
+            }
+        }
+        lines = null;
+    }
+
+    private void grow(int minimum) {
+        var capacity = Math.max(minimum, size + (size >> 1));
+        types = Arrays.copyOf(types, capacity);
+        starts = Arrays.copyOf(starts, capacity);
+        ends = Arrays.copyOf(ends, capacity);
+        if (values != null && longs != null) {
+            values = Arrays.copyOf(values, capacity);
+            longs = Arrays.copyOf(longs, capacity);
+        }
+    }
+
+    public CharSequence input() {
+        return input;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public Token.Type type(int index) {
+        checkElementIndex(index, size);
+        return TYPES[types[index]];
+    }
+
+    /**
+     * Returns the offset of the first character of the token in the input.
+     */
+    public int start(int index) {
+        checkElementIndex(index, size);
+        return starts[index];
+    }
+
+    /**
+     * Returns the offset after the last character of the token in the input.
+     */
+    public int end(int index) {
+        checkElementIndex(index, size);
+        return ends[index];
+    }
+
+    /**
+     * Returns the literal of the token, creating it from the input. As with
+     * {@link Lexer#lex()}, identifier and operator literals are interned.
+     */
+    public String literal(int index) {
+        if (symbols == null) {
+            symbols = new SymbolTable();
+        }
+        return literal(index, symbols);
+    }
+
+    private String literal(int index, SymbolTable symbols) {
+        checkElementIndex(index, size);
+        var type = TYPES[types[index]];
+        if (type == Token.Type.IDENTIFIER || (type == Token.Type.OPERATOR && !(input instanceof Utf8Input))) {
+            return symbols.intern(input, starts[index], ends[index]);
+        }
+        return input.subSequence(starts[index], ends[index]).toString();
+    }
+
+    /**
+     * Returns the decoded value of the token, as with
+     * {@link TokenSource#value()}, or null if it wasn't decoded.
+     */
+    public @Nullable Object value(int index) {
+        checkElementIndex(index, size);
+        return values != null ? values[index] : null;
+    }
+
+    /**
+     * Returns the value of the token when {@link #value(int)} is
+     * {@link TokenSource#LONG}.
+     */
+    public long longValue(int index) {
+        checkState(value(index) == TokenSource.LONG, index);
+        return longs[index];
+    }
+
+    public Token get(int index) {
+        return new Token(type(index), literal(index));
+    }
+
+    /**
+     * Returns the line and column (both 1-based) of the token, or of the end of
+     * the input when index is equal to {@link #size()}.
+     */
+    public String location(int index) {
+        checkElementIndex(index, size + 1);
+        var offset = index < size ? starts[index] : input.length();
+        var lines = lines();
+        var line = Arrays.binarySearch(lines, offset);
+        if (line < 0) {
+            line = -line - 2; //insertion point - 1, the line containing offset
+        }
+        return "line " + (line + 1) + ", column " + (offset - lines[line] + 1);
+    }
+
+    private synchronized int[] lines() {
+        if (lines == null) {
+            var starts = new int[16];
+            var count = 1; //starts[0] = 0, the first line
+            for (int i = 0; i < input.length(); i++) {
+                var c = input.charAt(i);
+                //\r\n is a single line break, otherwise both \r and \n are
+                if (c == '\n' || (c == '\r' && (i + 1 == input.length() || input.charAt(i + 1) != '\n'))) {
+                    if (count == starts.length) {
+                        starts = Arrays.copyOf(starts, count * 2);
+                    }
+                    starts[count++] = i + 1;
+                }
+            }
+            lines = Arrays.copyOf(starts, count);
+        }
+        return lines;
+    }
+
+    /**
+     * Returns a {@link TokenSource} over the buffer, which creates each
+     * {@link Token} only as it is requested and reports token locations.
+     */
+    public TokenSource source() {
+        return source(0);
+    }
+
+    /**
+     * Returns a source of the tokens from index start onwards, such as for
+     * reparsing part of the input. Locations are still those of the buffer.
+     *
+     * <p>Each source interns literals with its own table, so several sources
+     * over the same buffer can be read from different threads as long as the
+     * buffer isn't modified (see {@code ParallelParser}).
+     */
+    public TokenSource source(int start) {
+        checkPositionIndex(start, size);
+        return new TokenSource() {
+
+            private final SymbolTable symbols = new SymbolTable();
+            private int index = start;
+
+            @Override
+            public @Nullable Token next() {
+                if (index == size) {
+                    return null;
+                }
+                var token = new Token(type(index), literal(index, symbols));
+                index++;
+                return token;
+            }
+
+            @Override
+            public @Nullable Object value() {
+                return TokenBuffer.this.value(index - 1);
+            }
+
+            @Override
+            public long longValue() {
+                return TokenBuffer.this.longValue(index - 1);
+            }
+
+            @Override
+            public Optional<String> location(int index) {
+                return Optional.of(TokenBuffer.this.location(Math.min(start + index, size)));
+            }
+
+        };
+    }
+
+}
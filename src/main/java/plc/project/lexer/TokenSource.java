@@ -0,0 +1,63 @@
+package plc.project.lexer;
+
+import org.checkerframework.checker.nullness.qual.Nullable;
+
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * A pull-based source of tokens. Unlike {@link Lexer#lex()}, which builds the
+ * entire token list up front, tokens are only produced as they are requested
+ * so consumers (such as the parser) can lex and parse in a single pass.
+ */
+@FunctionalInterface
+public interface TokenSource {
+
+    /**
+     * Returned by {@link #value()} for integers which fit in a long, whose
+     * value is instead available from {@link #longValue()} without boxing.
+     */
+    Object LONG = new Object();
+
+    /**
+     * Returns the next token, or null if the input is exhausted.
+     */
+    @Nullable Token next() throws LexException;
+
+    /**
+     * Returns the location in the input of the token at the given index,
+     * counting from the first token returned by {@link #next()}, if this
+     * source keeps track of positions.
+     */
+    default Optional<String> location(int index) {
+        return Optional.empty();
+    }
+
+    /**
+     * Returns the decoded value of the last token returned by {@link #next()},
+     * if it is a literal and this source decodes them (see
+     * {@link Lexer#decodeLiterals()}), or null otherwise. Values are those of
+     * the literal in the AST: a {@link java.math.BigInteger} (or {@link #LONG}),
+     * {@link java.math.BigDecimal}, {@link Character}, or {@link String}.
+     */
+    default @Nullable Object value() {
+        return null;
+    }
+
+    /**
+     * Returns the value of the last token when {@link #value()} is
+     * {@link #LONG}.
+     */
+    default long longValue() {
+        throw new IllegalStateException("The last token doesn't have a long value.");
+    }
+
+    /**
+     * Returns a source over an already lexed list of tokens.
+     */
+    static TokenSource of(List<Token> tokens) {
+        var iterator = tokens.iterator();
+        return () -> iterator.hasNext() ? iterator.next() : null;
+    }
+
+}
@@ -0,0 +1,91 @@
+package plc.project.lexer;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * A view of UTF-8 encoded input as a {@link CharSequence} of bytes, allowing
+ * the lexer to scan a {@code byte[]} or memory-mapped file without decoding it
+ * to a String first. Each byte is a char in the range 0-255, so indices are
+ * byte offsets; since the grammar is ASCII everything except the contents of
+ * literals compares the same as with decoded input. Text is only decoded by
+ * {@link #toString()}, which the lexer uses to create literals.
+ */
+final class Utf8Input implements CharSequence {
+
+    private final ByteBuffer bytes;
+    private final int offset;
+    private final int length;
+
+    Utf8Input(ByteBuffer bytes) {
+        this(bytes, bytes.position(), bytes.remaining());
+    }
+
+    private Utf8Input(ByteBuffer bytes, int offset, int length) {
+        this.bytes = bytes;
+        this.offset = offset;
+        this.length = length;
+    }
+
+    @Override
+    public int length() {
+        return length;
+    }
+
+    @Override
+    public char charAt(int index) {
+        return (char) (bytes.get(offset + index) & 0xFF);
+    }
+
+    @Override
+    public CharSequence subSequence(int start, int end) {
+        return new Utf8Input(bytes, offset + start, end - start);
+    }
+
+    /**
+     * Copies bytes starting at index into the array, filling it.
+     */
+    void getBytes(int index, byte[] destination) {
+        bytes.get(offset + index, destination);
+    }
+
+    /**
+     * Returns the number of bytes in the UTF-8 sequence starting at index, or
+     * 1 if the bytes there aren't a valid sequence (such that malformed input
+     * is still consumed, as a single invalid character).
+     */
+    int width(int index) {
+        var lead = charAt(index);
+        var width = lead < 0x80 ? 1 : lead >= 0xF0 ? 4 : lead >= 0xE0 ? 3 : lead >= 0xC0 ? 2 : 1;
+        if (index + width > length) {
+            return 1;
+        }
+        for (int i = 1; i < width; i++) {
+            if ((charAt(index + i) & 0xC0) != 0x80) {
+                return 1;
+            }
+        }
+        return width;
+    }
+
+    /**
+     * Returns the code point of the UTF-8 sequence starting at index.
+     */
+    int codePoint(int index) {
+        var lead = charAt(index);
+        return switch (width(index)) {
+            case 2 -> (lead & 0x1F) << 6 | (charAt(index + 1) & 0x3F);
+            case 3 -> (lead & 0x0F) << 12 | (charAt(index + 1) & 0x3F) << 6 | (charAt(index + 2) & 0x3F);
+            case 4 -> (lead & 0x07) << 18 | (charAt(index + 1) & 0x3F) << 12 | (charAt(index + 2) & 0x3F) << 6 | (charAt(index + 3) & 0x3F);
+            default -> lead;
+        };
+    }
+
+    @Override
+    public String toString() {
+        var decoded = new byte[length];
+        bytes.get(offset, decoded);
+        return new String(decoded, StandardCharsets.UTF_8);
+    }
+
+}
@@ -0,0 +1,676 @@
+package plc.project.parser;
+
+import org.checkerframework.checker.nullness.qual.Nullable;
+
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+import static com.google.common.base.Preconditions.checkElementIndex;
+
+/**
+ * A compact alternative to {@link Ast.Source}, created with {@link #of} and
+ * converted back with {@link #toAst()}. Nodes are offsets into a single int
+ * array, starting with a header of the {@link Kind} and usually a name,
+ * followed by only the operands that kind of node has (such as the left and
+ * right nodes of a binary expression). Lists of nodes are stored as a size
+ * followed by the nodes in a second array. Names are interned into a table,
+ * and integers which fit in a long are stored in the node itself, so a
+ * variable or small integer is a single int and most of the tree is just
+ * these two arrays.
+ *
+ * <p>Nodes are stored in the order of the source, with each node before its
+ * children, so traversals like {@link Visitor} read the arrays mostly
+ * sequentially (and all nodes can be scanned with {@link #next(int)}). The
+ * operands of each kind of node are accessed through the methods named after
+ * the matching {@link Ast} record components, such as {@link #left(int)} for
+ * {@link Kind#BINARY}, where optional nodes are {@link #NONE} if absent and
+ * lists are read with {@link #size(int)} and {@link #get(int, int)}.
+ */
+public final class FlatAst {
+
+    public enum Kind {
+        LET, DEF, IF, FOR, RETURN, EXPRESSION, ASSIGNMENT,
+        LITERAL, GROUP, BINARY, VARIABLE, PROPERTY, FUNCTION, METHOD, OBJECT
+    }
+
+    /**
+     * An absent optional node or name.
+     */
+    public static final int NONE = -1;
+
+    private static final Kind[] KINDS = Kind.values();
+
+    // headers are the kind in the low 4 bits, then the name index plus one
+    // (0 if none), except for literals which have a 2 bit tag and then either
+    // the constant index or a small integer as a signed 26 bit payload
+    private static final int KIND_BITS = 4;
+    private static final int TAG_BITS = 2;
+    private static final int CONSTANT = 0;
+    private static final int SMALL = 1;
+    private static final int LONG = 2;
+    private static final int SMALL_MINIMUM = -(1 << 25);
+    private static final int SMALL_MAXIMUM = (1 << 25) - 1;
+
+    private int[] nodes = new int[256];
+    private int length = 0;
+    private int count = 0;
+    private int[] lists = new int[64];
+    private int listsSize = 0;
+    private final List<String> names = new ArrayList<>();
+    private final List<@Nullable Object> constants = new ArrayList<>();
+    private int statements;
+
+    private FlatAst() {}
+
+    public static FlatAst of(Ast.Source source) {
+        var ast = new FlatAst();
+        ast.statements = new Builder(ast).stmts(source.statements());
+        ast.nodes = Arrays.copyOf(ast.nodes, ast.length);
+        ast.lists = Arrays.copyOf(ast.lists, ast.listsSize);
+        return ast;
+    }
+
+    public Ast.Source toAst() {
+        return new Converter().visit(this);
+    }
+
+    /**
+     * Returns the number of nodes.
+     */
+    public int nodes() {
+        return count;
+    }
+
+    /**
+     * Returns the length of the node array, which is the offset after the
+     * last node.
+     */
+    public int length() {
+        return length;
+    }
+
+    /**
+     * Returns the offset of the node stored after this one (which is usually
+     * its first child), or {@link #length()} for the last node.
+     */
+    public int next(int node) {
+        return node + 1 + switch (kind(node)) {
+            case VARIABLE -> 0;
+            case RETURN, EXPRESSION, GROUP, PROPERTY, FUNCTION -> 1;
+            case LET, DEF, FOR, ASSIGNMENT, BINARY, METHOD, OBJECT -> 2;
+            case IF -> 3;
+            case LITERAL -> tag(node) == LONG ? 2 : 0;
+        };
+    }
+
+    /**
+     * Returns the list of top-level statements.
+     */
+    public int statements() {
+        return statements;
+    }
+
+    public Kind kind(int node) {
+        checkElementIndex(node, length);
+        return KINDS[nodes[node] & ((1 << KIND_BITS) - 1)];
+    }
+
+    /**
+     * Returns the size of a list of nodes.
+     */
+    public int size(int list) {
+        return lists[list];
+    }
+
+    /**
+     * Returns the node at index of a list of nodes.
+     */
+    public int get(int list, int index) {
+        checkElementIndex(index, lists[list]);
+        return lists[list + 1 + index];
+    }
+
+    /**
+     * Returns the name of a LET, DEF, FOR, VARIABLE, PROPERTY, FUNCTION, or
+     * METHOD, or of an OBJECT if it has one (otherwise null).
+     */
+    public @Nullable String name(int node) {
+        return lookup(nodes[node] >>> KIND_BITS);
+    }
+
+    /**
+     * Returns the name at index minus one, or null if index is 0.
+     */
+    private @Nullable String lookup(int index) {
+        return index != 0 ? names.get(index - 1) : null;
+    }
+
+    /**
+     * Returns the type of a LET or the return type of a DEF, or null if not
+     * specified.
+     */
+    public @Nullable String type(int node) {
+        return lookup(nodes[node + 1]);
+    }
+
+    /**
+     * Returns the value of a LET or RETURN (or {@link #NONE}), or of an
+     * ASSIGNMENT.
+     */
+    public int value(int node) {
+        return nodes[kind(node) == Kind.RETURN ? node + 1 : node + 2];
+    }
+
+    /**
+     * Returns the expression of a FOR, EXPRESSION, ASSIGNMENT, or GROUP.
+     */
+    public int expression(int node) {
+        return nodes[node + 1];
+    }
+
+    /**
+     * Returns the number of parameters of a DEF.
+     */
+    public int parameters(int node) {
+        return lists[nodes[node + 2]];
+    }
+
+    public String parameter(int node, int index) {
+        checkElementIndex(index, parameters(node));
+        return names.get(lists[nodes[node + 2] + 1 + 2 * index] - 1);
+    }
+
+    public @Nullable String parameterType(int node, int index) {
+        checkElementIndex(index, parameters(node));
+        return lookup(lists[nodes[node + 2] + 2 + 2 * index]);
+    }
+
+    /**
+     * Returns the body of a DEF or FOR.
+     */
+    public int body(int node) {
+        if (kind(node) == Kind.DEF) {
+            var parameters = nodes[node + 2];
+            return parameters + 1 + 2 * lists[parameters];
+        }
+        return nodes[node + 2];
+    }
+
+    public int condition(int node) {
+        return nodes[node + 1];
+    }
+
+    public int thenBody(int node) {
+        return nodes[node + 2];
+    }
+
+    public int elseBody(int node) {
+        return nodes[node + 3];
+    }
+
+    /**
+     * Returns the literal value, which for integers which fit in a long is
+     * created on each call (see {@link #isLong(int)}).
+     */
+    public @Nullable Object literal(int node) {
+        if (isLong(node)) {
+            return BigInteger.valueOf(longValue(node));
+        }
+        return constants.get(nodes[node] >>> (KIND_BITS + TAG_BITS));
+    }
+
+    /**
+     * Returns true if the literal is an integer stored as a long, available
+     * without allocating from {@link #longValue(int)}.
+     */
+    public boolean isLong(int node) {
+        return tag(node) != CONSTANT;
+    }
+
+    public long longValue(int node) {
+        if (tag(node) == SMALL) {
+            return nodes[node] >> (KIND_BITS + TAG_BITS);
+        }
+        return (nodes[node + 1] & 0xFFFFFFFFL) | ((long) nodes[node + 2] << 32);
+    }
+
+    private int tag(int node) {
+        return (nodes[node] >>> KIND_BITS) & ((1 << TAG_BITS) - 1);
+    }
+
+    public String operator(int node) {
+        return names.get((nodes[node] >>> KIND_BITS) - 1);
+    }
+
+    public int left(int node) {
+        return nodes[node + 1];
+    }
+
+    public int right(int node) {
+        return nodes[node + 2];
+    }
+
+    /**
+     * Returns the receiver of a PROPERTY or METHOD.
+     */
+    public int receiver(int node) {
+        return nodes[node + 1];
+    }
+
+    /**
+     * Returns the arguments of a FUNCTION or METHOD.
+     */
+    public int arguments(int node) {
+        return nodes[kind(node) == Kind.FUNCTION ? node + 1 : node + 2];
+    }
+
+    public int fields(int node) {
+        return nodes[node + 1];
+    }
+
+    public int methods(int node) {
+        return nodes[node + 2];
+    }
+
+    /**
+     * Traverses a {@link FlatAst} like {@link Ast.Visitor}, with each method
+     * receiving the node to visit.
+     */
+    public interface Visitor<T, E extends Exception> {
+
+        default T visit(FlatAst ast, int node) throws E {
+            return switch (ast.kind(node)) {
+                case LET -> visitLet(ast, node);
+                case DEF -> visitDef(ast, node);
+                case IF -> visitIf(ast, node);
+                case FOR -> visitFor(ast, node);
+                case RETURN -> visitReturn(ast, node);
+                case EXPRESSION -> visitExpression(ast, node);
+                case ASSIGNMENT -> visitAssignment(ast, node);
+                case LITERAL -> visitLiteral(ast, node);
+                case GROUP -> visitGroup(ast, node);
+                case BINARY -> visitBinary(ast, node);
+                case VARIABLE -> visitVariable(ast, node);
+                case PROPERTY -> visitProperty(ast, node);
+                case FUNCTION -> visitFunction(ast, node);
+                case METHOD -> visitMethod(ast, node);
+                case OBJECT -> visitObject(ast, node);
+            };
+        }
+
+        T visit(FlatAst ast) throws E;
+        T visitLet(FlatAst ast, int node) throws E;
+        T visitDef(FlatAst ast, int node) throws E;
+        T visitIf(FlatAst ast, int node) throws E;
+        T visitFor(FlatAst ast, int node) throws E;
+        T visitReturn(FlatAst ast, int node) throws E;
+        T visitExpression(FlatAst ast, int node) throws E;
+        T visitAssignment(FlatAst ast, int node) throws E;
+        T visitLiteral(FlatAst ast, int node) throws E;
+        T visitGroup(FlatAst ast, int node) throws E;
+        T visitBinary(FlatAst ast, int node) throws E;
+        T visitVariable(FlatAst ast, int node) throws E;
+        T visitProperty(FlatAst ast, int node) throws E;
+        T visitFunction(FlatAst ast, int node) throws E;
+        T visitMethod(FlatAst ast, int node) throws E;
+        T visitObject(FlatAst ast, int node) throws E;
+
+    }
+
+    /**
+     * Adds nodes for an {@link Ast}. Each node is added before its children,
+     * with its operands set once the children are added.
+     */
+    private static final class Builder {
+
+        private final FlatAst flat;
+        private final Map<String, Integer> names = new HashMap<>();
+        private final Map<@Nullable Object, Integer> constants = new HashMap<>();
+
+        private Builder(FlatAst flat) {
+            this.flat = flat;
+        }
+
+        /**
+         * Adds a node with the header and space for the operands.
+         */
+        private int node(Kind kind, int payload, int operands) {
+            if (flat.length + 1 + operands > flat.nodes.length) {
+                flat.nodes = Arrays.copyOf(flat.nodes, 2 * flat.nodes.length);
+            }
+            var node = flat.length;
+            flat.nodes[node] = kind.ordinal() | payload << KIND_BITS;
+            flat.length += 1 + operands;
+            flat.count++;
+            return node;
+        }
+
+        private int list(int[] elements, int size) {
+            if (flat.listsSize + size + 1 > flat.lists.length) {
+                flat.lists = Arrays.copyOf(flat.lists, Math.max(2 * flat.lists.length, flat.listsSize + size + 1));
+            }
+            var list = flat.listsSize;
+            flat.lists[list] = size;
+            System.arraycopy(elements, 0, flat.lists, list + 1, size);
+            flat.listsSize += size + 1;
+            return list;
+        }
+
+        /**
+         * Returns the index of the name plus one, so 0 is no name.
+         */
+        private int name(String name) {
+            return names.computeIfAbsent(name, n -> {
+                flat.names.add(n);
+                return flat.names.size();
+            });
+        }
+
+        private int name(Optional<String> name) {
+            return name.isPresent() ? name(name.get()) : 0;
+        }
+
+        private int constant(@Nullable Object value) {
+            var index = constants.get(value);
+            if (index == null) {
+                index = flat.constants.size();
+                flat.constants.add(value);
+                constants.put(value, index);
+            }
+            return index;
+        }
+
+        private int stmts(List<? extends Ast.Stmt> statements) {
+            var elements = new int[statements.size()];
+            for (int i = 0; i < elements.length; i++) {
+                elements[i] = stmt(statements.get(i));
+            }
+            return list(elements, elements.length);
+        }
+
+        private int exprs(List<Ast.Expr> exprs) {
+            var elements = new int[exprs.size()];
+            for (int i = 0; i < elements.length; i++) {
+                elements[i] = expr(exprs.get(i));
+            }
+            return list(elements, elements.length);
+        }
+
+        private int expr(Optional<Ast.Expr> expr) {
+            return expr.isPresent() ? expr(expr.get()) : NONE;
+        }
+
+        private int stmt(Ast.Stmt stmt) {
+            return switch (stmt) {
+                case Ast.Stmt.Let let -> let(let);
+                case Ast.Stmt.Def def -> def(def);
+                case Ast.Stmt.If ast -> {
+                    var node = node(Kind.IF, 0, 3);
+                    set(node, expr(ast.condition()), stmts(ast.thenBody()), stmts(ast.elseBody()));
+                    yield node;
+                }
+                case Ast.Stmt.For ast -> {
+                    var node = node(Kind.FOR, name(ast.name()), 2);
+                    set(node, expr(ast.expression()), stmts(ast.body()));
+                    yield node;
+                }
+                case Ast.Stmt.Return ast -> {
+                    var node = node(Kind.RETURN, 0, 1);
+                    set(node, expr(ast.value()));
+                    yield node;
+                }
+                case Ast.Stmt.Expression ast -> {
+                    var node = node(Kind.EXPRESSION, 0, 1);
+                    set(node, expr(ast.expression()));
+                    yield node;
+                }
+                case Ast.Stmt.Assignment ast -> {
+                    var node = node(Kind.ASSIGNMENT, 0, 2);
+                    set(node, expr(ast.expression()), expr(ast.value()));
+                    yield node;
+                }
+            };
+        }
+
+        private void set(int node, int... operands) {
+            System.arraycopy(operands, 0, flat.nodes, node + 1, operands.length);
+        }
+
+        private int let(Ast.Stmt.Let ast) {
+            var node = node(Kind.LET, name(ast.name()), 2);
+            set(node, name(ast.type()), expr(ast.value()));
+            return node;
+        }
+
+        private int def(Ast.Stmt.Def ast) {
+            var node = node(Kind.DEF, name(ast.name()), 2);
+            // the parameters are a list of (name, type) pairs, immediately
+            // followed by the body so both are found from one operand
+            var parameters = new int[2 * ast.parameters().size()];
+            for (int i = 0; i < ast.parameters().size(); i++) {
+                parameters[2 * i] = name(ast.parameters().get(i));
+                parameters[2 * i + 1] = i < ast.parameterTypes().size() ? name(ast.parameterTypes().get(i)) : 0;
+            }
+            var body = new int[ast.body().size()];
+            for (int i = 0; i < body.length; i++) {
+                body[i] = stmt(ast.body().get(i));
+            }
+            var list = list(parameters, parameters.length);
+            flat.lists[list] = ast.parameters().size();
+            list(body, body.length);
+            set(node, name(ast.returnType()), list);
+            return node;
+        }
+
+        private int expr(Ast.Expr expr) {
+            return switch (expr) {
+                case Ast.Expr.Literal ast -> {
+                    if (ast.value() instanceof BigInteger integer && integer.bitLength() < Long.SIZE) {
+                        var value = integer.longValue();
+                        if (value >= SMALL_MINIMUM && value <= SMALL_MAXIMUM) {
+                            yield node(Kind.LITERAL, SMALL | (int) value << TAG_BITS, 0);
+                        }
+                        var node = node(Kind.LITERAL, LONG, 2);
+                        set(node, (int) value, (int) (value >>> 32));
+                        yield node;
+                    }
+                    yield node(Kind.LITERAL, CONSTANT | constant(ast.value()) << TAG_BITS, 0);
+                }
+                case Ast.Expr.Group ast -> {
+                    var node = node(Kind.GROUP, 0, 1);
+                    set(node, expr(ast.expression()));
+                    yield node;
+                }
+                case Ast.Expr.Binary ast -> {
+                    var node = node(Kind.BINARY, name(ast.operator()), 2);
+                    set(node, expr(ast.left()), expr(ast.right()));
+                    yield node;
+                }
+                case Ast.Expr.Variable ast -> node(Kind.VARIABLE, name(ast.name()), 0);
+                case Ast.Expr.Property ast -> {
+                    var node = node(Kind.PROPERTY, name(ast.name()), 1);
+                    set(node, expr(ast.receiver()));
+                    yield node;
+                }
+                case Ast.Expr.Function ast -> {
+                    var node = node(Kind.FUNCTION, name(ast.name()), 1);
+                    set(node, exprs(ast.arguments()));
+                    yield node;
+                }
+                case Ast.Expr.Method ast -> {
+                    var node = node(Kind.METHOD, name(ast.name()), 2);
+                    set(node, expr(ast.receiver()), exprs(ast.arguments()));
+                    yield node;
+                }
+                case Ast.Expr.ObjectExpr ast -> {
+                    var node = node(Kind.OBJECT, name(ast.name()), 2);
+                    var fields = new int[ast.fields().size()];
+                    for (int i = 0; i < fields.length; i++) {
+                        fields[i] = let(ast.fields().get(i));
+                    }
+                    var methods = new int[ast.methods().size()];
+                    for (int i = 0; i < methods.length; i++) {
+                        methods[i] = def(ast.methods().get(i));
+                    }
+                    set(node, list(fields, fields.length), list(methods, methods.length));
+                    yield node;
+                }
+            };
+        }
+
+    }
+
+    /**
+     * Converts back to an {@link Ast}, which also serves as the reference
+     * implementation of a {@link Visitor}.
+     */
+    private static final class Converter implements Visitor<Ast, RuntimeException> {
+
+        @Override
+        public Ast.Source visit(FlatAst ast) {
+            return new Ast.Source(stmts(ast, ast.statements()));
+        }
+
+        private List<Ast.Stmt> stmts(FlatAst ast, int list) {
+            var statements = new ArrayList<Ast.Stmt>(ast.size(list));
+            for (int i = 0; i < ast.size(list); i++) {
+                statements.add((Ast.Stmt) visit(ast, ast.get(list, i)));
+            }
+            return statements;
+        }
+
+        private List<Ast.Expr> exprs(FlatAst ast, int list) {
+            var exprs = new ArrayList<Ast.Expr>(ast.size(list));
+            for (int i = 0; i < ast.size(list); i++) {
+                exprs.add(expr(ast, ast.get(list, i)));
+            }
+            return exprs;
+        }
+
+        private Ast.Expr expr(FlatAst ast, int node) {
+            return (Ast.Expr) visit(ast, node);
+        }
+
+        private Optional<Ast.Expr> optionalExpr(FlatAst ast, int node) {
+            return node != NONE ? Optional.of(expr(ast, node)) : Optional.empty();
+        }
+
+        @Override
+        public Ast.Stmt.Let visitLet(FlatAst ast, int node) {
+            return new Ast.Stmt.Let(
+                requireName(ast, node),
+                Optional.ofNullable(ast.type(node)),
+                optionalExpr(ast, ast.value(node))
+            );
+        }
+
+        @Override
+        public Ast.Stmt.Def visitDef(FlatAst ast, int node) {
+            var parameters = new ArrayList<String>();
+            var parameterTypes = new ArrayList<Optional<String>>();
+            for (int i = 0; i < ast.parameters(node); i++) {
+                parameters.add(ast.parameter(node, i));
+                parameterTypes.add(Optional.ofNullable(ast.parameterType(node, i)));
+            }
+            return new Ast.Stmt.Def(
+                requireName(ast, node),
+                parameters,
+                parameterTypes,
+                Optional.ofNullable(ast.type(node)),
+                stmts(ast, ast.body(node))
+            );
+        }
+
+        @Override
+        public Ast.Stmt.If visitIf(FlatAst ast, int node) {
+            return new Ast.Stmt.If(
+                expr(ast, ast.condition(node)),
+                stmts(ast, ast.thenBody(node)),
+                stmts(ast, ast.elseBody(node))
+            );
+        }
+
+        @Override
+        public Ast.Stmt.For visitFor(FlatAst ast, int node) {
+            return new Ast.Stmt.For(requireName(ast, node), expr(ast, ast.expression(node)), stmts(ast, ast.body(node)));
+        }
+
+        @Override
+        public Ast.Stmt.Return visitReturn(FlatAst ast, int node) {
+            return new Ast.Stmt.Return(optionalExpr(ast, ast.value(node)));
+        }
+
+        @Override
+        public Ast.Stmt.Expression visitExpression(FlatAst ast, int node) {
+            return new Ast.Stmt.Expression(expr(ast, ast.expression(node)));
+        }
+
+        @Override
+        public Ast.Stmt.Assignment visitAssignment(FlatAst ast, int node) {
+            return new Ast.Stmt.Assignment(expr(ast, ast.expression(node)), expr(ast, ast.value(node)));
+        }
+
+        @Override
+        public Ast.Expr.Literal visitLiteral(FlatAst ast, int node) {
+            return new Ast.Expr.Literal(ast.literal(node));
+        }
+
+        @Override
+        public Ast.Expr.Group visitGroup(FlatAst ast, int node) {
+            return new Ast.Expr.Group(expr(ast, ast.expression(node)));
+        }
+
+        @Override
+        public Ast.Expr.Binary visitBinary(FlatAst ast, int node) {
+            return new Ast.Expr.Binary(ast.operator(node), expr(ast, ast.left(node)), expr(ast, ast.right(node)));
+        }
+
+        @Override
+        public Ast.Expr.Variable visitVariable(FlatAst ast, int node) {
+            return new Ast.Expr.Variable(requireName(ast, node));
+        }
+
+        @Override
+        public Ast.Expr.Property visitProperty(FlatAst ast, int node) {
+            return new Ast.Expr.Property(expr(ast, ast.receiver(node)), requireName(ast, node));
+        }
+
+        @Override
+        public Ast.Expr.Function visitFunction(FlatAst ast, int node) {
+            return new Ast.Expr.Function(requireName(ast, node), exprs(ast, ast.arguments(node)));
+        }
+
+        @Override
+        public Ast.Expr.Method visitMethod(FlatAst ast, int node) {
+            return new Ast.Expr.Method(expr(ast, ast.receiver(node)), requireName(ast, node), exprs(ast, ast.arguments(node)));
+        }
+
+        @Override
+        public Ast.Expr.ObjectExpr visitObject(FlatAst ast, int node) {
+            var fields = new ArrayList<Ast.Stmt.Let>(ast.size(ast.fields(node)));
+            for (int i = 0; i < ast.size(ast.fields(node)); i++) {
+                fields.add(visitLet(ast, ast.get(ast.fields(node), i)));
+            }
+            var methods = new ArrayList<Ast.Stmt.Def>(ast.size(ast.methods(node)));
+            for (int i = 0; i < ast.size(ast.methods(node)); i++) {
+                methods.add(visitDef(ast, ast.get(ast.methods(node), i)));
+            }
+            return new Ast.Expr.ObjectExpr(Optional.ofNullable(ast.name(node)), fields, methods);
+        }
+
+        private static String requireName(FlatAst ast, int node) {
+            var name = ast.name(node);
+            if (name == null) {
+                throw new IllegalStateException("Expected a name for " + ast.kind(node) + ".");
+            }
+            return name;
+        }
+
+    }
+
+}
@@ -0,0 +1,173 @@
+package plc.project.parser;
+
+import plc.project.lexer.IncrementalLexer;
+import plc.project.lexer.LexException;
+import plc.project.lexer.TokenBuffer;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static com.google.common.base.Preconditions.checkState;
+
+/**
+ * Keeps the AST of an input up to date as it is edited, reparsing only the
+ * top-level statements affected by each edit and reusing the rest, for
+ * editors and the REPL.
+ *
+ * <p>Each top-level statement covers a range of tokens, recorded as the index
+ * of the token after its end. After {@link IncrementalLexer} updates the
+ * tokens, parsing restarts at the statement containing the first changed token
+ * and stops as soon as a statement ends past the change where a statement
+ * ended before the edit (adjusted for the change in the number of tokens).
+ * The parser has no state between top-level statements, so every statement
+ * after that point is unchanged and its {@link Ast} record is reused.
+ *
+ * <p>If an edit can't be parsed, the statements from the last successful
+ * parse are kept (with the ends after the edit shifted), but those from the
+ * statement containing the edit onwards may be stale. Until a reparse gets
+ * past the error, later edits restart no later than that statement and can
+ * only resync after the error, so the stale statements are always reparsed.
+ */
+public final class IncrementalParser {
+
+    private final IncrementalLexer lexer;
+    private final List<Ast.Stmt> statements = new ArrayList<>();
+    private int[] ends = new int[16];
+
+    /**
+     * False if the last edit couldn't be parsed, in which case the statements
+     * from index stale onwards may not match the input, and statements can't
+     * be reused until reparsing reaches the token index resume.
+     */
+    private boolean complete = false;
+    private int stale = 0;
+    private int resume = 0;
+
+    public IncrementalParser(String input) throws LexException, ParseException {
+        this.lexer = new IncrementalLexer(input);
+        reparse(0, 0, 0);
+    }
+
+    public TokenBuffer tokens() {
+        return lexer.tokens();
+    }
+
+    /**
+     * Returns the current AST, which must have parsed successfully.
+     */
+    public Ast.Source source() {
+        checkState(complete, "The input contains a syntax error.");
+        return new Ast.Source(List.copyOf(statements));
+    }
+
+    /**
+     * Applies the edit (see {@link IncrementalLexer#edit}) and returns the
+     * updated AST. If the edited input is invalid the exception is thrown; for
+     * a LexException nothing is changed, while after a ParseException the AST
+     * is unavailable until an edit fixes the error.
+     */
+    public Ast.Source edit(int offset, int removed, String inserted) throws LexException, ParseException {
+        var damage = lexer.edit(offset, removed, inserted);
+        var first = search(damage.start());
+        var changed = damage.start() + damage.inserted();
+        var shift = damage.inserted() - damage.removed();
+        if (!complete) {
+            first = Math.min(first, stale);
+            // resume moves with the tokens after the edit, or to its end if removed
+            var moved = resume >= damage.start() + damage.removed() ? resume + shift : changed;
+            changed = Math.max(changed, moved);
+        }
+        reparse(first, changed, shift);
+        return source();
+    }
+
+    /**
+     * Parses statements from statement first onwards, replacing the previous
+     * statements until one ends at or after the given token (the end of the
+     * changed tokens, or past a previous error) where a previous statement
+     * ended adjusted by shift.
+     */
+    private void reparse(int first, int changed, int shift) throws ParseException {
+        var tokens = lexer.tokens();
+        var restart = first == 0 ? 0 : ends[first - 1];
+        var parser = new Parser(tokens.source(restart));
+
+        var parsed = new ArrayList<Ast.Stmt>();
+        var parsedEnds = new int[16];
+        var old = first;
+        var resynced = false;
+        var position = restart;
+
+        complete = false;
+        try {
+            while (!resynced && position < tokens.size()) {
+                parsed.add(parser.parseStmt());
+                position = restart + parser.position();
+                if (parsed.size() > parsedEnds.length) {
+                    parsedEnds = Arrays.copyOf(parsedEnds, parsedEnds.length * 2);
+                }
+                parsedEnds[parsed.size() - 1] = position;
+
+                // only statements past the change can match previous ones
+                if (position >= changed) {
+                    while (old < statements.size() && ends[old] + shift < position) {
+                        old++;
+                    }
+                    resynced = old < statements.size() && ends[old] + shift == position;
+                }
+            }
+        } catch (ParseException e) {
+            // keep the previous statements, which can only be reused past the error
+            for (int i = first; i < statements.size(); i++) {
+                ends[i] += shift;
+            }
+            stale = first;
+            resume = Math.max(changed, restart + parser.position() + 1);
+            throw e;
+        }
+
+        splice(first, resynced ? old + 1 : statements.size(), parsed, parsedEnds, shift);
+        complete = true;
+    }
+
+    /**
+     * Replaces statements [start, end) with the parsed statements, shifting
+     * the ends of the statements after them.
+     */
+    private void splice(int start, int end, List<Ast.Stmt> parsed, int[] parsedEnds, int shift) {
+        var after = statements.size() - end;
+        var size = start + parsed.size() + after;
+        if (size > ends.length) {
+            ends = Arrays.copyOf(ends, Math.max(size, ends.length * 2));
+        }
+        System.arraycopy(ends, end, ends, start + parsed.size(), after);
+        System.arraycopy(parsedEnds, 0, ends, start, parsed.size());
+        for (int i = start + parsed.size(); i < size; i++) {
+            ends[i] += shift;
+        }
+
+        var replaced = statements.subList(start, end);
+        replaced.clear();
+        replaced.addAll(parsed);
+    }
+
+    /**
+     * Returns the index of the statement containing the token, which is the
+     * first statement ending after it (or the number of statements if none).
+     */
+    private int search(int token) {
+        int low = 0;
+        int high = statements.size();
+        while (low < high) {
+            var middle = (low + high) >>> 1;
+            if (ends[middle] <= token) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        return low;
+    }
+
+}
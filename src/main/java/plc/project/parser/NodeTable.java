@@ -0,0 +1,206 @@
+package plc.project.parser;
+
+import org.checkerframework.checker.nullness.qual.Nullable;
+
+import java.math.BigInteger;
+import java.util.List;
+import java.util.Objects;
+
+/**
+ * Hash-conses expressions for {@link Parser#shareNodes()}, so identical
+ * literals and subexpressions are a single shared node. Since {@link Ast}
+ * records are immutable, sharing is only visible through identity.
+ *
+ * <p>Expressions are interned bottom-up, so the children of an expression
+ * have already been interned and are compared (and hashed) by identity. This
+ * keeps each lookup proportional to the node itself rather than its subtree.
+ * Statements and objects aren't interned, since they rarely repeat, but
+ * expressions containing an object aren't shared as a result.
+ *
+ * <p>Integers which fit in a long are looked up by the long, so repeated
+ * integers don't allocate a {@link BigInteger}. Both tables use open
+ * addressing like the lexer's {@code SymbolTable}, so a lookup doesn't
+ * allocate. Tables are not thread safe; each {@link Parser} has its own.
+ */
+final class NodeTable {
+
+    private Ast.@Nullable Expr[] exprs = new Ast.Expr[256];
+    private int[] hashes = new int[256];
+    private int size = 0;
+
+    private long[] longs = new long[64];
+    private Ast.Expr.@Nullable Literal[] longLiterals = new Ast.Expr.Literal[64];
+    private int longsSize = 0;
+
+    Ast.Expr.Literal literal(@Nullable Object value) {
+        if (value instanceof BigInteger integer && integer.bitLength() < Long.SIZE) {
+            return literal(integer.longValue());
+        }
+        return intern(new Ast.Expr.Literal(value));
+    }
+
+    Ast.Expr.Literal literal(long value) {
+        var mask = longs.length - 1;
+        for (int slot = mix(Long.hashCode(value)) & mask; longLiterals[slot] != null; slot = (slot + 1) & mask) {
+            if (longs[slot] == value) {
+                return Objects.requireNonNull(longLiterals[slot]);
+            }
+        }
+        var literal = new Ast.Expr.Literal(BigInteger.valueOf(value));
+        insertLong(value, literal);
+        return literal;
+    }
+
+    private void insertLong(long value, Ast.Expr.Literal literal) {
+        // keep the table at most half full, as in SymbolTable
+        if (2 * (longsSize + 1) > longs.length) {
+            var previous = longs;
+            var previousLiterals = longLiterals;
+            longs = new long[previous.length * 2];
+            longLiterals = new Ast.Expr.Literal[previous.length * 2];
+            longsSize = 0;
+            for (int i = 0; i < previous.length; i++) {
+                var existing = previousLiterals[i];
+                if (existing != null) {
+                    insertLong(previous[i], existing);
+                }
+            }
+        }
+
+        var mask = longs.length - 1;
+        var slot = mix(Long.hashCode(value)) & mask;
+        while (longLiterals[slot] != null) {
+            slot = (slot + 1) & mask;
+        }
+        longs[slot] = value;
+        longLiterals[slot] = literal;
+        longsSize++;
+    }
+
+    /**
+     * Returns the shared expression equal to expr, which is expr itself the
+     * first time it's seen.
+     */
+    @SuppressWarnings("unchecked")
+    <T extends Ast.Expr> T intern(T expr) {
+        if (expr instanceof Ast.Expr.ObjectExpr) {
+            return expr;
+        } else if (expr instanceof Ast.Expr.Literal literal && literal.value() instanceof BigInteger integer
+                && integer.bitLength() < Long.SIZE) {
+            return (T) literal(integer.longValue());
+        }
+
+        var hash = hash(expr);
+        var mask = exprs.length - 1;
+        for (int slot = mix(hash) & mask; exprs[slot] != null; slot = (slot + 1) & mask) {
+            if (hashes[slot] == hash && same(Objects.requireNonNull(exprs[slot]), expr)) {
+                return (T) Objects.requireNonNull(exprs[slot]);
+            }
+        }
+        insert(expr, hash);
+        return expr;
+    }
+
+    private void insert(Ast.Expr expr, int hash) {
+        if (2 * (size + 1) > exprs.length) {
+            var previous = exprs;
+            var previousHashes = hashes;
+            exprs = new Ast.Expr[previous.length * 2];
+            hashes = new int[previous.length * 2];
+            size = 0;
+            for (int i = 0; i < previous.length; i++) {
+                var existing = previous[i];
+                if (existing != null) {
+                    insert(existing, previousHashes[i]);
+                }
+            }
+        }
+
+        var mask = exprs.length - 1;
+        var slot = mix(hash) & mask;
+        while (exprs[slot] != null) {
+            slot = (slot + 1) & mask;
+        }
+        exprs[slot] = expr;
+        hashes[slot] = hash;
+        size++;
+    }
+
+    private static int mix(int hash) {
+        hash *= 0x9E3779B9;
+        return hash ^ (hash >>> 16);
+    }
+
+    /**
+     * Hashes an expression by its own components, with child expressions
+     * hashed by identity.
+     */
+    private static int hash(Ast.Expr expr) {
+        return switch (expr) {
+            case Ast.Expr.Literal ast -> Objects.hashCode(ast.value());
+            case Ast.Expr.Group ast -> System.identityHashCode(ast.expression());
+            case Ast.Expr.Binary ast -> 31 * (31 * ast.operator().hashCode()
+                + System.identityHashCode(ast.left())) + System.identityHashCode(ast.right());
+            case Ast.Expr.Variable ast -> ast.name().hashCode();
+            case Ast.Expr.Property ast -> 31 * System.identityHashCode(ast.receiver()) + ast.name().hashCode();
+            case Ast.Expr.Function ast -> 31 * ast.name().hashCode() + hash(ast.arguments());
+            case Ast.Expr.Method ast -> 31 * (31 * System.identityHashCode(ast.receiver())
+                + ast.name().hashCode()) + hash(ast.arguments());
+            case Ast.Expr.ObjectExpr ast -> System.identityHashCode(ast);
+        } * 16 + expr.getClass().hashCode();
+    }
+
+    private static int hash(List<Ast.Expr> exprs) {
+        var hash = 1;
+        for (var expr : exprs) {
+            hash = 31 * hash + System.identityHashCode(expr);
+        }
+        return hash;
+    }
+
+    /**
+     * Compares expressions by their own components, with child expressions
+     * compared by identity.
+     */
+    private static boolean same(Ast.Expr expr, Ast.Expr other) {
+        if (expr.getClass() != other.getClass()) {
+            return false;
+        }
+        return switch (expr) {
+            case Ast.Expr.Literal ast -> Objects.equals(ast.value(), ((Ast.Expr.Literal) other).value());
+            case Ast.Expr.Group ast -> ast.expression() == ((Ast.Expr.Group) other).expression();
+            case Ast.Expr.Binary ast -> {
+                var binary = (Ast.Expr.Binary) other;
+                yield ast.operator().equals(binary.operator()) && ast.left() == binary.left() && ast.right() == binary.right();
+            }
+            case Ast.Expr.Variable ast -> ast.name().equals(((Ast.Expr.Variable) other).name());
+            case Ast.Expr.Property ast -> {
+                var property = (Ast.Expr.Property) other;
+                yield ast.receiver() == property.receiver() && ast.name().equals(property.name());
+            }
+            case Ast.Expr.Function ast -> {
+                var function = (Ast.Expr.Function) other;
+                yield ast.name().equals(function.name()) && same(ast.arguments(), function.arguments());
+            }
+            case Ast.Expr.Method ast -> {
+                var method = (Ast.Expr.Method) other;
+                yield ast.receiver() == method.receiver() && ast.name().equals(method.name())
+                    && same(ast.arguments(), method.arguments());
+            }
+            case Ast.Expr.ObjectExpr ast -> ast == other;
+        };
+    }
+
+    private static boolean same(List<Ast.Expr> left, List<Ast.Expr> right) {
+        if (left.size() != right.size()) {
+            return false;
+        }
+        for (int i = 0; i < left.size(); i++) {
+            if (left.get(i) != right.get(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+}
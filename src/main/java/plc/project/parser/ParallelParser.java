@@ -0,0 +1,156 @@
+package plc.project.parser;
+
+import org.checkerframework.checker.nullness.qual.Nullable;
+import plc.project.lexer.Token;
+import plc.project.lexer.TokenBuffer;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+
+/**
+ * Parses large sources in parallel by splitting the tokens into ranges of
+ * whole top-level statements, parsing each range with its own {@link Parser}
+ * on a {@link ForkJoinPool}, and then joining the statements in order. The
+ * AST is identical to {@link Parser#parseSource()}.
+ *
+ * <p>Ranges are found by a quick scan of the tokens which counts {@code DO}
+ * and {@code END} to track block nesting, splitting after a {@code ;} or a
+ * block's {@code END} outside of any block. The scan is only a guess (keywords
+ * may also be used as names), so a range is only accepted if its statements
+ * end exactly at the end of the range. The parser has no state between
+ * top-level statements, so each accepted range parses the same as it would
+ * sequentially. From the first range which isn't accepted (including one with
+ * a syntax error) the rest of the tokens are parsed sequentially, so the
+ * exception thrown is the same one {@link Parser#parseSource()} would throw.
+ */
+public final class ParallelParser {
+
+    /**
+     * Tokens are split into ranges of at least this many tokens, since
+     * smaller ranges aren't worth the overhead of scheduling.
+     */
+    private static final int MINIMUM_RANGE = 1 << 14;
+
+    private final TokenBuffer tokens;
+    private final ForkJoinPool pool;
+
+    public ParallelParser(TokenBuffer tokens) {
+        this(tokens, ForkJoinPool.commonPool());
+    }
+
+    public ParallelParser(TokenBuffer tokens, ForkJoinPool pool) {
+        this.tokens = tokens;
+        this.pool = pool;
+    }
+
+    public Ast.Source parseSource() throws ParseException {
+        var boundaries = split();
+
+        var futures = new ArrayList<Future<@Nullable List<Ast.Stmt>>>();
+        for (int i = 0; i + 1 < boundaries.size(); i++) {
+            var start = boundaries.get(i);
+            var end = boundaries.get(i + 1);
+            futures.add(pool.submit((Callable<@Nullable List<Ast.Stmt>>) () -> parseRange(start, end)));
+        }
+
+        var statements = new ArrayList<Ast.Stmt>();
+        for (int i = 0; i < futures.size(); i++) {
+            @Nullable List<Ast.Stmt> range;
+            try {
+                range = futures.get(i).get();
+            } catch (ExecutionException e) {
+                futures.forEach(f -> f.cancel(false));
+                throw new IllegalStateException(e.getCause());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException(e);
+            }
+
+            if (range == null) {
+                futures.forEach(f -> f.cancel(false));
+                var start = boundaries.get(i);
+                var parser = new Parser(tokens.source(start));
+                while (start + parser.position() < tokens.size()) {
+                    statements.add(parser.parseStmt());
+                }
+                break;
+            }
+            statements.addAll(range);
+        }
+        return new Ast.Source(statements);
+    }
+
+    /**
+     * Returns the statements of tokens [start, end), or null if the range
+     * has a syntax error or its last statement doesn't end at end.
+     */
+    private @Nullable List<Ast.Stmt> parseRange(int start, int end) {
+        var parser = new Parser(tokens.source(start));
+        var statements = new ArrayList<Ast.Stmt>();
+        try {
+            while (start + parser.position() < end) {
+                statements.add(parser.parseStmt());
+            }
+        } catch (ParseException e) {
+            return null;
+        }
+        return start + parser.position() == end ? statements : null;
+    }
+
+    /**
+     * Returns the range boundaries, starting with 0 and ending with the number
+     * of tokens, where every other boundary is a likely statement boundary.
+     */
+    private List<Integer> split() {
+        var size = Math.max(MINIMUM_RANGE, tokens.size() / (4 * pool.getParallelism()));
+
+        var boundaries = new ArrayList<Integer>();
+        boundaries.add(0);
+        var depth = 0;
+        var next = size;
+        for (int i = 0; i + 1 < tokens.size(); i++) {
+            var boundary = false;
+            if (is(i, Token.Type.IDENTIFIER, "DO")) {
+                depth++;
+            } else if (is(i, Token.Type.IDENTIFIER, "END") && depth > 0) {
+                // an END may still continue, such as OBJECT ... END; or
+                // OBJECT ... END.method(), but not with an identifier
+                // unless it's a binary operator
+                boundary = --depth == 0 && tokens.type(i + 1) == Token.Type.IDENTIFIER
+                    && !is(i + 1, Token.Type.IDENTIFIER, "AND") && !is(i + 1, Token.Type.IDENTIFIER, "OR");
+            } else if (is(i, Token.Type.OPERATOR, ";")) {
+                boundary = depth == 0;
+            }
+
+            if (boundary && i + 1 >= next) {
+                boundaries.add(i + 1);
+                next = i + 1 + size;
+            }
+        }
+        boundaries.add(tokens.size());
+        return boundaries;
+    }
+
+    /**
+     * Returns true if the token has the type and literal, comparing the
+     * literal against the input so no String is created.
+     */
+    private boolean is(int index, Token.Type type, String literal) {
+        if (tokens.type(index) != type || tokens.end(index) - tokens.start(index) != literal.length()) {
+            return false;
+        }
+        var input = tokens.input();
+        var start = tokens.start(index);
+        for (int i = 0; i < literal.length(); i++) {
+            if (input.charAt(start + i) != literal.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+}
@@ -1,12 +1,20 @@
 package plc.project.parser;
 
+import org.checkerframework.checker.nullness.qual.Nullable;
+import plc.project.lexer.LexException;
 import plc.project.lexer.Token;
+import plc.project.lexer.TokenBuffer;
+import plc.project.lexer.TokenSource;
 
 import java.math.BigDecimal;
 import java.math.BigInteger;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.EnumSet;
 import java.util.List;
+import java.util.Objects;
 import java.util.Optional;
+import java.util.Set;
 
 import static com.google.common.base.Preconditions.checkState;
 
@@ -14,7 +22,9 @@ import static com.google.common.base.Preconditions.checkState;
  * This style of parser is called <em>recursive descent</em>. Each rule in our
  * grammar has dedicated function, and references to other rules correspond to
  * calling that function. Recursive rules are therefore supported by actual
- * recursive calls, while operator precedence is encoded via the grammar.
+ * recursive calls. Binary operators are the exception, which are parsed by
+ * precedence climbing: a single loop handles every precedence level, using
+ * {@link TokenKind#precedence()} instead of a rule for each level.
  *
  * <p>The parser has a similar architecture to the lexer, just with
  * {@link Token}s instead of characters. As before, {@link TokenStream#peek} and
@@ -24,10 +34,63 @@ import static com.google.common.base.Preconditions.checkState;
  */
 public final class Parser {
 
+    /**
+     * The number of nested expressions parsed recursively before switching to
+     * {@link #parseNestedExpr()}, which is well beyond ordinary code but
+     * still a small fraction of the default thread stack.
+     */
+    private static final int MAXIMUM_DEPTH = 64;
+
+    /**
+     * Keywords starting a primary expression other than a variable.
+     */
+    private static final Set<TokenKind> KEYWORD_PRIMARIES =
+        EnumSet.of(TokenKind.NIL, TokenKind.TRUE, TokenKind.FALSE, TokenKind.OBJECT);
+
     private final TokenStream tokens;
+    private @Nullable List<ParseException> errors = null;
+    private @Nullable NodeTable nodes = null;
+    private int depth = 0;
+
+    /**
+     * The result of {@link #parseSourceRecovering()}: the statements which
+     * parsed successfully, and every error in the order found.
+     */
+    public record Result(Ast.Source source, List<ParseException> errors) {}
 
     public Parser(List<Token> tokens) {
-        this.tokens = new TokenStream(tokens);
+        this(TokenSource.of(tokens));
+    }
+
+    /**
+     * Creates a parser which pulls tokens lazily from the source, such as
+     * {@link plc.project.lexer.Lexer#tokens()}, so lexing and parsing happen
+     * in a single pass. Lexing errors are reported as a {@link ParseException}
+     * at the point the invalid token is reached.
+     */
+    public Parser(TokenSource source) {
+        this.tokens = new TokenStream(source);
+    }
+
+    /**
+     * Creates a parser over a {@link TokenBuffer}. Since the buffer tracks
+     * token offsets, parse errors include the line and column of the token.
+     */
+    public Parser(TokenBuffer tokens) {
+        this(tokens.source());
+    }
+
+    /**
+     * Enables sharing identical expressions, so repeated literals (such as
+     * {@code 0} or {@code NIL}) and subexpressions are a single node instead
+     * of a new node (and value) for every occurrence. This reduces the memory
+     * of programs with a lot of repetition, such as generated ones, at the
+     * cost of a table lookup for each expression. Since the AST is immutable,
+     * this only changes node identity.
+     */
+    public Parser shareNodes() {
+        nodes = new NodeTable();
+        return this;
     }
 
     public Ast.Source parseSource() throws ParseException {
@@ -41,46 +104,87 @@ public final class Parser {
         return new Ast.Source(statements);
     }
 
+    /**
+     * Parses the source like {@link #parseSource()}, but recovers from syntax
+     * errors instead of throwing at the first one, so all of them can be
+     * reported in one pass. Statements containing errors are left out of the
+     * returned source.
+     *
+     * <p>After an error, the parser synchronizes on the next {@code ;},
+     * {@code END}, or {@code DO} (see {@link #synchronize()}) and continues
+     * with the next statement of the enclosing block. Invalid tokens can't be
+     * recovered from, since the lexer can't continue past them, so an
+     * invalid token is the last error reported.
+     */
+    public Result parseSourceRecovering() {
+        errors = new ArrayList<>();
+        var statements = new ArrayList<Ast.Stmt>();
+
+        try {
+            while (tokens.has(0)) {
+                recover(() -> statements.add(parseStmt()));
+            }
+        } catch (ParseException e) {
+            errors.add(e);
+        }
+
+        return new Result(new Ast.Source(statements), errors);
+    }
+
+    /**
+     * Parses the next top-level statement, or returns null at the end of the
+     * source, so statements can be processed as soon as they're parsed (see
+     * {@link plc.project.evaluator.Evaluator#evaluate(Parser)}). With a lazy
+     * {@link TokenSource}, only the current statement and a few tokens of
+     * lookahead are held in memory.
+     */
+    public Ast.@Nullable Stmt parseNextStmt() throws ParseException {
+        return tokens.has(0) ? parseStmt() : null;
+    }
+
     public Ast.Stmt parseStmt() throws ParseException {
-        // new Token(Token.Type.IDENTIFIER, "literal")
-        if (tokens.peek("LET")) {
-            return parseLetStmt();
-        } else if (tokens.peek("DEF", Token.Type.IDENTIFIER)) {
-            return parseDefStmt();
-        } else if (tokens.peek("IF") && !tokens.peek("IF", ";")) {
-            return parseIfStmt();
-        } else if (tokens.peek("FOR", Token.Type.IDENTIFIER)) {
-            return parseForStmt();
-        } else if (tokens.peek("RETURN")) {
-            return parseReturnStmt();
-        } else {
+        if (!tokens.has(0)) {
             return parseExpressionOrAssignmentStmt();
         }
+        return switch (tokens.kind(0)) {
+            case LET -> parseLetStmt();
+            case DEF -> tokens.peek(TokenKind.DEF, Token.Type.IDENTIFIER)
+                ? parseDefStmt()
+                : parseExpressionOrAssignmentStmt();
+            case IF -> !tokens.peek(TokenKind.IF, TokenKind.SEMICOLON)
+                ? parseIfStmt()
+                : parseExpressionOrAssignmentStmt();
+            case FOR -> tokens.peek(TokenKind.FOR, Token.Type.IDENTIFIER)
+                ? parseForStmt()
+                : parseExpressionOrAssignmentStmt();
+            case RETURN -> parseReturnStmt();
+            default -> parseExpressionOrAssignmentStmt();
+        };
     }
 
     private Ast.Stmt.Let parseLetStmt() throws ParseException {
         // let_stmt ::= 'LET' identifier (':' identifier)? ('=' expr)? ';'
 
-        checkState(tokens.match("LET"));
+        checkState(tokens.match(TokenKind.LET));
 
         // Handle missing 'name' identifier
         if (!tokens.match(Token.Type.IDENTIFIER)) {
-            throw new ParseException("Expected IDENTIFIER after 'LET' but found " + tokens.get(0));
+            throw error("Expected IDENTIFIER after 'LET' but found " + tokens.get(0));
         }
 
         var name = tokens.get(-1).literal();
 
         // check for optional type
         Optional<String> type = Optional.empty();
-        if (tokens.match(":")) {
+        if (tokens.match(TokenKind.COLON)) {
             // handle missing type
             if (!tokens.has(0)) {
-                throw new ParseException("Expected type after ':' but found nothing");
+                throw error("Expected type after ':' but found nothing");
             }
 
             // handle missing 'type' identifier
             if (!tokens.match(Token.Type.IDENTIFIER)) {
-                throw new ParseException("Expected IDENTIFIER after ':' but found " + tokens.get(0));
+                throw error("Expected IDENTIFIER after ':' but found " + tokens.get(0));
             }
 
             type = Optional.of(tokens.get(-1).literal());
@@ -88,14 +192,14 @@ public final class Parser {
 
         // Check if Initialization O.W. Declaration
         Optional<Ast.Expr> value = Optional.empty();
-        if (tokens.match("=")) {
+        if (tokens.match(TokenKind.ASSIGN)) {
             if (!tokens.has(0)) {
-                throw new ParseException("Expected expression after '=' but found nothing");
+                throw error("Expected expression after '=' but found nothing");
             }
 
             // Handle missing value
-            if (tokens.peek(";")) {
-                throw new ParseException("Expected expression after '=' but found ';'");
+            if (tokens.peek(TokenKind.SEMICOLON)) {
+                throw error("Expected expression after '=' but found ';'");
             }
 
             value = Optional.of(parseExpr());
@@ -110,23 +214,23 @@ public final class Parser {
         //  def_stmt ::= 'DEF' identifier '('
         //              (identifier (':' identifier)? (',' identifier (':' identifier)?)*)?
         //              ')' (':' identifier)? 'DO' stmt* 'END'
-        checkState(tokens.match("DEF"));
+        checkState(tokens.match(TokenKind.DEF));
         checkState(tokens.match(Token.Type.IDENTIFIER));
 
         var name = tokens.get(-1).literal();
 
-        if (!tokens.match("(")) {
-            throw new ParseException("Expected '(' but found " + tokens.get(0));
+        if (!tokens.match(TokenKind.LEFT_PAREN)) {
+            throw error("Expected '(' but found " + tokens.get(0));
         }
 
         var parameters = new ArrayList<String>();
         var parameter_types = new ArrayList<Optional<String>>();
 
         // Check for parameters
-        if (!tokens.peek(")")) {
+        if (!tokens.peek(TokenKind.RIGHT_PAREN)) {
             do {
                 if (!tokens.match(Token.Type.IDENTIFIER)) {
-                    throw new ParseException("Expected identifier but found " + tokens.get(0));
+                    throw error("Expected identifier but found " + tokens.get(0));
                 }
 
                 var param = tokens.get(-1).literal();
@@ -134,15 +238,15 @@ public final class Parser {
 
                 // check for optional parameter type
                 Optional<String> type = Optional.empty();
-                if (tokens.match(":")) {
+                if (tokens.match(TokenKind.COLON)) {
                     // handle missing type
                     if (!tokens.has(0)) {
-                        throw new ParseException("Expected type after ':' but found nothing");
+                        throw error("Expected type after ':' but found nothing");
                     }
 
                     // handle missing 'type' identifier
                     if (!tokens.match(Token.Type.IDENTIFIER)) {
-                        throw new ParseException("Expected IDENTIFIER after ':' but found " + tokens.get(0));
+                        throw error("Expected IDENTIFIER after ':' but found " + tokens.get(0));
                     }
 
                     type = Optional.of(tokens.get(-1).literal());
@@ -150,45 +254,45 @@ public final class Parser {
 
                 parameter_types.add(type);
 
-            } while (tokens.match(","));
+            } while (tokens.match(TokenKind.COMMA));
         }
 
-        if (!tokens.match(")")) {
-            throw new ParseException("Expected ')' but found " + tokens.get(0));
+        if (!tokens.match(TokenKind.RIGHT_PAREN)) {
+            throw error("Expected ')' but found " + tokens.get(0));
         }
 
         // handle optional return type
         Optional<String> type = Optional.empty();
-        if (tokens.match(":")) {
+        if (tokens.match(TokenKind.COLON)) {
             // handle missing type
             if (!tokens.has(0)) {
-                throw new ParseException("Expected type after ':' but found nothing");
+                throw error("Expected type after ':' but found nothing");
             }
 
             // handle missing 'type' identifier
             if (!tokens.match(Token.Type.IDENTIFIER)) {
-                throw new ParseException("Expected IDENTIFIER after ':' but found " + tokens.get(0));
+                throw error("Expected IDENTIFIER after ':' but found " + tokens.get(0));
             }
 
             type = Optional.of(tokens.get(-1).literal());
         }
 
-        if (!tokens.match("DO")) {
-            throw new ParseException("Expected DO but found " + tokens.get(0));
+        if (!tokens.match(TokenKind.DO)) {
+            throw error("Expected DO but found " + tokens.get(0));
         }
 
         // Consume body if exists
         var body = new ArrayList<Ast.Stmt>();
-        while (!tokens.peek("END")) {
+        while (!tokens.peek(TokenKind.END)) {
             if (!tokens.has(0)) {
-                throw new ParseException("Expected statement or 'END' but found neither.");
+                throw error("Expected statement or 'END' but found neither.");
             }
 
-            body.add(parseStmt());
+            recover(() -> body.add(parseStmt()));
         }
 
-        if (!tokens.match("END")) {
-            throw new ParseException("Expected END but found " + tokens.get(0));
+        if (!tokens.match(TokenKind.END)) {
+            throw error("Expected END but found " + tokens.get(0));
         }
 
         return new Ast.Stmt.Def(name, parameters, parameter_types, type, body);
@@ -196,40 +300,40 @@ public final class Parser {
 
     private Ast.Stmt.If parseIfStmt() throws ParseException {
         // if_stmt ::= 'IF' expr 'DO' stmt* ('ELSE' stmt*)? 'END'
-        checkState(tokens.match("IF"));
+        checkState(tokens.match(TokenKind.IF));
 
         // Consume condition
         Ast.Expr condition = parseExpr();
-        if (!tokens.match("DO")) {
-            throw new ParseException("Expected DO but found " + tokens.get(0));
+        if (!tokens.match(TokenKind.DO)) {
+            throw error("Expected DO but found " + tokens.get(0));
         }
 
         // Initialize and consume then body
         var statements = new ArrayList<Ast.Stmt>();
-        while (!tokens.peek("ELSE") && !tokens.peek("END")) {
+        while (!tokens.peek(TokenKind.ELSE) && !tokens.peek(TokenKind.END)) {
             if (!tokens.has(0)) {
-                throw new ParseException("Expected statement, 'ELSE' or 'END' but found nothing.");
+                throw error("Expected statement, 'ELSE' or 'END' but found nothing.");
             }
 
-            statements.add(parseStmt());
+            recover(() -> statements.add(parseStmt()));
         }
 
         // Initialize o.w. body
         var statementsOtherwise = new ArrayList<Ast.Stmt>();
 
         // Check if ELSE clause exists
-        if (tokens.match("ELSE")) {
-            while (!tokens.peek("END")) {
+        if (tokens.match(TokenKind.ELSE)) {
+            while (!tokens.peek(TokenKind.END)) {
                 if (!tokens.has(0)) {
-                    throw new ParseException("Expected statement or 'END' but found neither.");
+                    throw error("Expected statement or 'END' but found neither.");
                 }
 
-                statementsOtherwise.add(parseStmt());
+                recover(() -> statementsOtherwise.add(parseStmt()));
             }
         }
 
-        if (!tokens.match("END")) {
-            throw new ParseException("Expected END but found " + tokens.get(0));
+        if (!tokens.match(TokenKind.END)) {
+            throw error("Expected END but found " + tokens.get(0));
         }
 
         return new Ast.Stmt.If(condition, statements, statementsOtherwise);
@@ -237,33 +341,33 @@ public final class Parser {
 
     private Ast.Stmt.For parseForStmt() throws ParseException {
         // for_stmt ::= 'FOR' identifier 'IN' expr 'DO' stmt* 'END'
-        checkState(tokens.match("FOR"));
+        checkState(tokens.match(TokenKind.FOR));
         checkState(tokens.match(Token.Type.IDENTIFIER));
 
         var name = tokens.get(-1).literal();
 
-        if (!tokens.match("IN")) {
-            throw new ParseException("Expected IN but found " + tokens.get(0));
+        if (!tokens.match(TokenKind.IN)) {
+            throw error("Expected IN but found " + tokens.get(0));
         }
 
         // Consume iterable
         Ast.Expr expr = parseExpr();
-        if (!tokens.match("DO")) {
-            throw new ParseException("Expected DO but found " + tokens.get(0));
+        if (!tokens.match(TokenKind.DO)) {
+            throw error("Expected DO but found " + tokens.get(0));
         }
 
         // Initialize and consume loop body
         var statements = new ArrayList<Ast.Stmt>();
-        while (!tokens.peek("END")) {
+        while (!tokens.peek(TokenKind.END)) {
             if (!tokens.has(0)) {
-                throw new ParseException("Expected statement or 'END' but found neither.");
+                throw error("Expected statement or 'END' but found neither.");
             }
 
-            statements.add(parseStmt());
+            recover(() -> statements.add(parseStmt()));
         }
 
-        if (!tokens.match("END")) {
-            throw new ParseException("Expected END but found " + tokens.get(0));
+        if (!tokens.match(TokenKind.END)) {
+            throw error("Expected END but found " + tokens.get(0));
         }
 
         return new Ast.Stmt.For(name, expr, statements);
@@ -271,11 +375,11 @@ public final class Parser {
 
     private Ast.Stmt.Return parseReturnStmt() throws ParseException {
         // return_stmt ::= 'RETURN' expr? ';'
-        checkState(tokens.match("RETURN"));     // checkState() needed?
+        checkState(tokens.match(TokenKind.RETURN));     // checkState() needed?
 
         // Check if return expression O.W. return empty
         Optional<Ast.Expr> expr = Optional.empty();
-        if (!tokens.peek(";") && tokens.has(0)) {
+        if (!tokens.peek(TokenKind.SEMICOLON) && tokens.has(0)) {
             expr = Optional.of(parseExpr());
         }
 
@@ -287,15 +391,15 @@ public final class Parser {
     private Ast.Stmt parseExpressionOrAssignmentStmt() throws ParseException {
         // expression_or_assignment_stmt ::= expr ('=' expr)? ';'
         // Handle missing expression
-        if (tokens.peek(";")) {
-            throw new ParseException("Expected expression but found nothing");
+        if (tokens.peek(TokenKind.SEMICOLON)) {
+            throw error("Expected expression but found nothing");
         }
 
 
         Ast.Expr expr = parseExpr();
 
         // Check if Assignment
-        if (tokens.match("=")) {
+        if (tokens.match(TokenKind.ASSIGN)) {
             Ast.Expr right = parseExpr();
 
             // Check statement terminator
@@ -313,70 +417,291 @@ public final class Parser {
     /** Helper function for parseStmt methods.
      * Checks if ends with semicolon, throwing an error if not. */
     private void requireStatementTerminator() throws ParseException {
-        if (!tokens.match(";")) {
+        if (!tokens.match(TokenKind.SEMICOLON)) {
             if (!tokens.has(0)) {
-                throw new ParseException("Expected ';' but found nothing");
+                throw error("Expected ';' but found nothing");
             }
 
-            throw new ParseException("Expected ';' but found " + tokens.get(0));
+            throw error("Expected ';' but found " + tokens.get(0));
         }
     }
 
-    public Ast.Expr parseExpr() throws ParseException {
-        return parseLogicalExpr();
+    /**
+     * Returns the number of tokens consumed so far, such as for recording
+     * the tokens covered by each statement (see {@link IncrementalParser}).
+     */
+    int position() {
+        return tokens.position();
     }
-    private Ast.Expr parseLogicalExpr() throws ParseException {
-        // logical_expr ::= comparison_expr (('AND' | 'OR') comparison_expr)*
-        Ast.Expr expr = parseComparisonExpr();
 
-        while (tokens.peek("AND") || tokens.peek("OR")) {
-            var operator = tokens.get(0).literal();
-            tokens.match(operator);
-            Ast.Expr right = parseComparisonExpr();
-            expr = new Ast.Expr.Binary(operator, expr, right);
+    /**
+     * Parses part of a block, such as a statement. When recovering, an error
+     * is recorded instead of thrown and the parser synchronizes, so the block
+     * continues with its next statement. Invalid tokens are still thrown.
+     */
+    private void recover(Rule rule) throws ParseException {
+        if (errors == null) {
+            rule.parse();
+            return;
         }
 
-        return expr;
+        var start = tokens.position();
+        try {
+            rule.parse();
+        } catch (ParseException e) {
+            if (e == tokens.failure) {
+                throw e;
+            }
+            errors.add(e);
+            synchronize();
+
+            // an END or ELSE which doesn't belong to a block is skipped, so
+            // the parser always makes progress
+            if (tokens.position() == start && tokens.has(0)) {
+                tokens.advance();
+            }
+        }
     }
 
-    private Ast.Expr parseComparisonExpr() throws ParseException {
-        // comparison_expr ::= additive_expr (('<' | '<=' | '>' | '>=' | '==' | '!=') additive_expr)*
-        Ast.Expr expr = parseAdditiveExpr();
+    /**
+     * Skips tokens up to a likely statement boundary after an error:
+     *
+     * <ul>
+     *     <li>{@code ;} ends the statement, and is skipped.</li>
+     *     <li>{@code END} or {@code ELSE} end the enclosing block, which is
+     *     left to match them.</li>
+     *     <li>{@code DO} means the error was in the header of a block (such
+     *     as an {@code IF} condition), so its body is parsed for errors but
+     *     discarded, keeping {@code DO} and {@code END} balanced.</li>
+     * </ul>
+     */
+    private void synchronize() throws ParseException {
+        while (tokens.has(0)) {
+            switch (tokens.kind(0)) {
+                case SEMICOLON -> {
+                    tokens.advance();
+                    return;
+                }
+                case END, ELSE -> {
+                    return;
+                }
+                case DO -> {
+                    tokens.advance();
+                    var body = new ArrayList<Ast.Stmt>();
+                    while (tokens.has(0) && !tokens.peek(TokenKind.END)) {
+                        if (!tokens.match(TokenKind.ELSE)) {
+                            recover(() -> body.add(parseStmt()));
+                        }
+                    }
+                    // includes the ';' ending an OBJECT expression statement
+                    if (tokens.match(TokenKind.END)) {
+                        tokens.match(TokenKind.SEMICOLON);
+                    }
+                    return;
+                }
+                default -> tokens.advance();
+            }
+        }
+    }
 
-        while (tokens.peek("<") || tokens.peek("<=") || tokens.peek(">") ||
-                tokens.peek(">=") || tokens.peek("==") || tokens.peek("!=")) {
-            var operator = tokens.get(0).literal();
-            tokens.match(operator);
-            Ast.Expr right = parseAdditiveExpr();
-            expr = new Ast.Expr.Binary(operator, expr, right);
+    @FunctionalInterface
+    private interface Rule {
+        void parse() throws ParseException;
+    }
+
+    /**
+     * Creates a {@link ParseException} at the current token, including its
+     * location in the input if the token source tracks positions.
+     */
+    private ParseException error(String message) {
+        return tokens.location()
+            .map(location -> new ParseException(message + " (" + location + ")"))
+            .orElseGet(() -> new ParseException(message));
+    }
+
+    public Ast.Expr parseExpr() throws ParseException {
+        if (depth == MAXIMUM_DEPTH) {
+            return parseNestedExpr();
         }
+        depth++;
+        try {
+            return parseBinaryExpr(1);
+        } finally {
+            depth--;
+        }
+    }
 
-        return expr;
+    /**
+     * Parses an expression like {@link #parseExpr()}, but using a work stack
+     * on the heap instead of recursion for nested expressions, so deeply
+     * nested groups and arguments (such as from code generators) don't
+     * overflow the thread stack.
+     *
+     * <p>Each {@link Frame} is an expression being parsed: the top level, or
+     * the contents of a group or argument list. A frame parses its binary
+     * expression with an operator stack, reducing operators of higher or
+     * equal precedence as each operator is reached, which gives the same tree
+     * as precedence climbing since all operators are left associative. An
+     * opening parenthesis pushes a new frame, and the closing one pops it to
+     * produce an operand for the enclosing frame.
+     */
+    private Ast.Expr parseNestedExpr() throws ParseException {
+        var stack = new ArrayDeque<Frame>();
+        var frame = new Frame(Frame.Context.EXPR, null, "");
+        Ast.Expr operand = null;
+
+        while (true) {
+            if (operand == null) {
+                // primary_expr, except groups and calls push a frame
+                if (tokens.match(TokenKind.LEFT_PAREN)) {
+                    stack.push(frame);
+                    frame = new Frame(Frame.Context.GROUP, null, "");
+                    continue;
+                } else if (tokens.peek(Token.Type.IDENTIFIER) && !KEYWORD_PRIMARIES.contains(tokens.kind(0))) {
+                    var name = tokens.get(0).literal();
+                    tokens.advance();
+                    if (!tokens.match(TokenKind.LEFT_PAREN)) {
+                        operand = share(new Ast.Expr.Variable(name));
+                    } else if (tokens.match(TokenKind.RIGHT_PAREN)) {
+                        operand = share(new Ast.Expr.Function(name, List.of()));
+                    } else {
+                        stack.push(frame);
+                        frame = new Frame(Frame.Context.FUNCTION, null, name);
+                        continue;
+                    }
+                } else {
+                    operand = parsePrimaryExpr();
+                }
+            }
+
+            // ('.' identifier ('(' (expr (',' expr)*)? ')')?)*, as in parseSecondaryExpr
+            while (operand != null && tokens.match(TokenKind.PERIOD)) {
+                if (!tokens.has(0)) {
+                    throw error("Expected identifier after '.' but found nothing");
+                }
+                var name = tokens.get(0).literal();
+                if (!tokens.match(Token.Type.IDENTIFIER)) {
+                    throw error("Expected identifier after '.' but found " + tokens.get(0));
+                }
+
+                if (!tokens.match(TokenKind.LEFT_PAREN)) {
+                    operand = share(new Ast.Expr.Property(operand, name));
+                } else if (tokens.match(TokenKind.RIGHT_PAREN)) {
+                    operand = share(new Ast.Expr.Method(operand, name, List.of()));
+                } else {
+                    stack.push(frame);
+                    frame = new Frame(Frame.Context.METHOD, operand, name);
+                    operand = null;
+                }
+            }
+            if (operand == null) {
+                continue;
+            }
+
+            frame.operands.add(operand);
+            operand = null;
+
+            var precedence = tokens.has(0) ? tokens.kind(0).precedence() : 0;
+            if (precedence > 0) {
+                frame.reduce(precedence, this);
+                frame.operators.add(tokens.get(0).literal());
+                frame.precedences.add(precedence);
+                tokens.advance();
+                continue;
+            }
+
+            // the end of this frame's expression
+            frame.reduce(1, this);
+            var expr = frame.operands.removeLast();
+            if (frame.context == Frame.Context.EXPR) {
+                return expr;
+            } else if (frame.context != Frame.Context.GROUP) {
+                frame.arguments.add(expr);
+                if (tokens.match(TokenKind.COMMA)) {
+                    continue;
+                }
+            }
+
+            if (!tokens.match(TokenKind.RIGHT_PAREN)) {
+                if (!tokens.has(0)) {
+                    throw error("Expected ')' but found nothing");
+                }
+                throw error("Expected ')' but found " + tokens.get(0));
+            }
+
+            operand = share(switch (frame.context) {
+                case GROUP -> new Ast.Expr.Group(expr);
+                case FUNCTION -> new Ast.Expr.Function(frame.name, frame.arguments);
+                case METHOD -> new Ast.Expr.Method(Objects.requireNonNull(frame.receiver), frame.name, frame.arguments);
+                case EXPR -> throw new AssertionError();
+            });
+            frame = stack.pop();
+        }
     }
 
-    private Ast.Expr parseAdditiveExpr() throws ParseException {
-        // additive_expr ::= multiplicative_expr (('+' | '-') multiplicative_expr)*
-        Ast.Expr expr = parseMultiplicativeExpr();
+    /**
+     * An expression being parsed by {@link #parseNestedExpr()}.
+     */
+    private static final class Frame {
+
+        private enum Context { EXPR, GROUP, FUNCTION, METHOD }
+
+        private final Context context;
+        private final Ast.@Nullable Expr receiver;
+        private final String name;
+        private final List<Ast.Expr> arguments = new ArrayList<>();
+        private final List<Ast.Expr> operands = new ArrayList<>();
+        private final List<String> operators = new ArrayList<>();
+        private final List<Integer> precedences = new ArrayList<>();
+
+        private Frame(Context context, Ast.@Nullable Expr receiver, String name) {
+            this.context = context;
+            this.receiver = receiver;
+            this.name = name;
+        }
 
-        while (tokens.peek("+") || tokens.peek("-")) {
-            var operator = tokens.get(0).literal();
-            tokens.match(operator);
-            Ast.Expr right = parseMultiplicativeExpr();
-            expr = new Ast.Expr.Binary(operator, expr, right);
+        /**
+         * Combines operands with the pending operators of at least the given
+         * precedence, from the most recent.
+         */
+        private void reduce(int minimum, Parser parser) {
+            while (!operators.isEmpty() && precedences.getLast() >= minimum) {
+                precedences.removeLast();
+                var right = operands.removeLast();
+                var left = operands.removeLast();
+                operands.add(parser.share(new Ast.Expr.Binary(operators.removeLast(), left, right)));
+            }
         }
 
-        return expr;
     }
 
-    private Ast.Expr parseMultiplicativeExpr() throws ParseException {
+    /**
+     * Parses binary expressions by precedence climbing: each operator's
+     * precedence comes from {@link TokenKind#precedence}, and a loop consumes operators
+     * at or above the minimum, recursing only for the right operand of a
+     * higher precedence operator. This replaces a chain of one method per
+     * precedence level, so the call depth depends on the expression rather
+     * than the number of levels, and new operators only need a table entry.
+     */
+    private Ast.Expr parseBinaryExpr(int minimum) throws ParseException {
+        // logical_expr ::= comparison_expr (('AND' | 'OR') comparison_expr)*
+        // comparison_expr ::= additive_expr (('<' | '<=' | '>' | '>=' | '==' | '!=') additive_expr)*
+        // additive_expr ::= multiplicative_expr (('+' | '-') multiplicative_expr)*
         // multiplicative_expr ::= secondary_expr (('*' | '/') secondary_expr)*
         Ast.Expr expr = parseSecondaryExpr();
 
-        while (tokens.peek("*") || tokens.peek("/")) {
+        while (tokens.has(0)) {
+            var precedence = tokens.kind(0).precedence();
+            if (precedence < minimum) {
+                break;
+            }
             var operator = tokens.get(0).literal();
-            tokens.match(operator);
-            Ast.Expr right = parseSecondaryExpr();
-            expr = new Ast.Expr.Binary(operator, expr, right);
+            tokens.advance();
+
+            // all operators are left associative, so the right operand only
+            // includes operators of strictly higher precedence
+            Ast.Expr right = parseBinaryExpr(precedence + 1);
+            expr = share(new Ast.Expr.Binary(operator, expr, right));
         }
 
         return expr;
@@ -387,41 +712,41 @@ public final class Parser {
         Ast.Expr expr = parsePrimaryExpr();
 
         // Check if Method or Property
-        while (tokens.match(".")) {
+        while (tokens.match(TokenKind.PERIOD)) {
             // Handle missing identifier
             if (!tokens.has(0)) {
-                throw new ParseException("Expected identifier after '.' but found nothing");
+                throw error("Expected identifier after '.' but found nothing");
             }
 
             var name = tokens.get(0).literal();
 
             // Handle invalid identifier
             if (!tokens.match(Token.Type.IDENTIFIER)) {
-                throw new ParseException("Expected identifier after '.' but found " + tokens.get(0));
+                throw error("Expected identifier after '.' but found " + tokens.get(0));
             }
 
             // Check if Method
-            if (tokens.match("(")) {
+            if (tokens.match(TokenKind.LEFT_PAREN)) {
                 var arguments = new ArrayList<Ast.Expr>();
-                if (!tokens.peek(")")) {
+                if (!tokens.peek(TokenKind.RIGHT_PAREN)) {
                     do {
                         arguments.add(parseExpr());
-                    } while (tokens.match(","));
+                    } while (tokens.match(TokenKind.COMMA));
                 }
                 // Trailing comma check needed?
 
                 // Check for closing parenthesis
-                if (!tokens.match(")")) {
+                if (!tokens.match(TokenKind.RIGHT_PAREN)) {
                     if (!tokens.has(0)) {
-                        throw new ParseException("Expected ')' but found nothing");
+                        throw error("Expected ')' but found nothing");
                     }
-                    throw new ParseException("Expected ')' but found " + tokens.get(0));
+                    throw error("Expected ')' but found " + tokens.get(0));
                 }
-                expr = new Ast.Expr.Method(expr, name, arguments);
+                expr = share(new Ast.Expr.Method(expr, name, arguments));
 
                 // O.W. Property
             } else {
-                expr = new Ast.Expr.Property(expr, name);
+                expr = share(new Ast.Expr.Property(expr, name));
             }
         }
 
@@ -430,32 +755,42 @@ public final class Parser {
 
     private Ast.Expr parsePrimaryExpr() throws ParseException {
         // primary_expr ::= literal_expr | group_expr | object_expr | variable_or_function_expr
-        if (tokens.peek("NIL") || tokens.peek("TRUE") || tokens.peek("FALSE") ||
-                tokens.peek(Token.Type.INTEGER) || tokens.peek(Token.Type.DECIMAL) ||
-                tokens.peek(Token.Type.CHARACTER) || tokens.peek(Token.Type.STRING)) {
-            return parseLiteralExpr();
-        } else if (tokens.peek("OBJECT")) {
-            return parseObjectExpr();
-        } else if (tokens.peek(Token.Type.IDENTIFIER)) {
-            return parseVariableOrFunctionExpr();
-        } else if (tokens.peek("(")) {
-            return parseGroupExpr();
-        } else {
-            if (!tokens.has(0)) {
-                throw new ParseException("Expected primary expression but found nothing");
-            }
-            throw new ParseException("Expected primary expression but found " + tokens.get(0));
+        if (!tokens.has(0)) {
+            throw error("Expected primary expression but found nothing");
         }
+        return switch (tokens.kind(0)) {
+            case NIL, TRUE, FALSE, INTEGER, DECIMAL, CHARACTER, STRING -> parseLiteralExpr();
+            case OBJECT -> parseObjectExpr();
+            case LEFT_PAREN -> parseGroupExpr();
+            default -> {
+                if (tokens.peek(Token.Type.IDENTIFIER)) {
+                    yield parseVariableOrFunctionExpr();
+                }
+                throw error("Expected primary expression but found " + tokens.get(0));
+            }
+        };
+    }
+
+    /**
+     * Returns the shared expression equal to expr if enabled by
+     * {@link #shareNodes()}, or otherwise expr itself.
+     */
+    private <T extends Ast.Expr> T share(T expr) {
+        return nodes != null ? nodes.intern(expr) : expr;
+    }
+
+    private Ast.Expr.Literal literal(@Nullable Object value) {
+        return nodes != null ? nodes.literal(value) : new Ast.Expr.Literal(value);
     }
 
     private Ast.Expr.Literal parseLiteralExpr() throws ParseException {
         // literal_expr ::= 'NIL' | 'TRUE' | 'FALSE' | integer | decimal | character | string
-        if (tokens.match("NIL")) {
-            return new Ast.Expr.Literal(null);
-        } else if (tokens.match( "TRUE")) {
-            return new Ast.Expr.Literal(true);
-        } else if (tokens.match( "FALSE")) {
-            return new Ast.Expr.Literal(false);
+        if (tokens.match(TokenKind.NIL)) {
+            return literal(null);
+        } else if (tokens.match(TokenKind.TRUE)) {
+            return literal(true);
+        } else if (tokens.match(TokenKind.FALSE)) {
+            return literal(false);
         } else if (tokens.peek( Token.Type.INTEGER) || tokens.peek(Token.Type.DECIMAL)) {
             boolean isInt = tokens.peek(Token.Type.INTEGER);
             tokens.match(isInt ? Token.Type.INTEGER : Token.Type.DECIMAL);
@@ -473,19 +808,27 @@ public final class Parser {
                     // assume decimal
                     try {
                         BigDecimal decimal = new BigDecimal(literal);
-                        return new Ast.Expr.Literal(decimal);
+                        return literal(decimal);
                     } catch (NumberFormatException e) {
-                        throw new ParseException("Invalid number format: " + literal);
+                        throw error("Invalid number format: " + literal);
                     }
                 }
             }
 
             // O.W. non-negative exponent integer or decimal
+            if (nodes != null && tokens.isLong(-1)) {
+                return nodes.literal(tokens.longValue(-1));
+            }
+            var value = tokens.value(-1);
+            if (value != null) {
+                return literal(value);
+            }
+
             try {
                 if (isInt) {
                     // assume integer
                     try {
-                        return new Ast.Expr.Literal(new BigInteger(literal));
+                        return literal(new BigInteger(literal));
                     } catch (NumberFormatException e) {
                         // check for exponent
                         if (literal.toLowerCase().contains("e")) {
@@ -493,47 +836,56 @@ public final class Parser {
 
                             // check if exponent integer
                             try {
-                                return new Ast.Expr.Literal(decimal.toBigIntegerExact());
+                                return literal(decimal.toBigIntegerExact());
                             } catch (ArithmeticException e1) {
 
                                 // O.W. exponent decimal
-                                return new Ast.Expr.Literal(decimal);
+                                return literal(decimal);
                             }
                         } else {
-                            throw new ParseException("Unable to parse " + literal + " as a number");        // Reachable?
+                            throw error("Unable to parse " + literal + " as a number");        // Reachable?
                         }
                     }
                 } else {
                     // O.W. decimal
-                    return new Ast.Expr.Literal(new BigDecimal(literal));
+                    return literal(new BigDecimal(literal));
                 }
             } catch (NumberFormatException e) {
-                throw new ParseException("Invalid number format: " + literal);
+                throw error("Invalid number format: " + literal);
             }
 
 
         } else if (tokens.match( Token.Type.CHARACTER)) {
+            var decoded = tokens.value(-1);
+            if (decoded != null) {
+                return literal(decoded);
+            }
+
             String literal = tokens.get(-1).literal();
             char value = literal.charAt(1);
             if (value == '\\') {
                 value = parseEscapeCharacter(literal.charAt(2));
             }
 
-            return new Ast.Expr.Literal(value);
+            return literal(value);
         } else if (tokens.match( Token.Type.STRING)) {
+            var decoded = tokens.value(-1);
+            if (decoded != null) {
+                return literal(decoded);
+            }
+
+            // unescape in a single pass, so an escaped backslash can't be
+            // mistaken for the start of another escape (such as "\\n")
             String literal = tokens.get(-1).literal();
-            String value = literal.substring(1, literal.length() - 1);
-            value = value.replace("\\b", "\b")
-                        .replace("\\n", "\n")
-                        .replace("\\r", "\r")
-                        .replace("\\t", "\t")
-                        .replace("\\'", "'")
-                        .replace("\\\"", "\"")
-                        .replace("\\\\", "\\");
-
-            return new Ast.Expr.Literal(value);
+            var value = new StringBuilder(literal.length());
+            for (int i = 1; i < literal.length() - 1; i++) {
+                var c = literal.charAt(i);
+                value.append(c == '\\' ? parseEscapeCharacter(literal.charAt(++i)) : c);
+            }
+
+            return literal(value.toString());
         } else {
-            throw new ParseException("Expected a valid token, but found " + tokens.get(0));     // Reachable?
+            throw error("Expected a valid token, but found " + tokens.get(0));     // Reachable?
         }
     }
 
@@ -547,40 +899,40 @@ public final class Parser {
             case '\'' -> '\'';
             case '"' -> '"';
             case '\\' -> '\\';
-            default -> throw new ParseException("Invalid escape character: \\" + c);
+            default -> throw error("Invalid escape character: \\" + c);
         };
     }
 
     private Ast.Expr.Group parseGroupExpr() throws ParseException {
         // group_expr ::= '(' expr')'
-        checkState(tokens.match("("));
+        checkState(tokens.match(TokenKind.LEFT_PAREN));
 
         Ast.Expr expr = parseExpr();
 
         if (!tokens.has(0)) {
-            throw new ParseException("Expected ')' but found nothing");
+            throw error("Expected ')' but found nothing");
         }
 
-        if (!tokens.match(")")) {
-            throw new ParseException("Expected ')' but found " + tokens.get(0));
+        if (!tokens.match(TokenKind.RIGHT_PAREN)) {
+            throw error("Expected ')' but found " + tokens.get(0));
         }
 
-        return new Ast.Expr.Group(expr);
+        return share(new Ast.Expr.Group(expr));
     }
 
     private Ast.Expr.ObjectExpr parseObjectExpr() throws ParseException {
         // object_expr ::= 'OBJECT' identifier? 'DO' let_stmt* def_stmt* 'END'
-        checkState(tokens.match("OBJECT"));
+        checkState(tokens.match(TokenKind.OBJECT));
 
         Optional<String> name = Optional.empty();
-        if (!tokens.peek("DO")) {
+        if (!tokens.peek(TokenKind.DO)) {
             if (tokens.match(Token.Type.IDENTIFIER)) {
                 name = Optional.of(tokens.get(-1).literal());
             }
         }
 
-        if (!tokens.match("DO")) {
-            throw new ParseException("Expected DO but found " + tokens.get(0));
+        if (!tokens.match(TokenKind.DO)) {
+            throw error("Expected DO but found " + tokens.get(0));
         }
 
         var fields = new ArrayList<Ast.Stmt.Let>();
@@ -588,26 +940,33 @@ public final class Parser {
 
         boolean def_stmt_reached = false;
 
-        while (!tokens.peek("END")) {
-            if (tokens.peek("LET")) {
-                // Handle field declaration after method declaration
-                if (def_stmt_reached) {
-                    throw new ParseException("Fields must be declared before method declarations");
-                }
-                fields.add(parseLetStmt());
-            } else if (tokens.peek("DEF")) {
+        while (!tokens.peek(TokenKind.END)) {
+            if (!tokens.has(0)) {
+                throw error("Expected 'LET', 'DEF', 'END' but found nothing");
+            }
+
+            // set before parsing, so a DEF with an error still counts when recovering
+            if (tokens.peek(TokenKind.DEF)) {
                 def_stmt_reached = true;
-                methods.add(parseDefStmt());
-            } else {
-                if (tokens.has(0)) {
-                    throw new ParseException("Expected 'LET', 'DEF' or 'END' but found " + tokens.get(0));
-                }
-                throw new ParseException("Expected 'LET', 'DEF', 'END' but found nothing");
             }
+            var after_def_stmt = def_stmt_reached;
+            recover(() -> {
+                if (tokens.peek(TokenKind.LET)) {
+                    // Handle field declaration after method declaration
+                    if (after_def_stmt) {
+                        throw error("Fields must be declared before method declarations");
+                    }
+                    fields.add(parseLetStmt());
+                } else if (tokens.peek(TokenKind.DEF)) {
+                    methods.add(parseDefStmt());
+                } else {
+                    throw error("Expected 'LET', 'DEF' or 'END' but found " + tokens.get(0));
+                }
+            });
         }
 
-        if (!tokens.match("END")) {
-            throw new ParseException("Expected END but found " + tokens.get(0));
+        if (!tokens.match(TokenKind.END)) {
+            throw error("Expected END but found " + tokens.get(0));
         }
 
         return new Ast.Expr.ObjectExpr(name, fields, methods);
@@ -619,84 +978,216 @@ public final class Parser {
         var name = tokens.get(-1).literal();
 
         // Check if function
-        if (tokens.match("(")) {
+        if (tokens.match(TokenKind.LEFT_PAREN)) {
             var arguments = new ArrayList<Ast.Expr>();
 
-            if (!tokens.peek(")")) {
+            if (!tokens.peek(TokenKind.RIGHT_PAREN)) {
                 do {
                     arguments.add(parseExpr());
-                } while (tokens.match(","));
+                } while (tokens.match(TokenKind.COMMA));
             }
 
             // Check for closing parenthesis
-            if (!tokens.match(")")) {
+            if (!tokens.match(TokenKind.RIGHT_PAREN)) {
                 if (!tokens.has(0)) {
-                    throw new ParseException("Expected ')' but found nothing");
+                    throw error("Expected ')' but found nothing");
                 }
-                throw new ParseException("Expected ')' but found " + tokens.get(0));
+                throw error("Expected ')' but found " + tokens.get(0));
             }
 
-            return new Ast.Expr.Function(name, arguments);
+            return share(new Ast.Expr.Function(name, arguments));
         }
 
         // O.W. variable
-        return new Ast.Expr.Variable(name);
+        return share(new Ast.Expr.Variable(name));
     }
 
+    /**
+     * The token stream only keeps a small window of tokens around the current
+     * index, pulling more from the {@link TokenSource} as needed. This allows
+     * the parser to consume the lexer lazily, with memory bounded by the
+     * window size rather than the size of the input.
+     */
     private static final class TokenStream {
 
-        private final List<Token> tokens;
+        /**
+         * Number of buffered tokens, which must be a power of two. This covers
+         * the previous token for {@link #get}(-1) through two tokens of
+         * lookahead, the most any {@link #peek} in the parser uses.
+         */
+        private static final int WINDOW = 4;
+
+        private final TokenSource source;
+        private final Token[] window = new Token[WINDOW];
+        private final TokenKind[] kinds = new TokenKind[WINDOW];
+        private final @Nullable Object[] values = new Object[WINDOW];
+        private final long[] longs = new long[WINDOW];
         private int index = 0;
+        private int size = 0;
+        private boolean exhausted = false;
 
-        private TokenStream(List<Token> tokens) {
-            this.tokens = tokens;
+        /**
+         * The exception for an invalid token, which is thrown again by every
+         * later read since the source can't continue past it.
+         */
+        private @Nullable ParseException failure = null;
+
+        private TokenStream(TokenSource source) {
+            this.source = source;
         }
 
         /**
          * Returns true if there is a token at (index + offset).
          */
-        public boolean has(int offset) {
-            return index + offset < tokens.size();
+        public boolean has(int offset) throws ParseException {
+            checkState(offset <= WINDOW - 2, offset);
+            while (size <= index + offset && !exhausted) {
+                if (failure != null) {
+                    throw failure;
+                }
+                Token token;
+                try {
+                    token = source.next();
+                } catch (LexException e) {
+                    var location = source.location(size).map(l -> " (" + l + ")").orElse("");
+                    failure = new ParseException("Invalid token: " + e.getMessage() + location);
+                    failure.initCause(e);
+                    throw failure;
+                }
+
+                if (token == null) {
+                    exhausted = true;
+                } else {
+                    var slot = size++ & (WINDOW - 1);
+                    window[slot] = token;
+                    kinds[slot] = TokenKind.of(token);
+                    values[slot] = source.value();
+                    if (values[slot] == TokenSource.LONG) {
+                        longs[slot] = source.longValue();
+                    }
+                }
+            }
+            return index + offset < size;
         }
 
         /**
          * Returns the token at (index + offset).
          */
-        public Token get(int offset) {
+        public Token get(int offset) throws ParseException {
             checkState(has(offset));
-            return tokens.get(index + offset);
+            checkState(index + offset >= Math.max(0, size - WINDOW), offset);
+            return window[(index + offset) & (WINDOW - 1)];
         }
 
         /**
-         * Returns true if the next characters match their corresponding
-         * pattern. Each pattern is either a {@link Token.Type}, matching tokens
-         * of that type, or a {@link String}, matching tokens with that literal.
-         * In effect, {@code new Token(Token.Type.IDENTIFIER, "literal")} is
-         * matched by both {@code peek(Token.Type.IDENTIFIER)} and
-         * {@code peek("literal")}.
+         * Returns the value of the literal token at (index + offset) if it was
+         * decoded by the source (see {@link TokenSource#value()}), so the
+         * literal doesn't need to be parsed again, or null otherwise.
          */
-        public boolean peek(Object... patterns) {
-            if (!has(patterns.length - 1)) {
-                return false;
-            }
-            for (int offset = 0; offset < patterns.length; offset++) {
-                var token = tokens.get(index + offset);
-                var pattern = patterns[offset];
-                checkState(pattern instanceof Token.Type || pattern instanceof String, pattern);
-                if (!token.type().equals(pattern) && !token.literal().equals(pattern)) {
-                    return false;
-                }
+        public @Nullable Object value(int offset) throws ParseException {
+            get(offset);
+            var slot = (index + offset) & (WINDOW - 1);
+            return values[slot] == TokenSource.LONG ? BigInteger.valueOf(longs[slot]) : values[slot];
+        }
+
+        /**
+         * Returns true if the value of the token at (index + offset) is a long,
+         * available without allocating from {@link #longValue(int)}.
+         */
+        public boolean isLong(int offset) throws ParseException {
+            get(offset);
+            return values[(index + offset) & (WINDOW - 1)] == TokenSource.LONG;
+        }
+
+        public long longValue(int offset) throws ParseException {
+            get(offset);
+            return longs[(index + offset) & (WINDOW - 1)];
+        }
+
+        /**
+         * Returns the index of the current token in the source.
+         */
+        public int position() {
+            return index;
+        }
+
+        /**
+         * Returns the location of the current token, if tracked by the source.
+         */
+        public Optional<String> location() {
+            return source.location(index);
+        }
+
+        /**
+         * Returns the kind of the token at (index + offset), which is
+         * classified once when the token is read.
+         */
+        public TokenKind kind(int offset) throws ParseException {
+            get(offset);
+            return kinds[(index + offset) & (WINDOW - 1)];
+        }
+
+        /**
+         * Returns true if the next token is of the given kind. Keywords and
+         * operators are matched this way, so {@code peek(TokenKind.LET)}
+         * matches {@code new Token(Token.Type.IDENTIFIER, "LET")}.
+         */
+        public boolean peek(TokenKind kind) throws ParseException {
+            return has(0) && kinds[index & (WINDOW - 1)] == kind;
+        }
+
+        /**
+         * Returns true if the next token is of the given type. This includes
+         * keywords, so {@code peek(Token.Type.IDENTIFIER)} also matches
+         * {@code new Token(Token.Type.IDENTIFIER, "LET")}.
+         */
+        public boolean peek(Token.Type type) throws ParseException {
+            return has(0) && window[index & (WINDOW - 1)].type() == type;
+        }
+
+        /**
+         * Returns true if the next two tokens are of the given kinds.
+         */
+        public boolean peek(TokenKind first, TokenKind second) throws ParseException {
+            return has(1) && kinds[index & (WINDOW - 1)] == first
+                && kinds[(index + 1) & (WINDOW - 1)] == second;
+        }
+
+        /**
+         * Returns true if the next token is of the given kind and the one
+         * after it of the given type.
+         */
+        public boolean peek(TokenKind first, Token.Type second) throws ParseException {
+            return has(1) && kinds[index & (WINDOW - 1)] == first
+                && window[(index + 1) & (WINDOW - 1)].type() == second;
+        }
+
+        /**
+         * Advances past the current token, which must exist.
+         */
+        public void advance() throws ParseException {
+            checkState(has(0));
+            index++;
+        }
+
+        /**
+         * Equivalent to peek, but also advances past the matched token.
+         */
+        public boolean match(TokenKind kind) throws ParseException {
+            var peek = peek(kind);
+            if (peek) {
+                index++;
             }
-            return true;
+            return peek;
         }
 
         /**
-         * Equivalent to peek, but also advances the token stream.
+         * Equivalent to peek, but also advances past the matched token.
          */
-        public boolean match(Object... patterns) {
-            var peek = peek(patterns);
+        public boolean match(Token.Type type) throws ParseException {
+            var peek = peek(type);
             if (peek) {
-                index += patterns.length;
+                index++;
             }
             return peek;
         }
@@ -0,0 +1,109 @@
+package plc.project.parser;
+
+import org.checkerframework.checker.nullness.qual.Nullable;
+import plc.project.lexer.Token;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * The kind of a token as used by the parser, which splits keywords and
+ * operators out of their {@link Token.Type} so each has its own constant.
+ * Tokens are classified once as they enter the {@link Parser}'s token stream,
+ * so the parser dispatches with switches on kinds instead of comparing the
+ * literal of each token against every keyword it might be.
+ *
+ * <p>Keywords are still {@link Token.Type#IDENTIFIER} tokens, so matching
+ * by type continues to accept keywords as names (such as {@code DO} as a
+ * variable). Identifiers and operators which aren't keywords or known
+ * operators have the general {@link #IDENTIFIER} or {@link #OPERATOR} kind.
+ */
+enum TokenKind {
+
+    IDENTIFIER,
+    INTEGER,
+    DECIMAL,
+    CHARACTER,
+    STRING,
+    OPERATOR,
+
+    LET("LET"),
+    DEF("DEF"),
+    IF("IF"),
+    DO("DO"),
+    ELSE("ELSE"),
+    END("END"),
+    FOR("FOR"),
+    IN("IN"),
+    RETURN("RETURN"),
+    NIL("NIL"),
+    TRUE("TRUE"),
+    FALSE("FALSE"),
+    AND("AND", 1),
+    OR("OR", 1),
+    OBJECT("OBJECT"),
+
+    ASSIGN("="),
+    SEMICOLON(";"),
+    COLON(":"),
+    LEFT_PAREN("("),
+    RIGHT_PAREN(")"),
+    COMMA(","),
+    PERIOD("."),
+    LESS("<", 2),
+    LESS_EQUAL("<=", 2),
+    GREATER(">", 2),
+    GREATER_EQUAL(">=", 2),
+    EQUAL("==", 2),
+    NOT_EQUAL("!=", 2),
+    PLUS("+", 3),
+    MINUS("-", 3),
+    ASTERISK("*", 4),
+    SLASH("/", 4);
+
+    private static final Map<String, TokenKind> SPELLINGS = new HashMap<>();
+
+    static {
+        for (var kind : values()) {
+            if (kind.spelling != null) {
+                SPELLINGS.put(kind.spelling, kind);
+            }
+        }
+    }
+
+    private final @Nullable String spelling;
+    private final int precedence;
+
+    TokenKind() {
+        this(null, 0);
+    }
+
+    TokenKind(String spelling) {
+        this(spelling, 0);
+    }
+
+    TokenKind(@Nullable String spelling, int precedence) {
+        this.spelling = spelling;
+        this.precedence = precedence;
+    }
+
+    /**
+     * Returns the precedence of binary operators, with higher values binding
+     * tighter, or 0 for every other kind (ending a binary expression).
+     */
+    int precedence() {
+        return precedence;
+    }
+
+    static TokenKind of(Token token) {
+        return switch (token.type()) {
+            case IDENTIFIER -> SPELLINGS.getOrDefault(token.literal(), IDENTIFIER);
+            case OPERATOR -> SPELLINGS.getOrDefault(token.literal(), OPERATOR);
+            case INTEGER -> INTEGER;
+            case DECIMAL -> DECIMAL;
+            case CHARACTER -> CHARACTER;
+            case STRING -> STRING;
+        };
+    }
+
+}
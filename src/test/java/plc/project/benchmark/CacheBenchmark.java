@@ -0,0 +1,50 @@
+package plc.project.benchmark;
+
+import plc.project.cache.AstCodec;
+import plc.project.cache.TreeCache;
+import plc.project.lexer.Lexer;
+import plc.project.parser.Parser;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.nio.file.Files;
+
+/**
+ * Compares lexing and parsing a source against loading its AST with
+ * {@link AstCodec}, both from memory and through a {@link TreeCache} (which
+ * also hashes the source and reads the file). Run directly, passing the
+ * largest corpus to include (defaults to {@code MB_10}).
+ */
+public final class CacheBenchmark {
+
+    public static void main(String[] args) throws Exception {
+        var largest = Corpus.valueOf(args.length > 0 ? args[0] : "MB_10");
+        var directory = Files.createTempDirectory("cache");
+        var cache = new TreeCache(directory);
+        for (var corpus : Corpus.values()) {
+            if (corpus.compareTo(Corpus.MB_1) < 0 || corpus.compareTo(largest) > 0) {
+                continue;
+            }
+            var input = corpus.load();
+            var tokens = new Lexer(input).lex().size();
+            var ast = cache.parse(input);
+            var output = new ByteArrayOutputStream();
+            AstCodec.write(ast, output);
+            var bytes = output.toByteArray();
+            System.out.println(corpus.name() + " (" + bytes.length + " bytes encoded):");
+            LexerBenchmark.measure("  lex and parse", input, () -> {
+                new Parser(new Lexer(input).decodeLiterals().tokens()).parseSource();
+                return tokens;
+            });
+            LexerBenchmark.measure("  decode", input, () -> {
+                AstCodec.read(new ByteArrayInputStream(bytes));
+                return tokens;
+            });
+            LexerBenchmark.measure("  cache", input, () -> {
+                cache.parse(input);
+                return tokens;
+            });
+        }
+    }
+
+}
@@ -0,0 +1,89 @@
+package plc.project.benchmark;
+
+import org.checkerframework.checker.nullness.qual.Nullable;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+
+/**
+ * The standard benchmark inputs, generated by {@link ProgramGenerator} with
+ * seed 0. The smaller sizes are checked in as resources (so they can be read
+ * and diffed directly), while the larger ones are generated on demand since
+ * they're too large to commit. Every input is checked against a recorded
+ * SHA-256 hash, so results are always measured on identical programs.
+ *
+ * <p>Run directly after changing {@link ProgramGenerator} to rewrite the
+ * checked-in files (passing the resources directory) and print the new hashes.
+ */
+public enum Corpus {
+
+    KB_10(10_000, "corpus-10k.plc", "7d71f49fac5670260ae689d09a2f5e4b6d09ba0d96e5a089458de75b15ebdb41"),
+    KB_100(100_000, "corpus-100k.plc", "eca29dd8fb0ba2d848f7c28d1286804b77adf34ac68884037c54b65724ab8230"),
+    MB_1(1_000_000, "corpus-1m.plc", "a63dd8e2d3d1c110ad68366ae8f3cf646893959fcc85e9c092a6f2a59f607da6"),
+    MB_10(10_000_000, null, "5e084a897d5e4028338a0d5f65cf5dd75649a1fc97878eafa90d06a4dbe2b3fe"),
+    MB_100(100_000_000, null, "2ecd8398a63a2cef9f91b6794d868b0ebcf93535aeecf9d9a59a28a7dc1d0e76");
+
+    private final int size;
+    private final @Nullable String resource;
+    private final String hash;
+
+    Corpus(int size, @Nullable String resource, String hash) {
+        this.size = size;
+        this.resource = resource;
+        this.hash = hash;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Returns the program, reading it from resources if checked in and
+     * otherwise generating it.
+     */
+    public String load() {
+        String program;
+        if (resource != null) {
+            try (var stream = Corpus.class.getResourceAsStream(resource)) {
+                if (stream == null) {
+                    throw new IllegalStateException("Missing corpus resource " + resource + ".");
+                }
+                program = new String(stream.readAllBytes(), StandardCharsets.UTF_8);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        } else {
+            program = ProgramGenerator.generate(0, size);
+        }
+        if (!hash(program).equals(hash)) {
+            throw new IllegalStateException("Corpus " + name() + " doesn't match its recorded hash.");
+        }
+        return program;
+    }
+
+    public static void main(String[] args) throws IOException {
+        for (var corpus : values()) {
+            var program = ProgramGenerator.generate(0, corpus.size);
+            if (corpus.resource != null) {
+                Files.writeString(Path.of(args[0], corpus.resource), program);
+            }
+            System.out.println(corpus.name() + ": " + hash(program));
+        }
+    }
+
+    private static String hash(String program) {
+        try {
+            var digest = MessageDigest.getInstance("SHA-256").digest(program.getBytes(StandardCharsets.UTF_8));
+            return HexFormat.of().formatHex(digest);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+}
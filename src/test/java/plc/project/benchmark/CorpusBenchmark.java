@@ -0,0 +1,31 @@
+package plc.project.benchmark;
+
+import plc.project.lexer.Lexer;
+import plc.project.parser.Parser;
+
+/**
+ * Measures lexing and parsing throughput on the standard {@link Corpus}
+ * inputs, so results are comparable between changes. Run directly, passing
+ * the largest corpus to include (such as {@code MB_10}; defaults to
+ * {@code MB_1}, since larger inputs take a while to generate).
+ */
+public final class CorpusBenchmark {
+
+    public static void main(String[] args) throws Exception {
+        var largest = Corpus.valueOf(args.length > 0 ? args[0] : "MB_1");
+        for (var corpus : Corpus.values()) {
+            if (corpus.compareTo(largest) > 0) {
+                break;
+            }
+            var input = corpus.load();
+            System.out.println(corpus.name() + ":");
+            LexerBenchmark.measure("  lex", input, () -> new Lexer(input).lex().size());
+            LexerBenchmark.measure("  lexBuffer", input, () -> new Lexer(input).lexBuffer().size());
+            LexerBenchmark.measure("  parse", input, () -> {
+                var parser = new Parser(new Lexer(input).decodeLiterals().tokens());
+                return parser.parseSource().statements().size();
+            });
+        }
+    }
+
+}
@@ -0,0 +1,127 @@
+package plc.project.benchmark;
+
+import plc.project.evaluator.Bytecode;
+import plc.project.evaluator.Compiler;
+import plc.project.evaluator.Environment;
+import plc.project.evaluator.Evaluator;
+import plc.project.evaluator.Machine;
+import plc.project.evaluator.Scope;
+import plc.project.lexer.Lexer;
+import plc.project.parser.Parser;
+
+import java.util.Map;
+
+/**
+ * Times the {@link Evaluator} (with and without compiling hot functions),
+ * {@link Compiler}, and {@link Machine} on variable-heavy loops and recursion,
+ * given the number of iterations (defaults to 1,000,000).
+ * Loops inside functions use frames addressed by the resolver, while the
+ * top-level loop uses variables in the scope, so comparing them shows the
+ * cost of searching scopes by name. The closure program reads variables
+ * several frames up, and the recursion program makes a call every ten
+ * iterations. Loops are nested so the lists from {@code range} stay small,
+ * since otherwise collecting them dominates.
+ */
+public final class EvaluatorBenchmark {
+
+    private static final Map<String, String> PROGRAMS = Map.of(
+        "locals", """
+            DEF run(n) DO
+                LET a = 0;
+                LET b = 1;
+                LET c = 0;
+                FOR j IN range(0, n / 1000) DO
+                    FOR i IN range(0, 1000) DO
+                        a = a + 1;
+                        b = a + b - i;
+                        c = b - a + c;
+                    END
+                END
+                RETURN c;
+            END
+            run(%s);
+            """,
+        "closure", """
+            DEF outer(n) DO
+                LET total = 0;
+                DEF middle() DO
+                    LET step = 1;
+                    DEF inner() DO
+                        FOR j IN range(0, n / 1000) DO
+                            FOR i IN range(0, 1000) DO
+                                IF i > 0 DO
+                                    total = total + step;
+                                END
+                            END
+                        END
+                    END
+                    inner();
+                END
+                middle();
+                RETURN total;
+            END
+            outer(%s);
+            """,
+        "recursion", """
+            DEF count(n) DO
+                IF n == 0 DO
+                    RETURN 0;
+                END
+                RETURN 1 + count(n - 1);
+            END
+            DEF run(n) DO
+                LET total = 0;
+                FOR i IN range(0, n / 1000) DO
+                    total = total + count(100);
+                END
+                RETURN total;
+            END
+            run(%s);
+            """,
+        "globals", """
+            LET a = 0;
+            LET b = 1;
+            LET c = 0;
+            FOR j IN range(0, %s / 1000) DO
+                FOR i IN range(0, 1000) DO
+                    a = a + 1;
+                    b = a + b - i;
+                    c = b - a + c;
+                END
+            END
+            c;
+            """
+    );
+
+    public static void main(String[] args) throws Exception {
+        var iterations = args.length > 0 ? args[0] : "1000000";
+        for (var name : new String[] {"locals", "closure", "recursion", "globals"}) {
+            var input = PROGRAMS.get(name).formatted(iterations);
+            var ast = new Parser(new Lexer(input).decodeLiterals().tokens()).parseSource();
+            measure(name + " (evaluator)", iterations, () -> new Evaluator(new Scope(Environment.scope())).tierUp(Integer.MAX_VALUE).visit(ast));
+            measure(name + " (tiered)", iterations, () -> new Evaluator(new Scope(Environment.scope())).visit(ast));
+            var program = Compiler.compile(ast);
+            measure(name + " (compiler)", iterations, () -> program.run(new Scope(Environment.scope())));
+            var bytecode = Bytecode.compile(ast);
+            measure(name + " (machine)", iterations, () -> new Machine(new Scope(Environment.scope())).execute(bytecode));
+        }
+    }
+
+    private static void measure(String name, String iterations, Run run) throws Exception {
+        for (int i = 0; i < 3; i++) {
+            run.run();
+        }
+        var best = Long.MAX_VALUE;
+        for (int i = 0; i < 5; i++) {
+            var start = System.nanoTime();
+            run.run();
+            best = Math.min(best, System.nanoTime() - start);
+        }
+        System.out.printf("%s: %s iterations, best %.1f ms%n", name, iterations, best / 1e6);
+    }
+
+    private interface Run {
+        void run() throws Exception;
+    }
+
+}
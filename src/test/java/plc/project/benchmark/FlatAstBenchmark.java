@@ -0,0 +1,228 @@
+package plc.project.benchmark;
+
+import plc.project.lexer.Lexer;
+import plc.project.parser.Ast;
+import plc.project.parser.FlatAst;
+import plc.project.parser.Parser;
+
+import java.math.BigInteger;
+import java.util.List;
+
+/**
+ * Compares {@link Ast} and {@link FlatAst}: the heap retained by each (after a
+ * full GC), and the time to traverse each, counting nodes and summing integer
+ * literals. The flat form is traversed both recursively with a
+ * {@link FlatAst.Visitor} and with a linear scan of the nodes, which is only
+ * possible since nodes are stored in an array. Run directly, passing the
+ * largest corpus to include (defaults to {@code MB_10}).
+ */
+public final class FlatAstBenchmark {
+
+    public static void main(String[] args) throws Exception {
+        var largest = Corpus.valueOf(args.length > 0 ? args[0] : "MB_10");
+        for (var corpus : Corpus.values()) {
+            if (corpus.compareTo(Corpus.MB_1) < 0 || corpus.compareTo(largest) > 0) {
+                continue;
+            }
+            var input = corpus.load();
+            var base = used();
+            var ast = new Parser(new Lexer(input).decodeLiterals().tokens()).parseSource();
+            var astBytes = used() - base;
+            var flat = FlatAst.of(ast);
+            var flatBytes = used() - base - astBytes;
+            System.out.printf("%s: %d nodes, Ast %.1f MB, FlatAst %.1f MB%n", corpus.name(), flat.nodes(),
+                astBytes / (1024.0 * 1024.0), flatBytes / (1024.0 * 1024.0));
+
+            var counter = new Counter();
+            LexerBenchmark.measure("  Ast", input, () -> {
+                counter.sum = 0;
+                return counter.count(ast);
+            });
+            var visitor = new FlatCounter();
+            LexerBenchmark.measure("  FlatAst", input, () -> {
+                visitor.sum = 0;
+                return visitor.visit(flat);
+            });
+            LexerBenchmark.measure("  FlatAst scan", input, () -> {
+                visitor.sum = 0;
+                for (int node = 0; node < flat.length(); node = flat.next(node)) {
+                    if (flat.kind(node) == FlatAst.Kind.LITERAL && flat.isLong(node)) {
+                        visitor.sum += flat.longValue(node);
+                    }
+                }
+                return flat.nodes();
+            });
+        }
+    }
+
+    private static long used() {
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+        }
+        return Runtime.getRuntime().totalMemory() - Runtime.getRuntime().freeMemory();
+    }
+
+    /**
+     * Counts nodes of an {@link Ast} by recursion over the records.
+     */
+    private static final class Counter {
+
+        private long sum;
+
+        private int count(Ast.Source ast) {
+            return stmts(ast.statements());
+        }
+
+        private int stmts(List<? extends Ast.Stmt> statements) {
+            var count = 0;
+            for (var stmt : statements) {
+                count += stmt(stmt);
+            }
+            return count;
+        }
+
+        private int exprs(List<Ast.Expr> exprs) {
+            var count = 0;
+            for (var expr : exprs) {
+                count += expr(expr);
+            }
+            return count;
+        }
+
+        private int stmt(Ast.Stmt stmt) {
+            return 1 + switch (stmt) {
+                case Ast.Stmt.Let ast -> ast.value().map(this::expr).orElse(0);
+                case Ast.Stmt.Def ast -> stmts(ast.body());
+                case Ast.Stmt.If ast -> expr(ast.condition()) + stmts(ast.thenBody()) + stmts(ast.elseBody());
+                case Ast.Stmt.For ast -> expr(ast.expression()) + stmts(ast.body());
+                case Ast.Stmt.Return ast -> ast.value().map(this::expr).orElse(0);
+                case Ast.Stmt.Expression ast -> expr(ast.expression());
+                case Ast.Stmt.Assignment ast -> expr(ast.expression()) + expr(ast.value());
+            };
+        }
+
+        private int expr(Ast.Expr expr) {
+            return 1 + switch (expr) {
+                case Ast.Expr.Literal ast -> {
+                    if (ast.value() instanceof BigInteger integer && integer.bitLength() < Long.SIZE) {
+                        sum += integer.longValue();
+                    }
+                    yield 0;
+                }
+                case Ast.Expr.Group ast -> expr(ast.expression());
+                case Ast.Expr.Binary ast -> expr(ast.left()) + expr(ast.right());
+                case Ast.Expr.Variable ast -> 0;
+                case Ast.Expr.Property ast -> expr(ast.receiver());
+                case Ast.Expr.Function ast -> exprs(ast.arguments());
+                case Ast.Expr.Method ast -> expr(ast.receiver()) + exprs(ast.arguments());
+                case Ast.Expr.ObjectExpr ast -> stmts(ast.fields()) + stmts(ast.methods());
+            };
+        }
+
+    }
+
+    /**
+     * Counts nodes of a {@link FlatAst} with a {@link FlatAst.Visitor}.
+     */
+    private static final class FlatCounter implements FlatAst.Visitor<Integer, RuntimeException> {
+
+        private long sum;
+
+        private int list(FlatAst ast, int list) {
+            var count = 0;
+            for (int i = 0; i < ast.size(list); i++) {
+                count += visit(ast, ast.get(list, i));
+            }
+            return count;
+        }
+
+        private int optional(FlatAst ast, int node) {
+            return node != FlatAst.NONE ? visit(ast, node) : 0;
+        }
+
+        @Override
+        public Integer visit(FlatAst ast) {
+            return list(ast, ast.statements());
+        }
+
+        @Override
+        public Integer visitLet(FlatAst ast, int node) {
+            return 1 + optional(ast, ast.value(node));
+        }
+
+        @Override
+        public Integer visitDef(FlatAst ast, int node) {
+            return 1 + list(ast, ast.body(node));
+        }
+
+        @Override
+        public Integer visitIf(FlatAst ast, int node) {
+            return 1 + visit(ast, ast.condition(node)) + list(ast, ast.thenBody(node)) + list(ast, ast.elseBody(node));
+        }
+
+        @Override
+        public Integer visitFor(FlatAst ast, int node) {
+            return 1 + visit(ast, ast.expression(node)) + list(ast, ast.body(node));
+        }
+
+        @Override
+        public Integer visitReturn(FlatAst ast, int node) {
+            return 1 + optional(ast, ast.value(node));
+        }
+
+        @Override
+        public Integer visitExpression(FlatAst ast, int node) {
+            return 1 + visit(ast, ast.expression(node));
+        }
+
+        @Override
+        public Integer visitAssignment(FlatAst ast, int node) {
+            return 1 + visit(ast, ast.expression(node)) + visit(ast, ast.value(node));
+        }
+
+        @Override
+        public Integer visitLiteral(FlatAst ast, int node) {
+            if (ast.isLong(node)) {
+                sum += ast.longValue(node);
+            }
+            return 1;
+        }
+
+        @Override
+        public Integer visitGroup(FlatAst ast, int node) {
+            return 1 + visit(ast, ast.expression(node));
+        }
+
+        @Override
+        public Integer visitBinary(FlatAst ast, int node) {
+            return 1 + visit(ast, ast.left(node)) + visit(ast, ast.right(node));
+        }
+
+        @Override
+        public Integer visitVariable(FlatAst ast, int node) {
+            return 1;
+        }
+
+        @Override
+        public Integer visitProperty(FlatAst ast, int node) {
+            return 1 + visit(ast, ast.receiver(node));
+        }
+
+        @Override
+        public Integer visitFunction(FlatAst ast, int node) {
+            return 1 + list(ast, ast.arguments(node));
+        }
+
+        @Override
+        public Integer visitMethod(FlatAst ast, int node) {
+            return 1 + visit(ast, ast.receiver(node)) + list(ast, ast.arguments(node));
+        }
+
+        @Override
+        public Integer visitObject(FlatAst ast, int node) {
+            return 1 + list(ast, ast.fields(node)) + list(ast, ast.methods(node));
+        }
+
+    }
+
+}
@@ -0,0 +1,70 @@
+package plc.project.benchmark;
+
+import plc.project.lexer.Lexer;
+import plc.project.parser.IncrementalParser;
+import plc.project.parser.Parser;
+
+/**
+ * Measures the latency of edits with {@link IncrementalParser} compared to
+ * parsing the whole input again, on a generated program of a given number of
+ * lines (defaults to 50,000). Edits are spread evenly through the program and
+ * alternate between changing a digit (in any token), and inserting then
+ * removing a top-level statement before a comment.
+ */
+public final class IncrementalBenchmark {
+
+    private static final int EDITS = 2000;
+
+    public static void main(String[] args) throws Exception {
+        var lines = args.length > 0 ? Integer.parseInt(args[0]) : 50_000;
+        var program = ProgramGenerator.generate(0, lines * 45);
+        System.out.println(program.lines().count() + " lines, " + program.length() + " characters");
+
+        LexerBenchmark.measure("full reparse", program, () -> {
+            var tokens = new Lexer(program).lexBuffer();
+            new Parser(tokens).parseSource();
+            return tokens.size();
+        });
+
+        var parser = new IncrementalParser(program);
+        var text = new StringBuilder(program);
+        var total = 0L;
+        var worst = 0L;
+        for (int round = 0; round < 2; round++) {
+            total = 0;
+            worst = 0;
+            for (int i = 0; i < EDITS; i++) {
+                var position = (int) ((long) i * text.length() / EDITS);
+                long elapsed;
+                if (i % 2 == 0) {
+                    while (!Character.isDigit(text.charAt(position))) {
+                        position++;
+                    }
+                    var digit = String.valueOf((char) ('1' + (text.charAt(position) - '0') % 9));
+                    text.replace(position, position + 1, digit);
+                    var start = System.nanoTime();
+                    parser.edit(position, 1, digit);
+                    elapsed = System.nanoTime() - start;
+                } else {
+                    // unindented comments are always between top-level statements
+                    position = text.indexOf("\n//", position) + 1;
+                    var statement = "LET inserted = 1;\n";
+                    var start = System.nanoTime();
+                    parser.edit(position, 0, statement);
+                    parser.edit(position, statement.length(), "");
+                    elapsed = (System.nanoTime() - start) / 2;
+                }
+                total += elapsed;
+                worst = Math.max(worst, elapsed);
+            }
+        }
+        System.out.printf("incremental edit: mean %.1f us, worst %.1f us%n", total / 1e3 / EDITS, worst / 1e3);
+
+        // check the edits against parsing the edited program again
+        var expected = new Parser(new Lexer(text.toString()).lexBuffer()).parseSource();
+        if (!expected.equals(parser.source())) {
+            throw new AssertionError("Incremental AST doesn't match the edited program.");
+        }
+    }
+
+}
@@ -0,0 +1,89 @@
+package plc.project.benchmark;
+
+import plc.project.lexer.Lexer;
+import plc.project.lexer.ParallelLexer;
+
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * Measures lexer throughput in MB/s. This is a plain main method rather than
+ * a unit test, since timings aren't meaningful assertions; run it directly
+ * (optionally passing the input size in MB) and compare the reported numbers.
+ */
+public final class LexerBenchmark {
+
+    private static final String PROGRAM = """
+        // Computes a running total with a helper object.
+        LET total: Integer = 0;
+        LET counter = OBJECT Counter DO
+            LET count = 0;
+            DEF increment(amount: Integer): Integer DO
+                this.count = this.count + amount;
+                RETURN this.count;
+            END
+        END
+        DEF describe(name: String, value: Decimal): String DO
+            IF value >= 1.5e3 AND name != "skip" DO
+                RETURN name + ": large \\"value\\"\\n";
+            ELSE
+                RETURN name + ": small " + 'x';
+            END
+        END
+        FOR i IN range(1, 100) DO
+            total = total + counter.increment(i) * (i - 1) / 2;
+        END
+        """;
+
+    public static void main(String[] args) throws Exception {
+        var megabytes = args.length > 0 ? Integer.parseInt(args[0]) : 8;
+        var input = repeat(megabytes * 1024 * 1024);
+
+        measure("lex", input, () -> new Lexer(input).lex().size());
+        measure("lexBuffer", input, () -> new Lexer(input).lexBuffer().size());
+
+        var bytes = input.getBytes(StandardCharsets.UTF_8);
+        measure("lexBuffer (UTF-8)", input, () -> new Lexer(bytes).lexBuffer().size());
+
+        //Compare against the sequential results above for the speedup.
+        var pool = ForkJoinPool.commonPool();
+        System.out.println("parallelism: " + pool.getParallelism());
+        measure("parallel lex", input, () -> new ParallelLexer(input, pool).lex().size());
+        measure("parallel lexBuffer", input, () -> new ParallelLexer(input, pool).lexBuffer().size());
+    }
+
+    interface Task {
+        int run() throws Exception;
+    }
+
+    /**
+     * Reports the best of 10 runs after warming up, so the JIT has compiled
+     * the lexer before timing.
+     */
+    static void measure(String name, String input, Task task) throws Exception {
+        for (int i = 0; i < 5; i++) {
+            task.run();
+        }
+
+        var best = Long.MAX_VALUE;
+        var count = 0;
+        for (int i = 0; i < 10; i++) {
+            var start = System.nanoTime();
+            count = task.run();
+            best = Math.min(best, System.nanoTime() - start);
+        }
+
+        var mb = input.length() / (1024.0 * 1024.0);
+        System.out.printf("%s: %.1f MB, %d tokens, best %.1f ms, %.1f MB/s%n",
+            name, mb, count, best / 1e6, mb / (best / 1e9));
+    }
+
+    private static String repeat(int size) {
+        var builder = new StringBuilder(size + PROGRAM.length());
+        while (builder.length() < size) {
+            builder.append(PROGRAM);
+        }
+        return builder.toString();
+    }
+
+}
@@ -0,0 +1,42 @@
+package plc.project.benchmark;
+
+import plc.project.lexer.Lexer;
+import plc.project.parser.ParallelParser;
+import plc.project.parser.Parser;
+
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * Measures how {@link ParallelParser} scales with the number of threads,
+ * compared to {@link Parser} on the same tokens, using pools of 1, 2, 4, ...
+ * threads up to the number of available processors. Run directly, passing the
+ * largest corpus to include (defaults to {@code MB_10}).
+ */
+public final class ParallelParserBenchmark {
+
+    public static void main(String[] args) throws Exception {
+        var largest = Corpus.valueOf(args.length > 0 ? args[0] : "MB_10");
+        var processors = Runtime.getRuntime().availableProcessors();
+        for (var corpus : Corpus.values()) {
+            if (corpus.compareTo(Corpus.MB_1) < 0 || corpus.compareTo(largest) > 0) {
+                continue;
+            }
+            var input = corpus.load();
+            var tokens = new Lexer(input).lexBuffer();
+            System.out.println(corpus.name() + ":");
+            LexerBenchmark.measure("  sequential", input, () -> {
+                new Parser(tokens).parseSource();
+                return tokens.size();
+            });
+            for (int threads = 1; threads <= processors; threads *= 2) {
+                var pool = new ForkJoinPool(threads);
+                LexerBenchmark.measure("  " + threads + " thread(s)", input, () -> {
+                    new ParallelParser(tokens, pool).parseSource();
+                    return tokens.size();
+                });
+                pool.shutdown();
+            }
+        }
+    }
+
+}
@@ -0,0 +1,37 @@
+package plc.project.benchmark;
+
+import plc.project.lexer.Lexer;
+import plc.project.lexer.TokenSource;
+import plc.project.parser.Parser;
+
+/**
+ * Measures parser throughput on the larger {@link Corpus} inputs, separately
+ * from lexing: tokens are lexed once up front and each run only parses them.
+ * Run directly, passing the largest corpus to include (defaults to
+ * {@code MB_10}). The reported count is the number of tokens in the corpus.
+ */
+public final class ParserBenchmark {
+
+    public static void main(String[] args) throws Exception {
+        var largest = Corpus.valueOf(args.length > 0 ? args[0] : "MB_10");
+        for (var corpus : Corpus.values()) {
+            if (corpus.compareTo(Corpus.MB_1) < 0 || corpus.compareTo(largest) > 0) {
+                continue;
+            }
+            var input = corpus.load();
+            var tokens = new Lexer(input).lex();
+            System.out.println(corpus.name() + ":");
+            LexerBenchmark.measure("  parse tokens", input, () -> {
+                var parser = new Parser(TokenSource.of(tokens));
+                parser.parseSource();
+                return tokens.size();
+            });
+            LexerBenchmark.measure("  lex and parse", input, () -> {
+                var parser = new Parser(new Lexer(input).decodeLiterals().tokens());
+                parser.parseSource();
+                return tokens.size();
+            });
+        }
+    }
+
+}
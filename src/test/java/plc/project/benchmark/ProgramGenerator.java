@@ -0,0 +1,220 @@
+package plc.project.benchmark;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Generates synthetic programs for benchmarking the lexer and parser. The
+ * output depends only on the seed and size, so the same arguments always
+ * produce the same program (see {@link Corpus} for the standard sizes).
+ *
+ * <p>Programs are built from units covering the language: comment banners,
+ * functions with nested helper functions, long {@code FOR} bodies and deep
+ * expressions, objects with fields and methods, and string, character and
+ * decimal heavy declarations. Programs are also valid for the evaluator,
+ * since variables are always defined before use, integer division is only by
+ * positive literals, and loops are over small ranges.
+ *
+ * <p>Run directly to write a program to a file, passing the size in bytes,
+ * the output path, and optionally the seed.
+ */
+public final class ProgramGenerator {
+
+    private static final String[] WORDS = {
+        "lorem", "ipsum", "dolor", "sit", "amet", "consectetur", "adipiscing",
+        "elit", "sed", "do", "eiusmod", "tempor", "incididunt", "ut", "labore",
+        "et", "dolore", "magna", "aliqua", "enim", "ad", "minim", "veniam",
+    };
+    private static final String[] ESCAPES = {"\\n", "\\t", "\\\"", "\\\\", "\\'", "\\r", "\\b"};
+
+    private final Random random;
+    private final StringBuilder builder;
+    private int unit = 0;
+    private int indent = 0;
+
+    private ProgramGenerator(long seed, int size) {
+        this.random = new Random(seed);
+        this.builder = new StringBuilder(size + 4096);
+    }
+
+    public static void main(String[] args) throws IOException {
+        var size = Integer.parseInt(args[0]);
+        var seed = args.length > 2 ? Long.parseLong(args[2]) : 0;
+        Files.writeString(Path.of(args[1]), generate(seed, size));
+    }
+
+    /**
+     * Returns a program of at least size characters (stopping at the end of
+     * the unit which reaches it, so programs are always complete).
+     */
+    public static String generate(long seed, int size) {
+        var generator = new ProgramGenerator(seed, size);
+        while (generator.builder.length() < size) {
+            generator.unit();
+        }
+        return generator.builder.toString();
+    }
+
+    private void unit() {
+        var n = unit++;
+        switch (n % 4) {
+            case 0 -> {
+                banner();
+                function(n);
+            }
+            case 1 -> object(n);
+            case 2 -> strings(n);
+            default -> {
+                comment();
+                line("LET total" + n + " = f" + (n - 3) + "(" + integer() + ", " + integer() + ") + "
+                    + "o" + (n - 2) + ".update(" + integer() + ");");
+            }
+        }
+        line("");
+    }
+
+    private void banner() {
+        line("// " + "=".repeat(74));
+        for (int i = random.nextInt(4); i >= 0; i--) {
+            comment();
+        }
+        line("// " + "=".repeat(74));
+    }
+
+    private void comment() {
+        var text = new StringBuilder("//");
+        while (text.length() < 60 + random.nextInt(20)) {
+            text.append(' ').append(WORDS[random.nextInt(WORDS.length)]);
+        }
+        line(text.toString());
+    }
+
+    /**
+     * A function of two integers with a nested helper, a long loop body, and
+     * a conditional, returning an integer.
+     */
+    private void function(int n) {
+        line("DEF f" + n + "(a, b) DO");
+        indent++;
+        line("DEF helper(x) DO");
+        indent++;
+        line("RETURN " + expression(List.of("x", "a", "b"), 3) + ";");
+        indent--;
+        line("END");
+        line("LET acc = " + expression(List.of("a", "b"), 4) + ";");
+        line("FOR i IN range(0, " + (2 + random.nextInt(4)) + ") DO");
+        indent++;
+        // acc is only ever added to, so values don't grow exponentially
+        var variables = List.of("a", "b", "i");
+        for (int i = 8 + random.nextInt(16); i > 0; i--) {
+            if (random.nextInt(6) == 0) {
+                comment();
+            }
+            if (random.nextInt(4) == 0) {
+                line("acc = acc + helper(" + expression(variables, 2) + ");");
+            } else {
+                line("acc = acc + " + expression(variables, 3 + random.nextInt(4)) + ";");
+            }
+        }
+        indent--;
+        line("END");
+        line("IF acc > " + integer() + " AND a <= b OR acc == 0 DO");
+        indent++;
+        line("RETURN acc - " + expression(List.of("a", "b"), 2) + ";");
+        indent--;
+        line("ELSE");
+        indent++;
+        line("RETURN acc;");
+        indent--;
+        line("END");
+        indent--;
+        line("END");
+    }
+
+    /**
+     * An object with integer, decimal and string fields, and methods which
+     * only use fields and parameters (since methods can't see globals).
+     */
+    private void object(int n) {
+        line("LET o" + n + " = OBJECT Counter" + n + " DO");
+        indent++;
+        line("LET count = " + integer() + ";");
+        line("LET ratio = " + decimal() + ";");
+        line("LET label = " + string() + ";");
+        line("DEF update(amount) DO");
+        indent++;
+        line("this.count = this.count + " + expression(List.of("amount"), 3) + ";");
+        line("this.ratio = this.ratio * " + decimal() + ";");
+        line("RETURN this.count;");
+        indent--;
+        line("END");
+        line("DEF describe() DO");
+        indent++;
+        line("RETURN this.label + \": \" + this.count + \" \" + this.ratio;");
+        indent--;
+        line("END");
+        indent--;
+        line("END;");
+    }
+
+    private void strings(int n) {
+        line("LET s" + n + " = " + string() + " + " + string() + " + " + character() + ";");
+        line("LET d" + n + " = (" + decimal() + " + " + decimal() + ") * " + decimal() + ";");
+        line("LET t" + n + " = o" + (n - 1) + ".describe() + s" + n + ";");
+    }
+
+    /**
+     * Returns an integer expression of the given depth over the variables.
+     */
+    private String expression(List<String> variables, int depth) {
+        if (depth == 0 || random.nextInt(5) == 0) {
+            return random.nextBoolean()
+                ? variables.get(random.nextInt(variables.size()))
+                : Integer.toString(random.nextInt(100));
+        }
+        var left = expression(variables, depth - 1);
+        return switch (random.nextInt(5)) {
+            case 0 -> left + " + " + expression(variables, depth - 1);
+            case 1 -> left + " - " + expression(variables, depth - 1);
+            case 2 -> left + " * " + expression(variables, depth - 1);
+            case 3 -> "(" + left + ") / " + (1 + random.nextInt(9));
+            default -> "(" + left + " + " + expression(variables, depth - 1) + ")";
+        };
+    }
+
+    private String integer() {
+        return Integer.toString(random.nextInt(1000));
+    }
+
+    private String decimal() {
+        return random.nextInt(100) + "." + (1 + random.nextInt(999));
+    }
+
+    private String string() {
+        var parts = new ArrayList<String>();
+        for (int i = 2 + random.nextInt(10); i > 0; i--) {
+            parts.add(random.nextInt(4) == 0
+                ? ESCAPES[random.nextInt(ESCAPES.length)]
+                : WORDS[random.nextInt(WORDS.length)]);
+        }
+        return "\"" + String.join(" ", parts) + "\"";
+    }
+
+    private String character() {
+        return random.nextBoolean()
+            ? "'" + ESCAPES[random.nextInt(ESCAPES.length)] + "'"
+            : "'" + (char) ('a' + random.nextInt(26)) + "'";
+    }
+
+    private void line(String line) {
+        if (!line.isEmpty()) {
+            builder.append("    ".repeat(indent)).append(line);
+        }
+        builder.append('\n');
+    }
+
+}
@@ -0,0 +1,62 @@
+package plc.project.benchmark;
+
+import plc.project.lexer.Lexer;
+import plc.project.parser.Ast;
+import plc.project.parser.ParseException;
+import plc.project.parser.Parser;
+
+import java.lang.management.ManagementFactory;
+
+/**
+ * Compares parsing with and without {@link Parser#shareNodes()}: the heap
+ * retained by the AST (after a full GC), the bytes allocated while parsing,
+ * and the parse time. Run directly, passing the largest corpus to include
+ * (defaults to {@code MB_10}).
+ */
+public final class ShareNodesBenchmark {
+
+    private static final com.sun.management.ThreadMXBean THREADS =
+        (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+
+    public static void main(String[] args) throws Exception {
+        var largest = Corpus.valueOf(args.length > 0 ? args[0] : "MB_10");
+        for (var corpus : Corpus.values()) {
+            if (corpus.compareTo(Corpus.MB_1) < 0 || corpus.compareTo(largest) > 0) {
+                continue;
+            }
+            var input = corpus.load();
+            var tokens = new Lexer(input).lex().size();
+            System.out.println(corpus.name() + ":");
+            for (var share : new boolean[] {false, true}) {
+                var name = share ? "  shared" : "  unshared";
+                var base = used();
+                var allocated = THREADS.getCurrentThreadAllocatedBytes();
+                var ast = parse(input, share);
+                allocated = THREADS.getCurrentThreadAllocatedBytes() - allocated;
+                var retained = used() - base;
+                System.out.printf("%s: retained %.1f MB, allocated %.1f MB (%d statements)%n", name,
+                    retained / (1024.0 * 1024.0), allocated / (1024.0 * 1024.0), ast.statements().size());
+                LexerBenchmark.measure(name, input, () -> {
+                    parse(input, share);
+                    return tokens;
+                });
+            }
+        }
+    }
+
+    /**
+     * Parses the input, so the parser (and its table) isn't retained.
+     */
+    private static Ast.Source parse(String input, boolean share) throws ParseException {
+        var parser = new Parser(new Lexer(input).decodeLiterals().tokens());
+        return (share ? parser.shareNodes() : parser).parseSource();
+    }
+
+    private static long used() {
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+        }
+        return Runtime.getRuntime().totalMemory() - Runtime.getRuntime().freeMemory();
+    }
+
+}
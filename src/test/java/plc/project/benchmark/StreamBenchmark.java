@@ -0,0 +1,67 @@
+package plc.project.benchmark;
+
+import plc.project.evaluator.Environment;
+import plc.project.evaluator.Evaluator;
+import plc.project.evaluator.Scope;
+import plc.project.lexer.Lexer;
+import plc.project.parser.Parser;
+
+import java.io.OutputStream;
+import java.io.PrintStream;
+
+/**
+ * Compares parsing the whole source before evaluating it against
+ * {@link Evaluator#evaluate(Parser)}, which evaluates statements as they're
+ * parsed, on a straight-line script of the given number of statements
+ * (defaults to 1,000,000). Reports the time until the first statement is
+ * evaluated, the total time, and the heap in use at the end of the script
+ * (after a full GC), which includes the AST when it's parsed first. Both are
+ * recorded when the script prints, so nothing else is printed while running.
+ */
+public final class StreamBenchmark {
+
+    private static long first;
+    private static long heap;
+
+    public static void main(String[] args) throws Exception {
+        var statements = args.length > 0 ? Integer.parseInt(args[0]) : 1_000_000;
+        var builder = new StringBuilder("print(\"first\");\nLET x = 0;\n");
+        for (int i = 0; i < statements; i++) {
+            builder.append("x = x + ").append(i % 100).append(";\n");
+        }
+        var input = builder.append("print(\"heap\");\n").toString();
+
+        var out = System.out;
+        System.setOut(new PrintStream(OutputStream.nullOutputStream()) {
+            @Override
+            public void println(String line) {
+                if (line.equals("first")) {
+                    first = System.nanoTime();
+                } else if (line.equals("heap")) {
+                    System.gc();
+                    heap = Runtime.getRuntime().totalMemory() - Runtime.getRuntime().freeMemory();
+                }
+            }
+        });
+        for (int i = 0; i < 3; i++) {
+            run("batch", input, evaluator -> evaluator.visit(new Parser(new Lexer(input).decodeLiterals().tokens()).parseSource()));
+            run("stream", input, evaluator -> evaluator.evaluate(new Parser(new Lexer(input).decodeLiterals().tokens())));
+        }
+        System.setOut(out);
+    }
+
+    private static void run(String name, String input, Run run) throws Exception {
+        var evaluator = new Evaluator(new Scope(Environment.scope()));
+        System.gc();
+        var start = System.nanoTime();
+        run.run(evaluator);
+        var end = System.nanoTime();
+        System.err.printf("%s: %.1f MB, first statement %.2f ms, total %.1f ms, heap %.1f MB%n",
+            name, input.length() / (1024.0 * 1024.0), (first - start) / 1e6, (end - start) / 1e6, heap / (1024.0 * 1024.0));
+    }
+
+    private interface Run {
+        void run(Evaluator evaluator) throws Exception;
+    }
+
+}
@@ -0,0 +1,51 @@
+package plc.project.benchmark;
+
+import plc.project.lexer.Lexer;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Measures lexing of machine-generated style input, which is mostly deep
+ * indentation and long comment banners, to compare the vectorized and scalar
+ * paths for skipping whitespace and comments in UTF-8 input (String input
+ * doesn't use the Vector API and is shown for reference). The path is fixed
+ * per JVM, so run this twice and compare:
+ *
+ * <ul>
+ *     <li>{@code java --add-modules jdk.incubator.vector ...} (vectorized, if
+ *     {@code src/vector/java} was compiled)</li>
+ *     <li>{@code java -Dplc.project.lexer.scalar=true ...} (scalar)</li>
+ * </ul>
+ */
+public final class WhitespaceBenchmark {
+
+    private static final String PROGRAM = """
+        // ==========================================================================
+        // Generated code: do not edit. This banner is intentionally long, as is the
+        // indentation below, which is typical of machine-generated sources.
+        // ==========================================================================
+        DEF generated(value: Integer): Integer DO
+                                IF value > 0 DO
+                                                        RETURN value - 1; // decrement towards zero
+                                END
+                                RETURN value;
+        END
+        """;
+
+    public static void main(String[] args) throws Exception {
+        var megabytes = args.length > 0 ? Integer.parseInt(args[0]) : 8;
+        var builder = new StringBuilder();
+        while (builder.length() < megabytes * 1024 * 1024) {
+            builder.append(PROGRAM);
+        }
+        var input = builder.toString();
+        var bytes = input.getBytes(StandardCharsets.UTF_8);
+
+        var vectorized = ModuleLayer.boot().findModule("jdk.incubator.vector").isPresent()
+            && !Boolean.getBoolean("plc.project.lexer.scalar");
+        System.out.println("path: " + (vectorized ? "vectorized" : "scalar"));
+        LexerBenchmark.measure("lexBuffer", input, () -> new Lexer(input).lexBuffer().size());
+        LexerBenchmark.measure("lexBuffer (UTF-8)", input, () -> new Lexer(bytes).lexBuffer().size());
+    }
+
+}
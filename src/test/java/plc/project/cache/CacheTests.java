@@ -0,0 +1,246 @@
+package plc.project.cache;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.Arguments;
+import org.junit.jupiter.params.provider.MethodSource;
+import plc.project.analyzer.Analyzer;
+import plc.project.analyzer.Environment;
+import plc.project.analyzer.Ir;
+import plc.project.analyzer.Scope;
+import plc.project.analyzer.Type;
+import plc.project.benchmark.Corpus;
+import plc.project.lexer.Lexer;
+import plc.project.parser.Ast;
+import plc.project.parser.ParseException;
+import plc.project.parser.Parser;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.StreamCorruptedException;
+import java.math.BigInteger;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.Stream;
+
+/**
+ * Standard JUnit5 parameterized tests. See the RegexTests file from Homework 1
+ * or the LexerTests file from the last project part for more information.
+ */
+final class CacheTests {
+
+    private static final String PROGRAM = """
+        LET x: Integer = 1;
+        LET big = 123456789012345678901234567890;
+        LET negative = -9223372036854775808;
+        LET decimal = -1.25;
+        LET character = 'c';
+        LET string = "Hello,\\n\\"\u00E9\\" World!";
+        LET flags = TRUE AND FALSE OR NIL == NIL;
+        DEF add(a: Integer, b): Integer DO
+            RETURN a + b * (a - b) / 2;
+        END
+        IF x < 2 DO
+            x = add(x, 1);
+        ELSE
+            RETURN;
+        END
+        FOR i IN range(0, 10) DO
+            print(i);
+        END
+        LET object = OBJECT Point DO
+            LET x = 1;
+            LET y;
+            DEF norm() DO
+                RETURN this.x * this.x + this.y * this.y;
+            END
+        END;
+        object.y = object.x;
+        object.norm();
+        """;
+
+    @ParameterizedTest
+    @MethodSource
+    void testAst(String test, String input) throws IOException {
+        //An AST must decode to an equal AST.
+        var ast = Assertions.assertDoesNotThrow(() -> new Parser(new Lexer(input).decodeLiterals().tokens()).parseSource());
+        var output = new ByteArrayOutputStream();
+        AstCodec.write(ast, output);
+        Assertions.assertEquals(ast, AstCodec.read(new ByteArrayInputStream(output.toByteArray())));
+    }
+
+    public static Stream<Arguments> testAst() {
+        return Stream.of(
+            Arguments.of("Empty", ""),
+            Arguments.of("Program", PROGRAM),
+            Arguments.of("Corpus", Corpus.KB_100.load())
+        );
+    }
+
+    @ParameterizedTest
+    @MethodSource
+    void testIr(String test, String input) throws IOException {
+        //An IR must decode to an equal IR, including its object types.
+        var ir = Assertions.assertDoesNotThrow(() -> analyze(input));
+        var output = new ByteArrayOutputStream();
+        IrCodec.write(ir, output);
+        Assertions.assertEquals(ir, IrCodec.read(new ByteArrayInputStream(output.toByteArray())));
+    }
+
+    public static Stream<Arguments> testIr() {
+        return Stream.of(
+            Arguments.of("Empty", ""),
+            Arguments.of("Literals", """
+                LET integer: Integer = 123456789012345678901234567890;
+                LET decimal: Decimal = 1.25;
+                LET string: String = "string";
+                LET flag: Boolean = TRUE OR FALSE;
+                LET nil: Nil = NIL;
+                """),
+            Arguments.of("Functions", """
+                DEF square(x: Integer): Integer DO
+                    RETURN x * x;
+                END
+                LET total = 0;
+                FOR i IN range(0, 10) DO
+                    IF i < 5 DO
+                        total = total + square(i);
+                    END
+                END
+                print((total));
+                """),
+            Arguments.of("Objects", """
+                LET point = OBJECT DO
+                    LET x = 1;
+                    LET y = 2;
+                    DEF sum(): Integer DO
+                        RETURN this.x + this.y;
+                    END
+                END;
+                point.x = point.sum();
+                LET other = point;
+                other.sum();
+                """)
+        );
+    }
+
+    @Test
+    void testCorrupt() throws IOException {
+        //Truncated, extended, or invalid data must throw an IOException.
+        var ast = Assertions.assertDoesNotThrow(() -> new Parser(new Lexer(PROGRAM).decodeLiterals().tokens()).parseSource());
+        var output = new ByteArrayOutputStream();
+        AstCodec.write(ast, output);
+        var bytes = output.toByteArray();
+        Assertions.assertThrows(IOException.class, () -> AstCodec.read(new ByteArrayInputStream(Arrays.copyOf(bytes, bytes.length / 2))));
+        var extended = Arrays.copyOf(bytes, bytes.length + 1);
+        Assertions.assertThrows(StreamCorruptedException.class, () -> AstCodec.read(new ByteArrayInputStream(extended)));
+        var zeroed = Arrays.copyOf(bytes, bytes.length);
+        Arrays.fill(zeroed, 8, zeroed.length, (byte) 0);
+        Assertions.assertThrows(StreamCorruptedException.class, () -> AstCodec.read(new ByteArrayInputStream(zeroed)));
+        bytes[4] ^= 1;
+        Assertions.assertThrows(StreamCorruptedException.class, () -> AstCodec.read(new ByteArrayInputStream(bytes)));
+        Assertions.assertThrows(StreamCorruptedException.class, () -> IrCodec.read(new ByteArrayInputStream(output.toByteArray())));
+    }
+
+    @Test
+    void testCorruptLiteral() throws IOException {
+        //Invalid literals must throw an IOException, without allocating their invalid size.
+        var output = new ByteArrayOutputStream();
+        var tree = new TreeOutput(output);
+        tree.writeByte(TreeOutput.INTEGER);
+        tree.writeSize(0);
+        tree.writeByte(TreeOutput.STRING);
+        tree.writeSize(Integer.MAX_VALUE);
+        tree.flush();
+        var input = new TreeInput(new ByteArrayInputStream(output.toByteArray()));
+        Assertions.assertThrows(StreamCorruptedException.class, input::readLiteral);
+        Assertions.assertThrows(EOFException.class, input::readLiteral);
+    }
+
+    @Test
+    void testCache() throws Exception {
+        //Sources are read back from the cache, and unreadable files are replaced.
+        var directory = Files.createTempDirectory("cache");
+        var cache = new TreeCache(directory);
+        var ast = cache.parse(PROGRAM);
+        var ir = cache.analyze("LET x = 1; x = x + 1;");
+        Assertions.assertEquals(3, files(directory).length);
+        Assertions.assertEquals(ast, cache.parse(PROGRAM));
+        Assertions.assertEquals(ir, cache.analyze("LET x = 1; x = x + 1;"));
+        Assertions.assertEquals(3, files(directory).length);
+
+        for (var file : files(directory)) {
+            Files.write(file, new byte[] {1, 2, 3});
+        }
+        Assertions.assertEquals(ast, cache.parse(PROGRAM));
+        var file = Arrays.stream(files(directory)).filter(f -> f.toString().endsWith(".ast")).findFirst().orElseThrow();
+        Assertions.assertEquals(ast, AstCodec.read(new ByteArrayInputStream(Files.readAllBytes(file))));
+        Assertions.assertEquals(ir, cache.analyze("LET x = 1; x = x + 1;"));
+
+        Assertions.assertThrows(ParseException.class, () -> cache.parse("LET x = ;"));
+        Assertions.assertEquals(3, files(directory).length);
+
+        //Trees are still returned when they can't be cached.
+        var blocked = Files.createTempFile("cache", ".tmp");
+        Assertions.assertEquals(ast, new TreeCache(blocked).parse(PROGRAM));
+    }
+
+    @ParameterizedTest
+    @MethodSource
+    void testDeep(String test, String input) throws Exception {
+        //Deeply nested expressions must be cached and read back without overflowing the stack.
+        var directory = Files.createTempDirectory("cache");
+        var cache = new TreeCache(directory);
+        var ast = cache.parse(input);
+        Assertions.assertEquals(1, files(directory).length);
+        var cached = cache.parse(input);
+        Assertions.assertNotSame(ast, cached);
+        //Comparing the encodings, since equals is also recursive.
+        var expected = new ByteArrayOutputStream();
+        AstCodec.write(ast, expected);
+        var actual = new ByteArrayOutputStream();
+        AstCodec.write(cached, actual);
+        Assertions.assertArrayEquals(expected.toByteArray(), actual.toByteArray());
+    }
+
+    public static Stream<Arguments> testDeep() {
+        return Stream.of(
+            Arguments.of("Binary Chain", "1" + " + 1".repeat(3000) + ";"),
+            Arguments.of("Nested Groups", "(".repeat(20_000) + "1" + ")".repeat(20_000) + ";"),
+            Arguments.of("Nested Arguments", "f(".repeat(20_000) + ")".repeat(20_000) + ";")
+        );
+    }
+
+    @Test
+    void testDeepIr() throws IOException {
+        //Deeply nested IR expressions must be encoded and decoded without overflowing the stack.
+        Ir.Expr expr = new Ir.Expr.Literal(BigInteger.ONE, Type.INTEGER);
+        for (int i = 0; i < 20_000; i++) {
+            var argument = new Ir.Expr.Group(new Ir.Expr.Binary("+", expr, new Ir.Expr.Literal(BigInteger.ONE, Type.INTEGER), Type.INTEGER));
+            expr = new Ir.Expr.Method(new Ir.Expr.Variable("object", Type.ANY), "f", List.of(argument), Type.ANY);
+        }
+        var ir = new Ir.Source(List.of(new Ir.Stmt.Expression(expr)));
+        var expected = new ByteArrayOutputStream();
+        IrCodec.write(ir, expected);
+        var actual = new ByteArrayOutputStream();
+        IrCodec.write(IrCodec.read(new ByteArrayInputStream(expected.toByteArray())), actual);
+        Assertions.assertArrayEquals(expected.toByteArray(), actual.toByteArray());
+    }
+
+    private static Ir.Source analyze(String input) throws Exception {
+        Ast.Source ast = new Parser(new Lexer(input).decodeLiterals().tokens()).parseSource();
+        return new Analyzer(new Scope(Environment.scope())).visit(ast);
+    }
+
+    private static Path[] files(Path directory) throws IOException {
+        try (var files = Files.list(directory)) {
+            return files.toArray(Path[]::new);
+        }
+    }
+
+}
@@ -1359,6 +1359,440 @@ final class EvaluatorTests {
         );
     }
 
+    @ParameterizedTest
+    @MethodSource
+    void testStream(String test, String program, @Nullable RuntimeValue expected, List<RuntimeValue> log) {
+        //Statements are evaluated as they're parsed, so those before an error have already run.
+        var logged = new ArrayList<RuntimeValue>();
+        var evaluator = new Evaluator(scope(logged));
+        try {
+            var value = evaluator.evaluate(new Parser(new Lexer(program).decodeLiterals().tokens()));
+            Assertions.assertNotNull(expected, "Expected an exception to be thrown, received " + value + ".");
+            Assertions.assertEquals(expected, value);
+        } catch (ParseException | EvaluateException e) {
+            Assertions.assertNull(expected, "Unexpected " + e.getClass().getSimpleName() + " thrown (" + e.getMessage() +"), expected " + expected + ".");
+        }
+        Assertions.assertEquals(log, logged);
+    }
+
+    public static Stream<Arguments> testStream() {
+        return Stream.of(
+            Arguments.of("Program",
+                """
+                DEF square(x) DO
+                    RETURN x * x;
+                END
+                LET y = log(square(3));
+                log(y + 1);
+                """,
+                new RuntimeValue.Primitive(BigInteger.valueOf(10)),
+                List.of(new RuntimeValue.Primitive(BigInteger.valueOf(9)), new RuntimeValue.Primitive(BigInteger.valueOf(10)))
+            ),
+            Arguments.of("Empty", "", new RuntimeValue.Primitive(null), List.of()),
+            Arguments.of("Syntax Error",
+                "log(1); log(2); log(3",
+                null,
+                List.of(new RuntimeValue.Primitive(BigInteger.ONE), new RuntimeValue.Primitive(BigInteger.TWO))
+            ),
+            Arguments.of("Invalid Token",
+                "log(1); log(\"unterminated);",
+                null,
+                List.of(new RuntimeValue.Primitive(BigInteger.ONE))
+            ),
+            Arguments.of("Return Outside Function",
+                "log(1); RETURN; log(2);",
+                null,
+                List.of(new RuntimeValue.Primitive(BigInteger.ONE))
+            )
+        );
+    }
+
+    @ParameterizedTest
+    @MethodSource
+    void testResolver(String test, String program, @Nullable RuntimeValue expected, List<RuntimeValue> log) {
+        //Resolved frames must behave the same as scopes, including with shared nodes and compiled.
+        for (var shared : new boolean[] {false, true}) {
+            var parser = new Parser(new Lexer(program).decodeLiterals().tokens());
+            var ast = Assertions.assertDoesNotThrow(() -> (shared ? parser.shareNodes() : parser).parseSource());
+            assertEngines(ast, expected, log);
+        }
+    }
+
+    public static Stream<Arguments> testResolver() {
+        return Stream.of(
+            Arguments.of("Closure",
+                """
+                DEF outer(x) DO
+                    LET y = 2;
+                    DEF inner() DO
+                        RETURN x + y;
+                    END
+                    RETURN inner();
+                END
+                log(outer(1));
+                """,
+                new RuntimeValue.Primitive(BigInteger.valueOf(3)),
+                List.of(new RuntimeValue.Primitive(BigInteger.valueOf(3)))
+            ),
+            Arguments.of("Later Definition",
+                """
+                DEF outer() DO
+                    DEF first() DO
+                        RETURN second();
+                    END
+                    DEF second() DO
+                        RETURN 1;
+                    END
+                    RETURN first();
+                END
+                log(outer());
+                """,
+                new RuntimeValue.Primitive(BigInteger.ONE),
+                List.of(new RuntimeValue.Primitive(BigInteger.ONE))
+            ),
+            Arguments.of("Before Definition",
+                """
+                LET x = 1;
+                DEF f() DO
+                    log(x);
+                    LET x = 2;
+                    log(x);
+                END
+                f();
+                """,
+                new RuntimeValue.Primitive(null),
+                List.of(new RuntimeValue.Primitive(BigInteger.ONE), new RuntimeValue.Primitive(BigInteger.TWO))
+            ),
+            Arguments.of("Shadowed Loop",
+                """
+                LET total = 0;
+                DEF sum(n) DO
+                    LET total = 0;
+                    FOR i IN range(0, n) DO
+                        total = total + i;
+                    END
+                    RETURN total;
+                END
+                log(sum(4));
+                log(total);
+                """,
+                new RuntimeValue.Primitive(BigInteger.ZERO),
+                List.of(new RuntimeValue.Primitive(BigInteger.valueOf(6)), new RuntimeValue.Primitive(BigInteger.ZERO))
+            ),
+            Arguments.of("Loop Closures",
+                """
+                LET first = NIL;
+                FOR i IN range(0, 2) DO
+                    DEF get() DO
+                        RETURN i;
+                    END
+                    IF i == 0 DO
+                        first = get;
+                    END
+                END
+                log(first());
+                """,
+                new RuntimeValue.Primitive(BigInteger.ZERO),
+                List.of(new RuntimeValue.Primitive(BigInteger.ZERO))
+            ),
+            Arguments.of("Redefined",
+                """
+                DEF f() DO
+                    LET x = 1;
+                    log(x);
+                    LET x = 2;
+                END
+                f();
+                """,
+                null,
+                List.of(new RuntimeValue.Primitive(BigInteger.ONE))
+            ),
+            Arguments.of("Redefined Loop Variable",
+                """
+                FOR i IN range(0, 1) DO
+                    log(i);
+                    LET i = 1;
+                END
+                """,
+                null,
+                List.of(new RuntimeValue.Primitive(BigInteger.ZERO))
+            ),
+            Arguments.of("Branches",
+                """
+                DEF f(b) DO
+                    IF b DO
+                        LET x = 1;
+                        RETURN x;
+                    ELSE
+                        LET x = 2;
+                        RETURN x;
+                    END
+                END
+                log(f(TRUE) + f(FALSE));
+                """,
+                new RuntimeValue.Primitive(BigInteger.valueOf(3)),
+                List.of(new RuntimeValue.Primitive(BigInteger.valueOf(3)))
+            ),
+            Arguments.of("Method",
+                """
+                LET object = OBJECT DO
+                    LET x = 1;
+                    DEF get(y) DO
+                        LET z = x + y;
+                        RETURN z + this.x;
+                    END
+                END;
+                log(object.get(2));
+                """,
+                new RuntimeValue.Primitive(BigInteger.valueOf(4)),
+                List.of(new RuntimeValue.Primitive(BigInteger.valueOf(4)))
+            ),
+            Arguments.of("Method Outer Variable",
+                """
+                DEF f() DO
+                    LET y = 1;
+                    RETURN OBJECT DO
+                        DEF get() DO
+                            RETURN y;
+                        END
+                    END;
+                END
+                f().get();
+                """,
+                null,
+                List.of()
+            )
+        );
+    }
+
+    @ParameterizedTest
+    @MethodSource
+    void testTierUp(String test, String program, @Nullable RuntimeValue expected, List<RuntimeValue> log) {
+        //Compiling hot functions must not change behavior, including partway through a program.
+        for (var threshold : new int[] {0, 1, 2, 5}) {
+            var ast = Assertions.assertDoesNotThrow(() -> new Parser(new Lexer(program).decodeLiterals().tokens()).parseSource());
+            var logged = new ArrayList<RuntimeValue>();
+            try {
+                var value = new Evaluator(scope(logged)).tierUp(threshold).visit(ast);
+                Assertions.assertNotNull(expected, "Expected an exception to be thrown, received " + value + ".");
+                Assertions.assertEquals(expected, value);
+            } catch (EvaluateException e) {
+                Assertions.assertNull(expected, "Unexpected EvaluateException thrown (" + e.getMessage() +"), expected " + expected + ".");
+            }
+            Assertions.assertEquals(log, logged);
+        }
+    }
+
+    public static Stream<Arguments> testTierUp() {
+        return Stream.of(
+            Arguments.of("Recursion",
+                """
+                DEF count(n) DO
+                    IF n == 0 DO
+                        RETURN 0;
+                    END
+                    RETURN 1 + count(n - 1);
+                END
+                count(10);
+                """,
+                new RuntimeValue.Primitive(BigInteger.TEN),
+                List.of()
+            ),
+            Arguments.of("Block Frames",
+                """
+                DEF sum(n) DO
+                    IF n > 0 DO
+                        LET m = n;
+                        RETURN m + sum(n - 1);
+                    END
+                    RETURN 0;
+                END
+                sum(4);
+                """,
+                new RuntimeValue.Primitive(BigInteger.TEN),
+                List.of()
+            ),
+            Arguments.of("Closure",
+                """
+                DEF outer() DO
+                    LET x = 0;
+                    DEF increment() DO
+                        x = x + 1;
+                        RETURN x;
+                    END
+                    increment();
+                    increment();
+                    log(increment());
+                    RETURN x;
+                END
+                outer();
+                """,
+                new RuntimeValue.Primitive(BigInteger.valueOf(3)),
+                List.of(new RuntimeValue.Primitive(BigInteger.valueOf(3)))
+            ),
+            Arguments.of("Loop Closures",
+                """
+                DEF run() DO
+                    FOR i IN range(0, 2) DO
+                        DEF show() DO
+                            log(i);
+                        END
+                        show();
+                        show();
+                    END
+                END
+                run();
+                """,
+                new RuntimeValue.Primitive(null),
+                List.of(
+                    new RuntimeValue.Primitive(BigInteger.ZERO),
+                    new RuntimeValue.Primitive(BigInteger.ZERO),
+                    new RuntimeValue.Primitive(BigInteger.ONE),
+                    new RuntimeValue.Primitive(BigInteger.ONE)
+                )
+            ),
+            Arguments.of("Shadowed Global",
+                """
+                LET x = 1;
+                DEF f() DO
+                    LET x = 2;
+                    DEF g() DO
+                        RETURN x;
+                    END
+                    RETURN g() + g() + g();
+                END
+                f() + x;
+                """,
+                new RuntimeValue.Primitive(BigInteger.valueOf(7)),
+                List.of()
+            ),
+            Arguments.of("Global",
+                """
+                LET total = 0;
+                DEF add(n) DO
+                    total = total + n;
+                END
+                add(1);
+                add(2);
+                add(3);
+                total;
+                """,
+                new RuntimeValue.Primitive(BigInteger.valueOf(6)),
+                List.of()
+            ),
+            Arguments.of("Later Definition",
+                """
+                DEF f() DO
+                    RETURN g();
+                END
+                DEF g() DO
+                    RETURN 1;
+                END
+                f() + f() + f();
+                """,
+                new RuntimeValue.Primitive(BigInteger.valueOf(3)),
+                List.of()
+            ),
+            Arguments.of("Error",
+                """
+                DEF f(n) DO
+                    log(n);
+                    IF n == 2 DO
+                        RETURN undefined;
+                    END
+                    RETURN f(n + 1);
+                END
+                f(0);
+                """,
+                null,
+                List.of(
+                    new RuntimeValue.Primitive(BigInteger.ZERO),
+                    new RuntimeValue.Primitive(BigInteger.ONE),
+                    new RuntimeValue.Primitive(BigInteger.TWO)
+                )
+            )
+        );
+    }
+
+    @ParameterizedTest
+    @MethodSource
+    void testSpecialization(String test, Input input, @Nullable RuntimeValue expected, List<RuntimeValue> log) {
+        //Compiled operators specialize to the first operand types, and must still handle others.
+        test(input, expected, log, Parser::parseSource);
+    }
+
+    private static Stream<Arguments> testSpecialization() {
+        return Stream.of(
+            Arguments.of("Integer Then Decimal",
+                new Input.Program("""
+                    DEF add(a, b) DO
+                        RETURN a + b;
+                    END
+                    log(add(1, 2));
+                    log(add(1.5, 2.5));
+                    log(add(1, "a"));
+                    add(1, 1.0);
+                """),
+                null, // EvaluateException
+                List.of(
+                    new RuntimeValue.Primitive(BigInteger.valueOf(3)),
+                    new RuntimeValue.Primitive(new BigDecimal("4.0")),
+                    new RuntimeValue.Primitive("1a")
+                )
+            ),
+            Arguments.of("String Then Integer",
+                new Input.Program("""
+                    DEF add(a, b) DO
+                        RETURN a + b;
+                    END
+                    log(add("a", 1));
+                    add(1, 2);
+                """),
+                new RuntimeValue.Primitive(BigInteger.valueOf(3)),
+                List.of(new RuntimeValue.Primitive("a1"))
+            ),
+            Arguments.of("Divide By Zero",
+                new Input.Program("""
+                    DEF divide(a, b) DO
+                        RETURN a / b;
+                    END
+                    log(divide(1.0, 4.0));
+                    log(divide(4, 2));
+                    divide(1, 0);
+                """),
+                null, // EvaluateException
+                List.of(
+                    new RuntimeValue.Primitive(new BigDecimal("0.2")),
+                    new RuntimeValue.Primitive(BigInteger.TWO)
+                )
+            ),
+            Arguments.of("Comparison",
+                new Input.Program("""
+                    DEF less(a, b) DO
+                        RETURN a < b;
+                    END
+                    log(less(1, 2));
+                    log(less("b", "a"));
+                    less(1, "a");
+                """),
+                null, // EvaluateException
+                List.of(new RuntimeValue.Primitive(true), new RuntimeValue.Primitive(false))
+            ),
+            Arguments.of("Equality",
+                new Input.Program("""
+                    DEF equal(a, b) DO
+                        RETURN a == b;
+                    END
+                    log(equal(1, 1));
+                    log(equal(1, 1.0));
+                    equal(NIL, NIL);
+                """),
+                new RuntimeValue.Primitive(true),
+                List.of(new RuntimeValue.Primitive(true), new RuntimeValue.Primitive(false))
+            )
+        );
+    }
+
     interface ParserMethod<T extends Ast> {
         T invoke(Parser parser) throws ParseException;
     }
@@ -1377,7 +1811,50 @@ final class EvaluatorTests {
                 () -> method.invoke(new Parser(new Lexer(i.program).lex()))
             );
         };
-        //Next, initialize the evaluator and scope.
+        assertEngines(ast, expected, log);
+    }
+
+    /**
+     * Evaluates the AST with the evaluator, compiler, and machine, checking
+     * the return value (or exception) and log of each.
+     */
+    private static void assertEngines(Ast ast, @Nullable RuntimeValue expected, List<RuntimeValue> log) {
+        //First, initialize the evaluator and scope.
+        var logged = new ArrayList<RuntimeValue>();
+        Evaluator evaluator = new Evaluator(scope(logged));
+        //Then, evaluate the input and check the return value.
+        try {
+            var value = evaluator.visit(ast);
+            Assertions.assertNotNull(expected, "Expected an exception to be thrown, received " + value + ".");
+            Assertions.assertEquals(expected, value);
+        } catch (EvaluateException e) {
+            Assertions.assertNull(expected, "Unexpected EvaluateException thrown (" + e.getMessage() +"), expected " + expected + ".");
+        }
+        //Finally, check the log results for evaluation order.
+        Assertions.assertEquals(log, logged);
+        //The Compiler must behave the same as the Evaluator.
+        var compiled = new ArrayList<RuntimeValue>();
+        try {
+            var value = Compiler.compile(ast).run(scope(compiled));
+            Assertions.assertNotNull(expected, "Expected the compiler to throw an exception, received " + value + ".");
+            Assertions.assertEquals(expected, value);
+        } catch (EvaluateException e) {
+            Assertions.assertNull(expected, "Unexpected EvaluateException thrown by the compiler (" + e.getMessage() +"), expected " + expected + ".");
+        }
+        Assertions.assertEquals(log, compiled);
+        //The Machine must also behave the same as the Evaluator.
+        var executed = new ArrayList<RuntimeValue>();
+        try {
+            var value = new Machine(scope(executed)).execute(Bytecode.compile(ast));
+            Assertions.assertNotNull(expected, "Expected the machine to throw an exception, received " + value + ".");
+            Assertions.assertEquals(expected, value);
+        } catch (EvaluateException e) {
+            Assertions.assertNull(expected, "Unexpected EvaluateException thrown by the machine (" + e.getMessage() +"), expected " + expected + ".");
+        }
+        Assertions.assertEquals(log, executed);
+    }
+
+    private static Scope scope(List<RuntimeValue> logged) {
         var scope = new Scope(Environment.scope());
         //This one is a bit weird, but it allows statement tests to force NIL as
         //the return value for Ast.Source for reduced overlap in testing.
@@ -1389,7 +1866,6 @@ final class EvaluatorTests {
         }));
         //Log allows tracking when expressions are evaluated, allowing tests to
         //also inspect the evaluation order and control flow.
-        var logged = new ArrayList<RuntimeValue>();
         scope.define("log", new RuntimeValue.Function("log", arguments -> {
             if (arguments.size() != 1) {
                 throw new EvaluateException("Expected log to be called with 1 argument.");
@@ -1397,17 +1873,7 @@ final class EvaluatorTests {
             logged.add(arguments.getFirst());
             return arguments.getFirst();
         }));
-        Evaluator evaluator = new Evaluator(scope);
-        //Then, evaluate the input and check the return value.
-        try {
-            var value = evaluator.visit(ast);
-            Assertions.assertNotNull(expected, "Expected an exception to be thrown, received " + value + ".");
-            Assertions.assertEquals(expected, value);
-        } catch (EvaluateException e) {
-            Assertions.assertNull(expected, "Unexpected EvaluateException thrown (" + e.getMessage() +"), expected " + expected + ".");
-        }
-        //Finally, check the log results for evaluation order.
-        Assertions.assertEquals(log, logged);
+        return scope;
     }
 
 }
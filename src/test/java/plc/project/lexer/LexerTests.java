@@ -5,7 +5,11 @@ import org.junit.jupiter.params.ParameterizedTest;
 import org.junit.jupiter.params.provider.Arguments;
 import org.junit.jupiter.params.provider.MethodSource;
 
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.IntStream;
 import java.util.stream.Stream;
 
 public final class LexerTests {
@@ -127,7 +131,8 @@ public final class LexerTests {
             Arguments.of("Invalid Escape", "\"invalid\\escape\"", false),
             // Additional Testcases
             Arguments.of("Unterminated", "\"unterminated\n", false),
-            Arguments.of("Newline Characters", "\"contains\nnewline\"", false)
+            Arguments.of("Newline Characters", "\"contains\nnewline\"", false),
+            Arguments.of("Non-ASCII", "\"caf\u00E9 \u2603\"", true)
         );
     }
 
@@ -238,6 +243,177 @@ public final class LexerTests {
         );
     }
 
+    @ParameterizedTest
+    @MethodSource
+    void testBuffer(String test, String input, String location) {
+        //The buffer must match lex(), with the location of the last token.
+        var expected = Assertions.assertDoesNotThrow(() -> new Lexer(input).lex());
+        var buffer = Assertions.assertDoesNotThrow(() -> new Lexer(input).lexBuffer());
+        var tokens = new ArrayList<Token>();
+        for (int i = 0; i < buffer.size(); i++) {
+            tokens.add(buffer.get(i));
+        }
+        Assertions.assertEquals(expected, tokens);
+        Assertions.assertEquals(location, buffer.location(buffer.size() - 1));
+    }
+
+    public static Stream<Arguments> testBuffer() {
+        return Stream.of(
+            Arguments.of("Single Line", "LET x = 5;", "line 1, column 10"),
+            Arguments.of("Multiple Lines", "LET x = 5;\n//comment\n  print(x);", "line 3, column 11"),
+            Arguments.of("Carriage Returns", "DEF f() DO\r\n\tRETURN \"\\n\";\r\nEND", "line 3, column 1")
+        );
+    }
+
+    @ParameterizedTest
+    @MethodSource
+    void testBytes(String test, String input) {
+        //Lexing UTF-8 bytes directly must produce the same tokens as lex().
+        var bytes = input.getBytes(StandardCharsets.UTF_8);
+        try {
+            var expected = new Lexer(input).lex();
+            Assertions.assertEquals(expected, Assertions.assertDoesNotThrow(() -> new Lexer(bytes).lex()));
+        } catch (LexException e) {
+            Assertions.assertThrows(LexException.class, () -> new Lexer(bytes).lex());
+        }
+    }
+
+    public static Stream<Arguments> testBytes() {
+        return Stream.of(
+            Arguments.of("Program", "LET x = 1.5e3;\nprint(x + \"y\");"),
+            Arguments.of("Non-ASCII String", "\"caf\u00E9 \u2603\""),
+            Arguments.of("Non-ASCII Character", "'\u00E9'"),
+            Arguments.of("Supplementary Character", "'\uD83D\uDE00'"),
+            Arguments.of("Non-ASCII Operator", "x \u00F7 y"),
+            Arguments.of("Non-ASCII Comment", "//\u2603\nx"),
+            Arguments.of("Unterminated", "\"\u00E9"),
+            //Longer than a block, to cover the vectorized whitespace and comment scans.
+            Arguments.of("Long Whitespace", "x" + " \t".repeat(50) + "\n\n" + " ".repeat(70) + "y"),
+            Arguments.of("Long Comment", "// " + "=".repeat(100) + "\r\nx // " + "\u2603".repeat(40) + "\ny"),
+            Arguments.of("Long Comment At End", "x //" + "-".repeat(90))
+        );
+    }
+
+    @ParameterizedTest
+    @MethodSource
+    void testParallel(String test, String input) {
+        //Inputs are repeated well past the minimum chunk size so they split.
+        var pool = new ForkJoinPool(4);
+        try {
+            var expected = new Lexer(input).lex();
+            Assertions.assertEquals(expected, Assertions.assertDoesNotThrow(() -> new ParallelLexer(input, pool).lex()));
+        } catch (LexException e) {
+            var exception = Assertions.assertThrows(LexException.class, () -> new ParallelLexer(input, pool).lex());
+            Assertions.assertEquals(e.getMessage(), exception.getMessage());
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    public static Stream<Arguments> testParallel() {
+        var program = "LET x = 1.5e3; //comment\nprint(x + \"y\\n\" + 'z');\r\n\n";
+        return Stream.of(
+            Arguments.of("Program", program.repeat(20_000)),
+            Arguments.of("No Newlines", "x + 1; ".repeat(50_000)),
+            Arguments.of("Invalid Escape", program.repeat(10_000) + "\"\\q\"\n" + program.repeat(10_000)),
+            Arguments.of("Unterminated String", program.repeat(10_000) + "\"abc\n" + program.repeat(10_000))
+        );
+    }
+
+    @ParameterizedTest
+    @MethodSource
+    void testIncremental(String test, String input, int offset, int removed, String inserted, int relexed) {
+        //After an edit, the tokens must match lexing the edited input again.
+        var lexer = Assertions.assertDoesNotThrow(() -> new IncrementalLexer(input));
+        var damage = Assertions.assertDoesNotThrow(() -> lexer.edit(offset, removed, inserted));
+        var text = input.substring(0, offset) + inserted + input.substring(offset + removed);
+        var expected = Assertions.assertDoesNotThrow(() -> new Lexer(text).lex());
+        var tokens = new ArrayList<Token>();
+        for (int i = 0; i < lexer.tokens().size(); i++) {
+            tokens.add(lexer.tokens().get(i));
+        }
+        Assertions.assertEquals(expected, tokens);
+        Assertions.assertEquals(relexed, damage.inserted());
+    }
+
+    public static Stream<Arguments> testIncremental() {
+        var program = "LET x = 1;\nLET y = x + 2;\nprint(x * y);\n";
+        return Stream.of(
+            Arguments.of("Replace Literal", program, 8, 1, "42", 4),
+            Arguments.of("Extend Identifier", program, 15, 0, "yy", 2),
+            Arguments.of("Insert Line", program, 11, 0, "LET z = 3;\n", 5),
+            Arguments.of("Join Lines", program, 10, 1, " ", 5),
+            Arguments.of("Comment Line", program, 11, 0, "//", 0),
+            Arguments.of("Uncomment Line", "//" + program, 0, 2, "", 5),
+            Arguments.of("Delete All", program, 0, program.length(), "", 0),
+            Arguments.of("Append", program, program.length(), 0, "END", 1)
+        );
+    }
+
+    @ParameterizedTest
+    @MethodSource
+    void testIncrementalException(String test, String input, int offset, int removed, String inserted) {
+        //Invalid edits throw and leave the previous tokens unchanged.
+        var lexer = Assertions.assertDoesNotThrow(() -> new IncrementalLexer(input));
+        Assertions.assertThrows(LexException.class, () -> lexer.edit(offset, removed, inserted));
+        Assertions.assertEquals(input, lexer.tokens().input().toString());
+        var tokens = new ArrayList<Token>();
+        for (int i = 0; i < lexer.tokens().size(); i++) {
+            tokens.add(lexer.tokens().get(i));
+        }
+        Assertions.assertEquals(Assertions.assertDoesNotThrow(() -> new Lexer(input).lex()), tokens);
+    }
+
+    public static Stream<Arguments> testIncrementalException() {
+        return Stream.of(
+            Arguments.of("Unterminated String", "LET x = 1;\nprint(x);", 17, 0, "\""),
+            Arguments.of("Invalid Escape", "LET s = \"\\n\";", 10, 1, "q")
+        );
+    }
+
+    @ParameterizedTest
+    @MethodSource
+    void testInterning(String test, String input, String first, String second) {
+        //Keywords are identical to their constants, and repeated names to each other.
+        var tokens = Assertions.assertDoesNotThrow(() -> new Lexer(input).lex());
+        var buffer = Assertions.assertDoesNotThrow(() -> new Lexer(input).lexBuffer());
+        for (var literals : List.of(
+            tokens.stream().map(Token::literal).toList(),
+            IntStream.range(0, buffer.size()).mapToObj(buffer::literal).toList()
+        )) {
+            Assertions.assertSame(first, literals.get(0));
+            Assertions.assertSame(literals.get(1), literals.get(3));
+            Assertions.assertSame(second, literals.get(2));
+        }
+    }
+
+    public static Stream<Arguments> testInterning() {
+        return Stream.of(
+            Arguments.of("Keyword", "LET name = name;", "LET", "="),
+            Arguments.of("Operator", "<= x != x", "<=", "!="),
+            Arguments.of("Repeated Name", "END counter DO counter", "END", "DO")
+        );
+    }
+
+    @ParameterizedTest
+    @MethodSource
+    void testDecode(String test, String input, long expected) {
+        //Integers which fit in a long are stored unboxed.
+        var buffer = Assertions.assertDoesNotThrow(() -> new Lexer(input).decodeLiterals().lexBuffer());
+        Assertions.assertSame(TokenSource.LONG, buffer.value(0));
+        Assertions.assertEquals(expected, buffer.longValue(0));
+        Assertions.assertNull(buffer.value(1));
+    }
+
+    public static Stream<Arguments> testDecode() {
+        return Stream.of(
+            Arguments.of("Integer", "42;", 42L),
+            Arguments.of("Negative", "-7;", -7L),
+            Arguments.of("Exponent", "3e2;", 300L),
+            Arguments.of("Maximum", "9223372036854775807;", Long.MAX_VALUE)
+        );
+    }
+
     private static void test(String input, List<Token> expected, boolean success) {
         if (success) {
             var tokens = Assertions.assertDoesNotThrow(() -> new Lexer(input).lex());
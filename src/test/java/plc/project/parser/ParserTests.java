@@ -2,9 +2,12 @@ package plc.project.parser;
 
 import org.checkerframework.checker.nullness.qual.Nullable;
 import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
 import org.junit.jupiter.params.ParameterizedTest;
 import org.junit.jupiter.params.provider.Arguments;
 import org.junit.jupiter.params.provider.MethodSource;
+import plc.project.benchmark.Corpus;
+import plc.project.benchmark.ProgramGenerator;
 import plc.project.lexer.Lexer;
 import plc.project.lexer.Token;
 
@@ -12,8 +15,11 @@ import javax.swing.text.html.Option;
 import java.math.BigDecimal;
 import java.math.BigInteger;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
 import java.util.List;
 import java.util.Optional;
+import java.util.concurrent.ForkJoinPool;
 import java.util.stream.Stream;
 
 /**
@@ -708,6 +714,34 @@ final class ParserTests {
                     new Ast.Expr.Variable("third")
                 )
             ),
+            Arguments.of("All Precedence Levels",
+                new Input.Program("a OR b == c + d * e - f AND g"),
+                new Ast.Expr.Binary(
+                    "AND",
+                    new Ast.Expr.Binary(
+                        "OR",
+                        new Ast.Expr.Variable("a"),
+                        new Ast.Expr.Binary(
+                            "==",
+                            new Ast.Expr.Variable("b"),
+                            new Ast.Expr.Binary(
+                                "-",
+                                new Ast.Expr.Binary(
+                                    "+",
+                                    new Ast.Expr.Variable("c"),
+                                    new Ast.Expr.Binary(
+                                        "*",
+                                        new Ast.Expr.Variable("d"),
+                                        new Ast.Expr.Variable("e")
+                                    )
+                                ),
+                                new Ast.Expr.Variable("f")
+                            )
+                        )
+                    ),
+                    new Ast.Expr.Variable("g")
+                )
+            ),
             // Additional Testcases
             Arguments.of("Logical Missing Operand",
                 new Input.Tokens(List.of(
@@ -1058,6 +1092,439 @@ final class ParserTests {
         );
     }
 
+    @ParameterizedTest
+    @MethodSource
+    void testTokenSource(String test, String program, Ast.@Nullable Source expected) {
+        //Parses directly from Lexer#tokens(), which lexes lazily as needed.
+        var parser = new Parser(new Lexer(program).tokens());
+        if (expected != null) {
+            var ast = Assertions.assertDoesNotThrow(parser::parseSource);
+            Assertions.assertEquals(expected, ast);
+        } else {
+            Assertions.assertThrows(ParseException.class, parser::parseSource);
+        }
+    }
+
+    public static Stream<Arguments> testTokenSource() {
+        return Stream.of(
+            Arguments.of("Hello World",
+                """
+                DEF main() DO
+                    print("Hello, World!");
+                END
+                """,
+                new Ast.Source(List.of(
+                    new Ast.Stmt.Def("main", List.of(), List.of(
+                        new Ast.Stmt.Expression(new Ast.Expr.Function(
+                            "print",
+                            List.of(new Ast.Expr.Literal("Hello, World!"))
+                        ))
+                    ))
+                ))
+            ),
+            Arguments.of("Negative Exponent",
+                "LET x = 1.0e-2;",
+                new Ast.Source(List.of(
+                    new Ast.Stmt.Let("x", Optional.of(new Ast.Expr.Literal(new BigDecimal("1.0e-2"))))
+                ))
+            ),
+            Arguments.of("Lex Error",
+                "print(\"unterminated);",
+                null
+            )
+        );
+    }
+
+    @ParameterizedTest
+    @MethodSource
+    void testLocation(String test, String program, String location) {
+        //Parsing from a TokenBuffer reports where errors occurred.
+        var tokens = Assertions.assertDoesNotThrow(() -> new Lexer(program).lexBuffer());
+        var exception = Assertions.assertThrows(ParseException.class, () -> new Parser(tokens).parseSource());
+        Assertions.assertTrue(exception.getMessage().endsWith("(" + location + ")"), exception.getMessage());
+    }
+
+    public static Stream<Arguments> testLocation() {
+        return Stream.of(
+            Arguments.of("Missing Semicolon", "LET x = 1;\nLET y = 2\nprint(y);", "line 3, column 1"),
+            Arguments.of("Missing END", "IF x DO\n    print(x);\n", "line 3, column 1"),
+            Arguments.of("Invalid Primary", "LET x =\n    1 + );", "line 2, column 9")
+        );
+    }
+
+    @ParameterizedTest
+    @MethodSource
+    void testDecodedLiteral(String test, String program, Object value) {
+        //Values decoded by the lexer are used as is, for both sources.
+        var expected = new Ast.Source(List.of(new Ast.Stmt.Expression(new Ast.Expr.Literal(value))));
+        var tokens = new Lexer(program).decodeLiterals().tokens();
+        Assertions.assertEquals(expected, Assertions.assertDoesNotThrow(() -> new Parser(tokens).parseSource()));
+        var buffer = Assertions.assertDoesNotThrow(() -> new Lexer(program).decodeLiterals().lexBuffer());
+        Assertions.assertEquals(expected, Assertions.assertDoesNotThrow(() -> new Parser(buffer).parseSource()));
+        //Parsing the literal text must agree.
+        var list = Assertions.assertDoesNotThrow(() -> new Lexer(program).lex());
+        Assertions.assertEquals(expected, Assertions.assertDoesNotThrow(() -> new Parser(list).parseSource()));
+    }
+
+    public static Stream<Arguments> testDecodedLiteral() {
+        return Stream.of(
+            Arguments.of("Integer", "123;", new BigInteger("123")),
+            Arguments.of("Signed Integer", "-45;", new BigInteger("-45")),
+            Arguments.of("Long Minimum", "-9223372036854775808;", BigInteger.valueOf(Long.MIN_VALUE)),
+            Arguments.of("Long Overflow", "9223372036854775808;", new BigInteger("9223372036854775808")),
+            Arguments.of("Integer Exponent", "12e3;", new BigInteger("12000")),
+            Arguments.of("Decimal", "+1.50;", new BigDecimal("1.50")),
+            Arguments.of("Decimal Exponent", "1.5e3;", new BigDecimal("1.5e3")),
+            Arguments.of("Negative Exponent", "1.5e-3;", new BigDecimal("1.5e-3")),
+            Arguments.of("Character", "'c';", 'c'),
+            Arguments.of("Character Escape", "'\\t';", '\t'),
+            Arguments.of("String", "\"abc\";", "abc"),
+            Arguments.of("String Escapes", "\"a\\tb\\\\n\\\"\";", "a\tb\\n\""),
+            Arguments.of("Non-ASCII", "\"caf\u00E9\";", "caf\u00E9")
+        );
+    }
+
+    @ParameterizedTest
+    @MethodSource
+    void testGeneratedProgram(String test, String program) {
+        //Benchmark programs must be valid, and generated deterministically.
+        Assertions.assertDoesNotThrow(() -> new Parser(new Lexer(program).lex()).parseSource());
+    }
+
+    public static Stream<Arguments> testGeneratedProgram() {
+        return Stream.of(
+            Arguments.of("Seed 0", ProgramGenerator.generate(0, 50_000)),
+            Arguments.of("Seed 1", ProgramGenerator.generate(1, 50_000)),
+            Arguments.of("Corpus", Corpus.KB_100.load())
+        );
+    }
+
+    @Test
+    void testCorpusGenerated() {
+        //The checked-in corpus must match what the generator produces.
+        Assertions.assertEquals(Corpus.KB_10.load(), ProgramGenerator.generate(0, Corpus.KB_10.size()));
+    }
+
+    @ParameterizedTest
+    @MethodSource
+    void testNestedExpr(String test, Input input, Ast.@Nullable Expr expected) {
+        //Nesting is deep enough to switch to the explicit stack partway through.
+        test(input, expected, Parser::parseExpr);
+    }
+
+    private static Stream<Arguments> testNestedExpr() {
+        var depth = 150;
+        var x = new Ast.Expr.Variable("x");
+        var one = new Ast.Expr.Literal(new BigInteger("1"));
+        Ast.Expr groups = x, functions = x, methods = x, arguments = x, binary = x, postfix = x;
+        var inner = new Ast.Expr.Binary("OR",
+            new Ast.Expr.Binary("<",
+                new Ast.Expr.Binary("+", x, new Ast.Expr.Binary("*", x, x)),
+                x
+            ),
+            x
+        );
+        binary = inner;
+        for (int i = 0; i < depth; i++) {
+            groups = new Ast.Expr.Group(groups);
+            functions = new Ast.Expr.Function("f", List.of(functions));
+            methods = new Ast.Expr.Method(x, "m", List.of(methods));
+            arguments = new Ast.Expr.Function("f", List.of(one, arguments, new Ast.Expr.Function("g", List.of())));
+            binary = new Ast.Expr.Binary("-", new Ast.Expr.Binary("*", one, new Ast.Expr.Group(binary)), one);
+            postfix = new Ast.Expr.Method(new Ast.Expr.Property(new Ast.Expr.Group(postfix), "p"), "m", List.of());
+        }
+        return Stream.of(
+            Arguments.of("Groups", new Input.Program("(".repeat(depth) + "x" + ")".repeat(depth)), groups),
+            Arguments.of("Functions", new Input.Program("f(".repeat(depth) + "x" + ")".repeat(depth)), functions),
+            Arguments.of("Methods", new Input.Program("x.m(".repeat(depth) + "x" + ")".repeat(depth)), methods),
+            Arguments.of("Arguments", new Input.Program("f(1, ".repeat(depth) + "x" + ", g())".repeat(depth)), arguments),
+            Arguments.of("Binary", new Input.Program("1 * (".repeat(depth) + "x + x * x < x OR x" + ") - 1".repeat(depth)), binary),
+            Arguments.of("Postfix", new Input.Program("(".repeat(depth) + "x" + ").p.m()".repeat(depth)), postfix),
+            Arguments.of("Missing Closing Parenthesis", new Input.Program("(".repeat(depth) + "x" + ")".repeat(depth - 1)), null),
+            Arguments.of("Missing Argument", new Input.Program("f(".repeat(depth) + "x," + ")".repeat(depth)), null)
+        );
+    }
+
+    @Test
+    void testMillionNestedExpr() {
+        //Parsing 1,000,000 levels of nesting fits in the default 1 MB thread stack.
+        var depth = 1_000_000;
+        var programs = List.of(
+            "(".repeat(depth) + "x" + ")".repeat(depth),
+            "f(".repeat(depth) + "x" + ")".repeat(depth),
+            "x.m(".repeat(depth) + "x" + ")".repeat(depth)
+        );
+        var results = new ArrayList<Object>();
+        var thread = new Thread(null, () -> {
+            for (var program : programs) {
+                try {
+                    results.add(new Parser(new Lexer(program).tokens()).parseExpr());
+                } catch (ParseException | RuntimeException | StackOverflowError e) {
+                    results.add(e);
+                }
+            }
+        }, "parser", 1 << 20);
+        thread.start();
+        Assertions.assertDoesNotThrow(() -> thread.join());
+        for (var result : results) {
+            //Walks the AST iteratively, since equals() would recurse.
+            if (result instanceof Throwable throwable) {
+                throw new AssertionError(throwable);
+            }
+            var expr = (Ast.Expr) result;
+            var levels = 0;
+            while (!(expr instanceof Ast.Expr.Variable)) {
+                expr = switch (expr) {
+                    case Ast.Expr.Group group -> group.expression();
+                    case Ast.Expr.Function function -> function.arguments().getFirst();
+                    case Ast.Expr.Method method -> method.arguments().getFirst();
+                    default -> throw new AssertionError(expr.getClass());
+                };
+                levels++;
+            }
+            Assertions.assertEquals(depth, levels);
+        }
+    }
+
+    @ParameterizedTest
+    @MethodSource
+    void testParallel(String test, String program) {
+        //Programs are repeated well past the minimum range size so they split.
+        var tokens = Assertions.assertDoesNotThrow(() -> new Lexer(program).lexBuffer());
+        var pool = new ForkJoinPool(4);
+        try {
+            var expected = new Parser(tokens).parseSource();
+            Assertions.assertEquals(expected, Assertions.assertDoesNotThrow(() -> new ParallelParser(tokens, pool).parseSource()));
+        } catch (ParseException e) {
+            var exception = Assertions.assertThrows(ParseException.class, () -> new ParallelParser(tokens, pool).parseSource());
+            Assertions.assertEquals(e.getMessage(), exception.getMessage());
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    public static Stream<Arguments> testParallel() {
+        var program = """
+            LET o = OBJECT DO
+                DEF get() DO RETURN 1; END
+            END;
+            DEF f(x) DO
+                IF x DO RETURN o.get(); END
+            END
+            FOR i IN range(0, 2) DO f(i); END
+            LET y = OBJECT DO END.get();
+            """;
+        return Stream.of(
+            Arguments.of("Program", program.repeat(2_000)),
+            Arguments.of("Corpus", Corpus.MB_1.load()),
+            Arguments.of("Keyword Names", (program + "LET DO = 1;\n" + program + "END;\n").repeat(1_000)),
+            Arguments.of("Missing Semicolon", program.repeat(1_000) + "LET x = 1\n" + program.repeat(1_000)),
+            Arguments.of("Missing END", program.repeat(1_000) + "IF x DO\n" + program.repeat(1_000))
+        );
+    }
+
+    @ParameterizedTest
+    @MethodSource
+    void testRecovery(String test, String program, Ast.Source expected, int errors) {
+        //Recovering reports every error, starting with the one parseSource throws.
+        var result = new Parser(new Lexer(program).tokens()).parseSourceRecovering();
+        Assertions.assertEquals(expected, result.source());
+        Assertions.assertEquals(errors, result.errors().size(), result.errors().toString());
+        if (errors > 0) {
+            var exception = Assertions.assertThrows(ParseException.class, () -> new Parser(new Lexer(program).tokens()).parseSource());
+            Assertions.assertEquals(exception.getMessage(), result.errors().getFirst().getMessage());
+        }
+    }
+
+    public static Stream<Arguments> testRecovery() {
+        return Stream.of(
+            Arguments.of("No Errors",
+                "LET x = 1;\nprint(x);",
+                new Ast.Source(List.of(
+                    new Ast.Stmt.Let("x", Optional.of(new Ast.Expr.Literal(new BigInteger("1")))),
+                    new Ast.Stmt.Expression(new Ast.Expr.Function("print", List.of(new Ast.Expr.Variable("x"))))
+                )),
+                0
+            ),
+            Arguments.of("Multiple Statements",
+                "LET = 1;\nprint(x);\nx = ;\nLET y;",
+                new Ast.Source(List.of(
+                    new Ast.Stmt.Expression(new Ast.Expr.Function("print", List.of(new Ast.Expr.Variable("x")))),
+                    new Ast.Stmt.Let("y", Optional.empty())
+                )),
+                2
+            ),
+            Arguments.of("Block Statement",
+                "IF x DO\n    y = ;\n    print(y);\nEND\nprint(x);",
+                new Ast.Source(List.of(
+                    new Ast.Stmt.If(
+                        new Ast.Expr.Variable("x"),
+                        List.of(new Ast.Stmt.Expression(new Ast.Expr.Function("print", List.of(new Ast.Expr.Variable("y"))))),
+                        List.of()
+                    ),
+                    new Ast.Stmt.Expression(new Ast.Expr.Function("print", List.of(new Ast.Expr.Variable("x"))))
+                )),
+                1
+            ),
+            Arguments.of("Block Header",
+                "IF x ) DO\n    y = ;\nELSE\n    z = ;\nEND\nprint(x);",
+                new Ast.Source(List.of(
+                    new Ast.Stmt.Expression(new Ast.Expr.Function("print", List.of(new Ast.Expr.Variable("x"))))
+                )),
+                3
+            ),
+            Arguments.of("Object Member",
+                "LET o = OBJECT DO\n    LET x = ;\n    DEF f() DO END\nEND;",
+                new Ast.Source(List.of(
+                    new Ast.Stmt.Let("o", Optional.of(new Ast.Expr.ObjectExpr(
+                        Optional.empty(),
+                        List.of(),
+                        List.of(new Ast.Stmt.Def("f", List.of(), List.of()))
+                    )))
+                )),
+                1
+            ),
+            Arguments.of("Field After Invalid Method",
+                "LET o = OBJECT DO\n    DEF f(x;\n    LET y;\nEND;",
+                new Ast.Source(List.of(
+                    new Ast.Stmt.Let("o", Optional.of(new Ast.Expr.ObjectExpr(
+                        Optional.empty(),
+                        List.of(),
+                        List.of()
+                    )))
+                )),
+                2
+            ),
+            Arguments.of("Missing End",
+                "print(x);\nDEF f() DO\n    RETURN 1;\n",
+                new Ast.Source(List.of(
+                    new Ast.Stmt.Expression(new Ast.Expr.Function("print", List.of(new Ast.Expr.Variable("x"))))
+                )),
+                1
+            ),
+            Arguments.of("Invalid Token",
+                "x = ;\nprint(x);\nLET y = \"unterminated;\nprint(y);",
+                new Ast.Source(List.of(
+                    new Ast.Stmt.Expression(new Ast.Expr.Function("print", List.of(new Ast.Expr.Variable("x"))))
+                )),
+                2
+            )
+        );
+    }
+
+    @ParameterizedTest
+    @MethodSource
+    void testIncremental(String test, String input, int offset, int removed, String inserted, long reused) {
+        //After an edit, the AST must match parsing the edited input again, reusing unchanged statements.
+        var parser = Assertions.assertDoesNotThrow(() -> new IncrementalParser(input));
+        var previous = parser.source().statements();
+        var ast = Assertions.assertDoesNotThrow(() -> parser.edit(offset, removed, inserted));
+        var text = input.substring(0, offset) + inserted + input.substring(offset + removed);
+        Assertions.assertEquals(Assertions.assertDoesNotThrow(() -> new Parser(new Lexer(text).lex()).parseSource()), ast);
+        var identities = Collections.newSetFromMap(new IdentityHashMap<Ast.Stmt, Boolean>());
+        identities.addAll(previous);
+        Assertions.assertEquals(reused, ast.statements().stream().filter(identities::contains).count());
+    }
+
+    public static Stream<Arguments> testIncremental() {
+        var program = "LET x = 1;\nIF x > 0 DO\n    print(x);\nEND\nLET y = x + 2;\nprint(x * y);\n";
+        return Stream.of(
+            Arguments.of("Replace Literal", program, 8, 1, "42", 3),
+            Arguments.of("Edit Block", program, 33, 1, "y", 3),
+            Arguments.of("Insert Statement", program, 11, 0, "LET z = 3;\n", 3),
+            Arguments.of("Join Lines", program, 55, 1, " ", 3),
+            Arguments.of("Comment Statement", program, 41, 0, "//", 2),
+            Arguments.of("Delete All", program, 0, program.length(), "", 0),
+            Arguments.of("Append", program, program.length(), 0, "RETURN;", 4)
+        );
+    }
+
+    @Test
+    void testIncrementalException() {
+        //Edits with syntax errors throw, and the AST is restored once they're fixed.
+        var input = "LET x = 1;\nprint(x);\nprint(x + 1);";
+        var parser = Assertions.assertDoesNotThrow(() -> new IncrementalParser(input));
+        Assertions.assertThrows(ParseException.class, () -> parser.edit(9, 1, ""));
+        Assertions.assertThrows(IllegalStateException.class, parser::source);
+        var ast = Assertions.assertDoesNotThrow(() -> parser.edit(9, 0, ";"));
+        Assertions.assertEquals(Assertions.assertDoesNotThrow(() -> new Parser(new Lexer(input).lex()).parseSource()), ast);
+    }
+
+    @Test
+    void testIncrementalExceptionEdit() {
+        //Edits before an unfixed syntax error still throw, and don't drop the statements after it.
+        var input = "LET a = 1;\nLET b = 2;\nLET c = 3;\nLET d = 4;";
+        var parser = Assertions.assertDoesNotThrow(() -> new IncrementalParser(input));
+        Assertions.assertThrows(ParseException.class, () -> parser.edit(31, 1, ""));
+        Assertions.assertThrows(ParseException.class, () -> parser.edit(8, 1, "5"));
+        Assertions.assertThrows(IllegalStateException.class, parser::source);
+        var ast = Assertions.assertDoesNotThrow(() -> parser.edit(31, 0, ";"));
+        var text = "LET a = 5;\nLET b = 2;\nLET c = 3;\nLET d = 4;";
+        Assertions.assertEquals(Assertions.assertDoesNotThrow(() -> new Parser(new Lexer(text).lex()).parseSource()), ast);
+    }
+
+    @ParameterizedTest
+    @MethodSource
+    void testFlat(String test, String program) {
+        //Converting to a FlatAst and back must give an equal AST.
+        var ast = Assertions.assertDoesNotThrow(() -> new Parser(new Lexer(program).decodeLiterals().tokens()).parseSource());
+        var flat = FlatAst.of(ast);
+        Assertions.assertEquals(ast, flat.toAst());
+    }
+
+    public static Stream<Arguments> testFlat() {
+        return Stream.of(
+            Arguments.of("Empty", ""),
+            Arguments.of("Statements", """
+                LET x: Integer = 1;
+                LET y;
+                DEF f(a: Integer, b, c: String): String DO
+                    IF a < b DO RETURN c; ELSE RETURN; END
+                END
+                FOR i IN range(0, 10) DO
+                    x = x + i;
+                END
+                LET o = OBJECT Name DO
+                    LET field = "field";
+                    DEF method() DO END
+                END;
+                o.field = OBJECT DO END;
+                """),
+            Arguments.of("Literals", """
+                f(NIL, TRUE, FALSE, 0, -1, 33554431, 33554432, -33554432, -33554433, 9223372036854775807, -9223372036854775808,
+                    9223372036854775808, 123456789012345678901234567890, 1.0, 1.00, 'c', "string", "string");
+                """),
+            Arguments.of("Expressions", "o.m((a + b) * c, g(), o.p.q, h(1, 2, 3)) AND flag OR x;"),
+            Arguments.of("Corpus", Corpus.KB_100.load())
+        );
+    }
+
+    @ParameterizedTest
+    @MethodSource
+    void testShareNodes(String test, String program, int shared) {
+        //Sharing nodes must give an equal AST, with equal arguments shared.
+        var expected = Assertions.assertDoesNotThrow(() -> new Parser(new Lexer(program).decodeLiterals().tokens()).parseSource());
+        var ast = Assertions.assertDoesNotThrow(() -> new Parser(new Lexer(program).decodeLiterals().tokens()).shareNodes().parseSource());
+        Assertions.assertEquals(expected, ast);
+        if (shared >= 0) {
+            var arguments = ((Ast.Expr.Function) ((Ast.Stmt.Expression) ast.statements().getFirst()).expression()).arguments();
+            var identities = Collections.newSetFromMap(new IdentityHashMap<Ast.Expr, Boolean>());
+            identities.addAll(arguments);
+            Assertions.assertEquals(shared, arguments.size() - identities.size());
+        }
+    }
+
+    public static Stream<Arguments> testShareNodes() {
+        return Stream.of(
+            Arguments.of("Literals", "f(NIL, NIL, TRUE, TRUE, 1, 1, 1e2, 100, 12345678901234567890123, 12345678901234567890123);", 5),
+            Arguments.of("Distinct Literals", "f(1, 1.0, 1.00, 'a', \"a\", FALSE, NIL);", 0),
+            Arguments.of("Expressions", "f(x, x, a + b * c, a + b * c, (a + b) * c, g(x).y, g(x).y, o.m(1), o.m(1));", 4),
+            Arguments.of("Nested", "f(" + "(".repeat(200) + "x" + ")".repeat(200) + ", " + "(".repeat(200) + "x" + ")".repeat(200) + ");", 1),
+            Arguments.of("Objects", "f(OBJECT DO END, OBJECT DO END);", 0),
+            Arguments.of("Corpus", Corpus.MB_1.load(), -1)
+        );
+    }
+
     interface ParserMethod<T> {
         T invoke(Parser parser) throws ParseException;
     }
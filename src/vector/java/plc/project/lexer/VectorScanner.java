@@ -0,0 +1,54 @@
+package plc.project.lexer;
+
+import jdk.incubator.vector.ByteVector;
+import jdk.incubator.vector.VectorSpecies;
+
+/**
+ * A {@link BlockScanner} using the incubating Vector API. Each step copies
+ * the next block into a scratch array (the input may be a memory-mapped
+ * buffer) and compares the whole block at once.
+ *
+ * <p>This class requires {@code --add-modules jdk.incubator.vector} to both
+ * compile and run, so it is only created by {@link BlockScanner#create()}
+ * when the module is available.
+ */
+final class VectorScanner extends BlockScanner {
+
+    private static final VectorSpecies<Byte> BYTES = ByteVector.SPECIES_PREFERRED;
+
+    private final byte[] bytes = new byte[BYTES.length()];
+
+    @Override
+    int skipWhitespace(Utf8Input input, int index, int end) {
+        while (index + bytes.length <= end) {
+            input.getBytes(index, bytes);
+            var block = ByteVector.fromArray(BYTES, bytes, 0);
+            var mask = block.eq((byte) ' ')
+                .or(block.eq((byte) '\t'))
+                .or(block.eq((byte) '\n'))
+                .or(block.eq((byte) '\r'))
+                .or(block.eq((byte) '\b'))
+                .not();
+            if (mask.anyTrue()) {
+                return index + mask.firstTrue();
+            }
+            index += bytes.length;
+        }
+        return index;
+    }
+
+    @Override
+    int findLineBreak(Utf8Input input, int index, int end) {
+        while (index + bytes.length <= end) {
+            input.getBytes(index, bytes);
+            var block = ByteVector.fromArray(BYTES, bytes, 0);
+            var mask = block.eq((byte) '\n').or(block.eq((byte) '\r'));
+            if (mask.anyTrue()) {
+                return index + mask.firstTrue();
+            }
+            index += bytes.length;
+        }
+        return index;
+    }
+
+}